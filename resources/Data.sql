@@ -18,6 +18,26 @@ create table ticket(
  FOREIGN KEY (PARKING_NUMBER)
  REFERENCES parking(PARKING_NUMBER));
 
+create index IDX_TICKET_VEHICLE_OUT on ticket(VEHICLE_REG_NUMBER, OUT_TIME);
+create index IDX_TICKET_VEHICLE_IN on ticket(VEHICLE_REG_NUMBER, IN_TIME);
+create index IDX_TICKET_OUT on ticket(OUT_TIME);
+
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL);
+
+create index IDX_TICKET_ARCHIVE_VEHICLE_IN on ticket_archive(VEHICLE_REG_NUMBER, IN_TIME);
+create index IDX_TICKET_ARCHIVE_OUT on ticket_archive(OUT_TIME);
+
+create table vehicle_stats(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ VISIT_COUNT int NOT NULL
+);
+
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(1,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(2,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(3,true,'CAR');
@@ -45,6 +65,26 @@ create table ticket(
  FOREIGN KEY (PARKING_NUMBER)
  REFERENCES parking(PARKING_NUMBER));
 
+create index IDX_TICKET_VEHICLE_OUT on ticket(VEHICLE_REG_NUMBER, OUT_TIME);
+create index IDX_TICKET_VEHICLE_IN on ticket(VEHICLE_REG_NUMBER, IN_TIME);
+create index IDX_TICKET_OUT on ticket(OUT_TIME);
+
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL);
+
+create index IDX_TICKET_ARCHIVE_VEHICLE_IN on ticket_archive(VEHICLE_REG_NUMBER, IN_TIME);
+create index IDX_TICKET_ARCHIVE_OUT on ticket_archive(OUT_TIME);
+
+create table vehicle_stats(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ VISIT_COUNT int NOT NULL
+);
+
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(1,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(2,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(3,true,'CAR');
@@ -0,0 +1,9 @@
+/* Ticket lookups by vehicle: open ticket (OUT_TIME is null) and latest ticket (IN_TIME).
+   Run on databases created before these indexes were added to Data.sql. */
+use prod;
+create index IDX_TICKET_VEHICLE_OUT on ticket(VEHICLE_REG_NUMBER, OUT_TIME);
+create index IDX_TICKET_VEHICLE_IN on ticket(VEHICLE_REG_NUMBER, IN_TIME);
+
+use test;
+create index IDX_TICKET_VEHICLE_OUT on ticket(VEHICLE_REG_NUMBER, OUT_TIME);
+create index IDX_TICKET_VEHICLE_IN on ticket(VEHICLE_REG_NUMBER, IN_TIME);
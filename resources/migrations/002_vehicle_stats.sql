@@ -0,0 +1,19 @@
+/* Per-vehicle visit counter maintained with every saved ticket, replacing count(*) over ticket.
+   Run on databases created before vehicle_stats was added to Data.sql. */
+use prod;
+create table vehicle_stats(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ VISIT_COUNT int NOT NULL
+);
+insert into vehicle_stats(VEHICLE_REG_NUMBER, VISIT_COUNT)
+ select VEHICLE_REG_NUMBER, count(*) from ticket group by VEHICLE_REG_NUMBER;
+commit;
+
+use test;
+create table vehicle_stats(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ VISIT_COUNT int NOT NULL
+);
+insert into vehicle_stats(VEHICLE_REG_NUMBER, VISIT_COUNT)
+ select VEHICLE_REG_NUMBER, count(*) from ticket group by VEHICLE_REG_NUMBER;
+commit;
@@ -0,0 +1,7 @@
+/* Range scans of closed tickets by exit time for the revenue reports.
+   Run on databases created before this index was added to Data.sql. */
+use prod;
+create index IDX_TICKET_OUT on ticket(OUT_TIME);
+
+use test;
+create index IDX_TICKET_OUT on ticket(OUT_TIME);
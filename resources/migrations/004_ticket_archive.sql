@@ -0,0 +1,23 @@
+/* Closed tickets older than the archive horizon are moved out of ticket into ticket_archive.
+   Run on databases created before ticket_archive was added to Data.sql. */
+use prod;
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL);
+create index IDX_TICKET_ARCHIVE_VEHICLE_IN on ticket_archive(VEHICLE_REG_NUMBER, IN_TIME);
+create index IDX_TICKET_ARCHIVE_OUT on ticket_archive(OUT_TIME);
+
+use test;
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL);
+create index IDX_TICKET_ARCHIVE_VEHICLE_IN on ticket_archive(VEHICLE_REG_NUMBER, IN_TIME);
+create index IDX_TICKET_ARCHIVE_OUT on ticket_archive(OUT_TIME);
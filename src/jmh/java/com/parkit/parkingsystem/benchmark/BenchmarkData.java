@@ -0,0 +1,39 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+
+/**
+ * Ticket history of the DAO benchmarks.
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Inserts closed tickets spread over many vehicles, parked on spot 1.
+     */
+    static void insertHistory(DataBaseConfig dataBaseConfig, int ticketCount) throws Exception {
+        Connection con = dataBaseConfig.beginTransaction();
+        try (PreparedStatement ps = con.prepareStatement(
+                "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(1,?,1.5,?,?)")) {
+            long start = System.currentTimeMillis() - ticketCount * 60_000L;
+            for (int i = 0; i < ticketCount; i++) {
+                long inTime = start + i * 60_000L;
+                ps.setString(1, "H" + (i % 100_000));
+                ps.setTimestamp(2, new Timestamp(inTime));
+                ps.setTimestamp(3, new Timestamp(inTime + 3_600_000L));
+                ps.addBatch();
+                if (i % 10_000 == 9_999) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+        dataBaseConfig.commitTransaction(con);
+    }
+}
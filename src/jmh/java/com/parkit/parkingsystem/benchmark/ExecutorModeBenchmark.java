@@ -0,0 +1,180 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.config.ConnectionPoolConfig;
+import com.parkit.parkingsystem.config.ExecutorConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed platform thread pool against virtual threads for a burst of concurrent gate entries.
+ * Each entry borrows a pooled connection and waits {@code dbLatencyMicros} per statement, like a
+ * blocking JDBC round trip. The score is the time to serve the whole burst; the peak number of
+ * platform threads is printed after each iteration.
+ * <p>
+ * The virtual mode needs a Java 21 JVM. The simulated round trip parks without pinning, real
+ * MySQL driver I/O pins the carrier, see {@link ExecutorConfig#configureCarriers(ConnectionPoolConfig)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutorModeBenchmark {
+
+    @Param({"FIXED", "VIRTUAL"})
+    public ExecutorConfig.Mode mode;
+
+    @Param({"1000"})
+    public int burst;
+
+    @Param({"10", "100"})
+    public int poolSize;
+
+    @Param({"1000"})
+    public long dbLatencyMicros;
+
+    private ExecutorService executor;
+    private ConnectionPool connectionPool;
+    private ParkingService parkingService;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    @Setup
+    public void setUp() {
+        ExecutorConfig executorConfig = new ExecutorConfig();
+        executorConfig.setMode(mode);
+        if (mode == ExecutorConfig.Mode.VIRTUAL && !ExecutorConfig.isVirtualThreadSupported()) {
+            throw new IllegalStateException("Virtual threads need a Java 21 JVM");
+        }
+        ConnectionPoolConfig poolConfig = new ConnectionPoolConfig();
+        poolConfig.setMaxSize(poolSize);
+        poolConfig.setMinIdle(0);
+        poolConfig.setEvictionIntervalMillis(0);
+        poolConfig.setValidationIntervalMillis(Long.MAX_VALUE);
+        poolConfig.setMaxWaitMillis(60_000);
+        executorConfig.configureCarriers(poolConfig);
+        connectionPool = new ConnectionPool(ExecutorModeBenchmark::newConnection, poolConfig);
+        executor = executorConfig.newExecutor();
+        parkingService = new ParkingService(new ParkingServiceBenchmark.StubParkingSpotDAO(), new LatencyTicketDAO());
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        connectionPool.shutdown();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPeakThreadCount() {
+        threads.resetPeakThreadCount();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printPeakThreadCount() {
+        System.out.println("peak platform threads: " + threads.getPeakThreadCount());
+    }
+
+    @Benchmark
+    public int serveBurst() throws Exception {
+        List<Future<Ticket>> tickets = new ArrayList<>(burst);
+        for (int i = 0; i < burst; i++) {
+            String vehicleRegNumber = "V" + i;
+            tickets.add(executor.submit(() -> parkingService.processIncomingVehicle(ParkingType.CAR, vehicleRegNumber)));
+        }
+        int served = 0;
+        for (Future<Ticket> ticket : tickets) {
+            if (ticket.get() != null) {
+                served++;
+            }
+        }
+        return served;
+    }
+
+    private static Connection newConnection() {
+        return (Connection) Proxy.newProxyInstance(ExecutorModeBenchmark.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getAutoCommit":
+                        case "isValid":
+                            return true;
+                        case "isClosed":
+                            return false;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private class LatencyTicketDAO extends ParkingServiceBenchmark.StubTicketDAO {
+        @Override
+        public Connection beginTransaction() {
+            try {
+                return connectionPool.borrow();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void commitTransaction(Connection con) {
+            roundTrip();
+            release(con);
+        }
+
+        @Override
+        public void rollbackTransaction(Connection con) {
+            release(con);
+        }
+
+        @Override
+        public boolean saveTicket(Connection con, Ticket ticket) {
+            roundTrip();
+            return true;
+        }
+
+        @Override
+        public int getNbTicket(Connection con, String vehicleRegNumber) {
+            roundTrip();
+            return 1;
+        }
+
+        private void release(Connection con) {
+            try {
+                con.close();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void roundTrip() {
+            LockSupport.parkNanos(dbLatencyMicros * 1000);
+        }
+    }
+}
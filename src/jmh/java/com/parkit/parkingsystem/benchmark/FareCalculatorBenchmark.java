@@ -0,0 +1,68 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fare calculation for both vehicle types, with and without the recurring customer discount.
+ * Run with {@code -prof gc}: {@code calculateFareCents} must report a
+ * {@code gc.alloc.rate.norm} of 0 B/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FareCalculatorBenchmark {
+
+    @Param({"CAR", "BIKE"})
+    private ParkingType parkingType;
+
+    @Param({"false", "true"})
+    private boolean discount;
+
+    private FareCalculatorService fareCalculatorService;
+    private Ticket ticket;
+    private long inMillis;
+    private long outMillis;
+
+    @Setup
+    public void setUp() {
+        fareCalculatorService = new FareCalculatorService();
+        long outTime = System.currentTimeMillis();
+        ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, parkingType, false));
+        ticket.setInTime(new Date(outTime - 3 * 60 * 60 * 1000));
+        ticket.setOutTime(new Date(outTime));
+        inMillis = ticket.getInTime().getTime();
+        outMillis = outTime;
+    }
+
+    @Benchmark
+    public double calculateFare() {
+        fareCalculatorService.calculateFare(ticket, discount);
+        return ticket.getPrice();
+    }
+
+    @Benchmark
+    public long calculateFareCents() {
+        return FareCalculatorService.calculateFareCents(inMillis, outMillis, parkingType, discount);
+    }
+}
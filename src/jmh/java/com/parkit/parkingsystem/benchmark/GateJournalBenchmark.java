@@ -0,0 +1,66 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.GateJournal;
+import com.parkit.parkingsystem.model.GateEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable gate events per second: each operation appends an event, waits for its fsync and
+ * acknowledges it, as a journaled gate does. With 16 lanes the fsyncs are shared, so the
+ * throughput should be well above one event per fsync of the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class GateJournalBenchmark {
+
+    private Path journalDir;
+    private GateJournal journal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        journalDir = Files.createTempDirectory("gate-journal-bench");
+        journal = new GateJournal(journalDir, 4 * 1024 * 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        journal.close();
+        File[] files = journalDir.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        Files.delete(journalDir);
+    }
+
+    @Benchmark
+    public long appendSyncAcknowledge() throws Exception {
+        long sequence = journal.append(GateEvent.entry("AB-123-CD", ParkingType.CAR, System.currentTimeMillis()));
+        journal.sync(sequence);
+        return journal.acknowledge(sequence);
+    }
+}
@@ -0,0 +1,132 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.EmbeddedDataBaseConfig;
+import com.parkit.parkingsystem.config.ExecutorConfig;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.service.GateApiServer;
+import com.parkit.parkingsystem.service.OccupancyService;
+import com.parkit.parkingsystem.service.ParkingService;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load-test client of the gate API: every lane loops over an entry then an exit of its own
+ * vehicle and the client reports the sustained gate events per second and the latencies.
+ * <p>
+ * {@code java -cp target/benchmarks.jar com.parkit.parkingsystem.benchmark.GateLoadClient <url|embedded> [lanes] [seconds]}
+ * <p>
+ * With {@code embedded} the client starts its own server on an in-memory H2 database.
+ */
+public class GateLoadClient {
+
+    private static final byte[] DISCARD = new byte[4096];
+
+    public static void main(String[] args) throws Exception {
+        String target = args.length > 0 ? args[0] : "embedded";
+        int lanes = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        GateApiServer server = null;
+        EmbeddedDataBaseConfig dataBaseConfig = null;
+        String baseUrl = target;
+        if ("embedded".equals(target)) {
+            dataBaseConfig = EmbeddedDataBaseConfig.inMemory("load" + System.nanoTime(), lanes, lanes);
+            ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+            parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+            parkingSpotDAO.loadAvailableSpots();
+            TicketDAO ticketDAO = new TicketDAO();
+            ticketDAO.dataBaseConfig = dataBaseConfig;
+            ExecutorConfig executorConfig = new ExecutorConfig();
+            executorConfig.configureCarriers(dataBaseConfig.getPoolConfig());
+            server = new GateApiServer(new ParkingService(parkingSpotDAO, ticketDAO), new OccupancyService(parkingSpotDAO), 0,
+                    executorConfig.newExecutor());
+            server.start();
+            baseUrl = "http://localhost:" + server.getPort();
+        }
+
+        System.out.println("Load test of " + baseUrl + " with " + lanes + " lanes for " + seconds + " s");
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong errors = new AtomicLong();
+        ExecutorService clients = Executors.newFixedThreadPool(lanes);
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int lane = 0; lane < lanes; lane++) {
+            String vehicle = "LOAD" + lane;
+            String base = baseUrl;
+            results.add(clients.submit(() -> runLane(base, vehicle, deadline, errors)));
+        }
+
+        long[] latencies = new long[0];
+        for (Future<long[]> result : results) {
+            long[] lane = result.get();
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + lane.length);
+            System.arraycopy(lane, 0, latencies, offset, lane.length);
+        }
+        clients.shutdown();
+        if (server != null) {
+            server.stop(0);
+            dataBaseConfig.shutdown();
+        }
+
+        Arrays.sort(latencies);
+        System.out.println("Gate events: " + latencies.length + ", errors: " + errors.get());
+        System.out.printf("Throughput: %.0f events/s%n", latencies.length / (double) seconds);
+        if (latencies.length > 0) {
+            System.out.printf("Latency ms: p50=%.2f p99=%.2f p99.9=%.2f max=%.2f%n", percentile(latencies, 0.50),
+                    percentile(latencies, 0.99), percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e6);
+        }
+    }
+
+    private static long[] runLane(String baseUrl, String vehicle, long deadline, AtomicLong errors) {
+        long[] latencies = new long[1024];
+        int count = 0;
+        boolean parked = false;
+        while (System.nanoTime() < deadline) {
+            String path = parked ? "/exit?vehicle=" + vehicle : "/entry?type=CAR&vehicle=" + vehicle;
+            long start = System.nanoTime();
+            int status = post(baseUrl + path);
+            long elapsed = System.nanoTime() - start;
+            if (status / 100 == 2) {
+                parked = !parked;
+            } else {
+                errors.incrementAndGet();
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = elapsed;
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static int post(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestMethod("POST");
+            int status = connection.getResponseCode();
+            // Lire la réponse jusqu'au bout pour réutiliser la connexion keep-alive
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                while (in != null && in.read(DISCARD) > 0) {
+                    // discard
+                }
+            }
+            return status;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(sorted.length * quantile))] / 1e6;
+    }
+}
@@ -0,0 +1,73 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotDAO;
+import com.parkit.parkingsystem.dao.InMemoryStore;
+import com.parkit.parkingsystem.dao.InMemoryTicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Entry then exit of a vehicle through {@link ParkingService} on the in-memory engine, from
+ * 8 gates, with the log written every 100 ms and a snapshot every second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class InMemoryEngineBenchmark {
+
+    private Path directory;
+    private InMemoryStore store;
+    private ParkingService parkingService;
+
+    @State(Scope.Thread)
+    public static class Gate {
+        private static final AtomicInteger gates = new AtomicInteger();
+        private final String vehicleRegNumber = "GATE" + gates.incrementAndGet();
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("memory-bench");
+        store = new InMemoryStore(directory, 1000, 1000);
+        store.start(100, 1000);
+        parkingService = new ParkingService(new InMemoryParkingSpotDAO(store), new InMemoryTicketDAO(store));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        store.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public Ticket entryAndExit(Gate gate) throws Exception {
+        parkingService.processIncomingVehicle(ParkingType.CAR, gate.vehicleRegNumber);
+        return parkingService.processExitingVehicle(gate.vehicleRegNumber);
+    }
+}
@@ -0,0 +1,73 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.EmbeddedDataBaseConfig;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging overhead of a DAO call (borrow, statement, result set, release) from several gates.
+ * Each fork logs to a file under target/benchmark-logs with another logging setup:
+ * synchronous with every lifecycle message (the former INFO logs), asynchronous with every
+ * lifecycle message, and the default asynchronous setup where they are sampled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+public class LoggingBenchmark {
+
+    private static final String FILE = "-Dparkit.log.appender=File";
+    private static final String SYNCHRONOUS = "-DLog4jContextSelector=org.apache.logging.log4j.core.selector.ClassLoaderContextSelector";
+
+    private EmbeddedDataBaseConfig dataBaseConfig;
+    private TicketDAO ticketDAO;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataBaseConfig = EmbeddedDataBaseConfig.inMemory("logging" + System.nanoTime(), 100, 100);
+        BenchmarkData.insertHistory(dataBaseConfig, 1_000);
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataBaseConfig.shutdown();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {SYNCHRONOUS, FILE, "-Dparkit.log.db=trace",
+            "-Dparkit.log.file=target/benchmark-logs/synchronous.log"})
+    public int synchronousPerCall() {
+        return ticketDAO.getNbTicket("H42");
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {FILE, "-Dparkit.log.db=trace",
+            "-Dparkit.log.file=target/benchmark-logs/async.log"})
+    public int asyncPerCall() {
+        return ticketDAO.getNbTicket("H42");
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {FILE, "-Dparkit.log.db=debug",
+            "-Dparkit.log.file=target/benchmark-logs/async-sampled.log"})
+    public int asyncSampled() {
+        return ticketDAO.getNbTicket("H42");
+    }
+}
@@ -0,0 +1,66 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.EmbeddedDataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exit lookup of the open ticket as the ticket history grows. With the vehicle indexes the
+ * latency should stay flat across history sizes. Run the 10M case with a large heap:
+ * {@code java -Xmx8g -jar target/benchmarks.jar OpenTicketLookup -p historySize=10000000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpenTicketLookupBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int historySize;
+
+    private EmbeddedDataBaseConfig dataBaseConfig;
+    private TicketDAO ticketDAO;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataBaseConfig = EmbeddedDataBaseConfig.inMemory("lookup" + historySize, 10, 10);
+        BenchmarkData.insertHistory(dataBaseConfig, historySize);
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber("H42");
+        ticket.setInTime(new Date());
+        ticketDAO.saveTicket(ticket);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataBaseConfig.shutdown();
+    }
+
+    @Benchmark
+    public Ticket getOpenTicket() {
+        return ticketDAO.getOpenTicket("H42");
+    }
+}
@@ -0,0 +1,141 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry and exit workflows of {@link ParkingService} against in-memory DAO stand-ins, so only
+ * the service logic is measured. Console output is discarded during the run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParkingServiceBenchmark {
+
+    private ParkingService parkingService;
+    private PrintStream console;
+
+    @Setup
+    public void setUp() {
+        console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                // discarded
+            }
+        }));
+        parkingService = new ParkingService(new ScriptedInputReaderUtil(), new StubParkingSpotDAO(), new StubTicketDAO());
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public void processIncomingVehicle() {
+        parkingService.processIncomingVehicle();
+    }
+
+    @Benchmark
+    public void processExitingVehicle() {
+        parkingService.processExitingVehicle();
+    }
+
+    static class ScriptedInputReaderUtil extends InputReaderUtil {
+        @Override
+        public int readSelection() {
+            return 1;
+        }
+
+        @Override
+        public String readVehicleRegistrationNumber() {
+            return "BENCH1";
+        }
+    }
+
+    static class StubParkingSpotDAO extends ParkingSpotDAO {
+        @Override
+        public ParkingSpot reserveNextAvailable(Connection con, ParkingType parkingType) {
+            return new ParkingSpot(1, parkingType, false);
+        }
+
+        @Override
+        public boolean updateParking(Connection con, ParkingSpot parkingSpot) {
+            return true;
+        }
+
+        @Override
+        public void cancelReservation(ParkingSpot parkingSpot) {
+            // nothing reserved
+        }
+    }
+
+    static class StubTicketDAO extends TicketDAO {
+        @Override
+        public Connection beginTransaction() {
+            return null;
+        }
+
+        @Override
+        public void commitTransaction(Connection con) {
+            // no transaction
+        }
+
+        @Override
+        public void rollbackTransaction(Connection con) {
+            // no transaction
+        }
+
+        @Override
+        public boolean saveTicket(Connection con, Ticket ticket) {
+            return true;
+        }
+
+        @Override
+        public int getNbTicket(Connection con, String vehicleRegNumber) {
+            return 2;
+        }
+
+        @Override
+        public Ticket getOpenTicketWithVisitCount(Connection con, String vehicleRegNumber) {
+            Ticket ticket = new Ticket();
+            ticket.setId(1);
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+            ticket.setInTime(new Date(System.currentTimeMillis() - 2 * 60 * 60 * 1000));
+            ticket.setVisitCount(2);
+            return ticket;
+        }
+
+        @Override
+        public boolean updateTicket(Connection con, Ticket ticket) {
+            return true;
+        }
+    }
+}
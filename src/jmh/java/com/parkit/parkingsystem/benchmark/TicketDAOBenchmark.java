@@ -0,0 +1,120 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.EmbeddedDataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DAO calls of the gate workflows against an embedded H2 database. The tickets inserted by
+ * {@link #saveTicket()} are deleted before each iteration, so every iteration runs on the same
+ * table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TicketDAOBenchmark {
+
+    private EmbeddedDataBaseConfig dataBaseConfig;
+    private TicketDAO ticketDAO;
+    private ParkingSpotDAO parkingSpotDAO;
+    private Ticket ticket;
+    private int lastSeededId;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataBaseConfig = EmbeddedDataBaseConfig.inMemory("dao" + System.nanoTime(), 100, 100);
+        BenchmarkData.insertHistory(dataBaseConfig, 10_000);
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO.loadAvailableSpots();
+
+        ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber("BENCH1");
+        ticket.setInTime(new Date());
+        ticketDAO.saveTicket(ticket);
+
+        // H42 is still parked: getOpenTicket finds it among its closed tickets
+        Ticket parked = new Ticket();
+        parked.setParkingSpot(new ParkingSpot(3, ParkingType.CAR, false));
+        parked.setVehicleRegNumber("H42");
+        parked.setInTime(new Date());
+        ticketDAO.saveTicket(parked);
+        lastSeededId = lastTicketId();
+    }
+
+    @Setup(Level.Iteration)
+    public void deleteSavedTickets() throws Exception {
+        Connection con = dataBaseConfig.getConnection();
+        try (PreparedStatement ps = con.prepareStatement("delete from ticket where ID > ?")) {
+            ps.setInt(1, lastSeededId);
+            ps.executeUpdate();
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataBaseConfig.shutdown();
+    }
+
+    @Benchmark
+    public boolean saveTicket() {
+        return ticketDAO.saveTicket(ticket);
+    }
+
+    @Benchmark
+    public Ticket getOpenTicket() {
+        return ticketDAO.getOpenTicket("H42");
+    }
+
+    @Benchmark
+    public int getNbTicket() {
+        return ticketDAO.getNbTicket("BENCH1");
+    }
+
+    @Benchmark
+    public boolean reserveAndReleaseSpot() {
+        ParkingSpot parkingSpot = parkingSpotDAO.reserveNextAvailable(ParkingType.BIKE);
+        parkingSpot.setAvailable(true);
+        return parkingSpotDAO.updateParking(parkingSpot);
+    }
+
+    private int lastTicketId() throws Exception {
+        Connection con = dataBaseConfig.getConnection();
+        try (PreparedStatement ps = con.prepareStatement("select max(ID) from ticket");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+}
@@ -1,13 +1,25 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.service.GateApiServer;
 import com.parkit.parkingsystem.service.InteractiveShell;
+import com.parkit.parkingsystem.service.RepricingJob;
+import com.parkit.parkingsystem.service.TicketArchiveService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class App {
     private static final Logger logger = LogManager.getLogger("App");
-    public static void main(String args[]){
+    public static void main(String args[]) throws Exception {
         logger.info("Initializing Parking System");
-        InteractiveShell.loadInterface();
+        if (args.length > 0 && "--server".equals(args[0])) {
+            GateApiServer.launch();
+        } else if (args.length > 0 && "--reprice".equals(args[0])) {
+            boolean dryRun = args.length > 1 && "--dry-run".equals(args[1]);
+            System.exit(RepricingJob.launch(dryRun) ? 0 : 1);
+        } else if (args.length > 1 && ("--export".equals(args[0]) || "--import".equals(args[0]))) {
+            System.exit(TicketArchiveService.launch("--export".equals(args[0]), args[1]) ? 0 : 1);
+        } else {
+            InteractiveShell.loadInterface();
+        }
     }
 }
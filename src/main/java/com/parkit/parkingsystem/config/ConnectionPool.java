@@ -0,0 +1,339 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of physical JDBC connections.
+ * <p>
+ * Borrowed connections are proxies: calling {@link Connection#close()} hands the physical
+ * connection back to the pool instead of closing it, so DAO code keeps its usual
+ * open/close pattern. Prepared statements are cached per physical connection, see
+ * {@link StatementCache}. Idle connections are kept LIFO so the most recently used one is
+ * reused first and the oldest ones age out through idle eviction.
+ */
+public class ConnectionPool {
+
+    private static final Logger logger = LogManager.getLogger("ConnectionPool");
+
+    private static final Timer waitTimer = MetricsRegistry.getDefault().timer("pool.wait");
+
+    /**
+     * Opens a new physical connection.
+     */
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private static class PooledEntry {
+        private final Connection physical;
+        private final StatementCache statements;
+        private volatile long lastReleased;
+
+        private PooledEntry(Connection physical, int statementCacheSize) {
+            this.physical = physical;
+            this.statements = statementCacheSize > 0 ? new StatementCache(physical, statementCacheSize) : null;
+            this.lastReleased = System.currentTimeMillis();
+        }
+    }
+
+    private final ConnectionFactory factory;
+    private final ConnectionPoolConfig config;
+    private final LinkedBlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final ScheduledExecutorService evictor;
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private volatile boolean shutdown;
+
+    public ConnectionPool(ConnectionFactory factory, ConnectionPoolConfig config) {
+        this.factory = factory;
+        this.config = config;
+        this.permits = new Semaphore(config.getMaxSize(), true);
+        if (config.getEvictionIntervalMillis() > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "parkit-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            evictor.scheduleWithFixedDelay(this::evictIdleConnections, config.getEvictionIntervalMillis(),
+                    config.getEvictionIntervalMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+        // Open the minimum idle connections now rather than at the first eviction run
+        fillToMinIdle();
+    }
+
+    /**
+     * Borrows a connection, waiting at most {@link ConnectionPoolConfig#getMaxWaitMillis()} for one
+     * to become available.
+     */
+    public Connection borrow() throws SQLException {
+        if (shutdown) {
+            throw new SQLException("Connection pool is shut down");
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(config.getMaxWaitMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a DB connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+        if (!acquired) {
+            timeoutCount.increment();
+            waitTimer.error();
+            throw new SQLTimeoutException("No DB connection available after " + config.getMaxWaitMillis()
+                    + " ms (active=" + activeCount.get() + ", max=" + config.getMaxSize() + ")");
+        }
+        try {
+            PooledEntry entry;
+            while ((entry = idle.pollFirst()) != null && !isValid(entry)) {
+                destroy(entry);
+            }
+            if (entry == null) {
+                entry = open();
+            }
+            activeCount.incrementAndGet();
+            borrowCount.increment();
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new PooledConnectionHandler(entry));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes every idle connection and refuses further borrows. Connections currently
+     * borrowed are closed when they are handed back.
+     */
+    public void shutdown() {
+        shutdown = true;
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            destroy(entry);
+        }
+    }
+
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getTotalCount() {
+        return totalCount.get();
+    }
+
+    public int getMaxSize() {
+        return config.getMaxSize();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.sum() + timeoutCount.sum();
+        return borrows == 0 ? 0 : totalWaitNanos.sum() / 1_000_000.0 / borrows;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool[active=" + getActiveCount() + ", idle=" + getIdleCount() + ", total=" + getTotalCount()
+                + ", max=" + getMaxSize() + ", borrows=" + getBorrowCount() + ", timeouts=" + getTimeoutCount()
+                + ", avgWaitMs=" + String.format("%.3f", getAverageWaitMillis()) + "]";
+    }
+
+    /**
+     * Closes idle connections unused for longer than the idle timeout, keeping at least
+     * {@link ConnectionPoolConfig#getMinIdle()} of them, then tops the pool back up to that minimum.
+     * Runs periodically on the evictor thread.
+     */
+    public void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledEntry> it = idle.descendingIterator();
+        while (it.hasNext() && idle.size() > config.getMinIdle()) {
+            PooledEntry entry = it.next();
+            if (now - entry.lastReleased > config.getIdleTimeoutMillis() && idle.removeLastOccurrence(entry)) {
+                destroy(entry);
+            }
+        }
+        fillToMinIdle();
+    }
+
+    private void fillToMinIdle() {
+        while (!shutdown && totalCount.get() < config.getMinIdle() && idle.size() < config.getMinIdle()) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException e) {
+                logger.error("Error while refilling the connection pool", e);
+                break;
+            }
+        }
+    }
+
+    private PooledEntry open() throws SQLException {
+        Connection physical = factory.create();
+        totalCount.incrementAndGet();
+        return new PooledEntry(physical, config.getStatementCacheSize());
+    }
+
+    private boolean isValid(PooledEntry entry) {
+        if (System.currentTimeMillis() - entry.lastReleased < config.getValidationIntervalMillis()) {
+            return true;
+        }
+        try {
+            return entry.physical.isValid(config.getValidationTimeoutSeconds());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledEntry entry) {
+        activeCount.decrementAndGet();
+        try {
+            if (entry.statements != null) {
+                entry.statements.recycleBorrowed();
+            }
+            if (shutdown || entry.physical.isClosed()) {
+                destroy(entry);
+                return;
+            }
+            if (!entry.physical.getAutoCommit()) {
+                entry.physical.rollback();
+                entry.physical.setAutoCommit(true);
+            }
+            entry.lastReleased = System.currentTimeMillis();
+            idle.offerFirst(entry);
+        } catch (SQLException e) {
+            logger.error("Error while returning connection to the pool", e);
+            destroy(entry);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void destroy(PooledEntry entry) {
+        totalCount.decrementAndGet();
+        if (entry.statements != null) {
+            entry.statements.closeAll();
+        }
+        try {
+            entry.physical.close();
+        } catch (SQLException e) {
+            logger.error("Error while closing pooled connection", e);
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        waitTimer.getHistogram().record(waitNanos);
+        totalWaitNanos.add(waitNanos);
+        long max;
+        while (waitNanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+            // retry until the max is published
+        }
+    }
+
+    /**
+     * Only {@code prepareStatement(String)} and {@code prepareStatement(String, int autoGeneratedKeys)}
+     * go through the statement cache.
+     */
+    private static boolean isCacheable(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        return types.length == 1 || types.length == 2 && types[1] == int.class;
+    }
+
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final PooledEntry entry;
+        private boolean closed;
+
+        private PooledConnectionHandler(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close": {
+                    if (!closed) {
+                        closed = true;
+                        release(entry);
+                    }
+                    return null;
+                }
+                case "isClosed": {
+                    return closed || entry.physical.isClosed();
+                }
+                case "equals": {
+                    return proxy == args[0];
+                }
+                case "hashCode": {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString": {
+                    return "Pooled[" + entry.physical + "]";
+                }
+                default: {
+                    if (closed) {
+                        throw new SQLException("Connection already returned to the pool");
+                    }
+                    if (entry.statements != null && "prepareStatement".equals(method.getName())
+                            && isCacheable(method)) {
+                        return entry.statements.prepare((Connection) proxy, args);
+                    }
+                    try {
+                        return method.invoke(entry.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.parkit.parkingsystem.config;
+
+/**
+ * Sizing and housekeeping settings of a {@link ConnectionPool}.
+ * Every value can be overridden with a system property, e.g. {@code -Dparkit.pool.maxSize=20}.
+ */
+public class ConnectionPoolConfig {
+
+    private int minIdle = Integer.getInteger("parkit.pool.minIdle", 2);
+    private int maxSize = Integer.getInteger("parkit.pool.maxSize", 10);
+    private long maxWaitMillis = Long.getLong("parkit.pool.maxWaitMillis", 5000L);
+    private long idleTimeoutMillis = Long.getLong("parkit.pool.idleTimeoutMillis", 60000L);
+    private long evictionIntervalMillis = Long.getLong("parkit.pool.evictionIntervalMillis", 30000L);
+    private int validationTimeoutSeconds = Integer.getInteger("parkit.pool.validationTimeoutSeconds", 2);
+    private long validationIntervalMillis = Long.getLong("parkit.pool.validationIntervalMillis", 1000L);
+    private int statementCacheSize = Integer.getInteger("parkit.pool.statementCacheSize", 32);
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getEvictionIntervalMillis() {
+        return evictionIntervalMillis;
+    }
+
+    public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    public int getValidationTimeoutSeconds() {
+        return validationTimeoutSeconds;
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    /**
+     * A connection returned to the pool less than this many milliseconds ago is handed out again
+     * without a validation round trip.
+     */
+    public long getValidationIntervalMillis() {
+        return validationIntervalMillis;
+    }
+
+    public void setValidationIntervalMillis(long validationIntervalMillis) {
+        this.validationIntervalMillis = validationIntervalMillis;
+    }
+
+    /**
+     * Prepared statements kept open per physical connection, 0 to prepare them on every call.
+     */
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+}
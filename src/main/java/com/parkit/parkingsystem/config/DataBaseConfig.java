@@ -1,26 +1,202 @@
 package com.parkit.parkingsystem.config;
 
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
 
 import java.sql.*;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Connections to the database of the app, MySQL unless {@link #create()} picks the embedded backend.
+ * <p>
+ * A deployment running several facilities has one database per facility, see {@link ShardRouter}.
+ */
 public class DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
+    /**
+     * Connection lifecycle messages are logged at TRACE on every call; at DEBUG only one line
+     * every {@code LIFECYCLE_LOG_SAMPLE} released connections.
+     */
+    static final int LIFECYCLE_LOG_SAMPLE = 1024;
+
+    private final AtomicLong releasedConnections = new AtomicLong();
+    private final String driverClassName;
+    private final String url;
+    private final String user;
+    private final String password;
+    private String facility;
+
+    private final ConnectionPoolConfig poolConfig = new ConnectionPoolConfig();
+    private volatile ConnectionPool pool;
+
+    public DataBaseConfig() {
+        this("com.mysql.cj.jdbc.Driver",
+                "jdbc:mysql://localhost:3306/prod?rewriteBatchedStatements=true&useServerPrepStmts=true&useCursorFetch=true", "root", "rootroot");
+    }
+
+    protected DataBaseConfig(String driverClassName, String url, String user, String password) {
+        this.driverClassName = driverClassName;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    /**
+     * Returns the configuration of the backend named by {@code -Dparkit.db.backend}: {@code mysql}
+     * (the default) or {@code embedded}, see {@link EmbeddedDataBaseConfig}. With
+     * {@code -Dparkit.facility}, the database of that facility.
+     */
+    public static DataBaseConfig create() {
+        return create(System.getProperty("parkit.facility"));
+    }
+
+    /**
+     * Returns the configuration of the database of a facility, or of the single-site database
+     * when {@code facility} is null.
+     * <p>
+     * A facility's MySQL database is {@code -Dparkit.facility.<id>.url}, {@code .user} and
+     * {@code .password}, by default the database named after it on the local server. Its embedded
+     * database is named after it too, or stored in {@code -Dparkit.db.file} followed by
+     * {@code -<id>}, with {@code -Dparkit.facility.<id>.carSpots} and {@code .bikeSpots} spots.
+     */
+    public static DataBaseConfig create(String facility) {
+        DataBaseConfig config;
+        if (!"embedded".equals(System.getProperty("parkit.db.backend"))) {
+            if (facility == null) {
+                return new DataBaseConfig();
+            }
+            String prefix = "parkit.facility." + facility + ".";
+            config = new DataBaseConfig("com.mysql.cj.jdbc.Driver",
+                    System.getProperty(prefix + "url", "jdbc:mysql://localhost:3306/" + facility
+                            + "?rewriteBatchedStatements=true&useServerPrepStmts=true&useCursorFetch=true"),
+                    System.getProperty(prefix + "user", "root"), System.getProperty(prefix + "password", "rootroot"));
+        } else {
+            int carSpots = Integer.getInteger("parkit.db.carSpots", 3);
+            int bikeSpots = Integer.getInteger("parkit.db.bikeSpots", 2);
+            String file = System.getProperty("parkit.db.file");
+            if (facility == null) {
+                return file == null ? EmbeddedDataBaseConfig.inMemory("prod", carSpots, bikeSpots)
+                        : EmbeddedDataBaseConfig.inFile(file, carSpots, bikeSpots);
+            }
+            carSpots = Integer.getInteger("parkit.facility." + facility + ".carSpots", carSpots);
+            bikeSpots = Integer.getInteger("parkit.facility." + facility + ".bikeSpots", bikeSpots);
+            config = file == null ? EmbeddedDataBaseConfig.inMemory(facility, carSpots, bikeSpots)
+                    : EmbeddedDataBaseConfig.inFile(file + "-" + facility, carSpots, bikeSpots);
+        }
+        config.setFacility(facility);
+        return config;
+    }
+
+    /**
+     * Borrows a connection from the pool. Closing it through {@link #closeConnection(Connection)}
+     * hands it back to the pool.
+     */
     public Connection getConnection() throws ClassNotFoundException, SQLException {
-        logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/prod","root","rootroot");
+        return getPool().borrow();
+    }
+
+    /**
+     * Returns the connection pool of this configuration, creating it on first use.
+     * Pool settings must be changed through {@link #getPoolConfig()} before that.
+     */
+    public ConnectionPool getPool() throws ClassNotFoundException {
+        ConnectionPool result = pool;
+        if (result == null) {
+            synchronized (this) {
+                result = pool;
+                if (result == null) {
+                    Class.forName(driverClassName);
+                    result = new ConnectionPool(this::openConnection, poolConfig);
+                    pool = result;
+                    MetricsRegistry metrics = MetricsRegistry.getDefault();
+                    String prefix = facility == null ? "pool." : "pool." + facility + ".";
+                    metrics.gauge(prefix + "active", result::getActiveCount);
+                    metrics.gauge(prefix + "idle", result::getIdleCount);
+                    metrics.gauge(prefix + "total", result::getTotalCount);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Borrows a connection with auto-commit off. End the transaction with
+     * {@link #commitTransaction(Connection)} or {@link #rollbackTransaction(Connection)},
+     * which also hand the connection back to the pool.
+     */
+    public Connection beginTransaction() throws ClassNotFoundException, SQLException {
+        Connection con = getConnection();
+        con.setAutoCommit(false);
+        return con;
+    }
+
+    public void commitTransaction(Connection con) throws SQLException {
+        try {
+            con.commit();
+        } finally {
+            closeConnection(con);
+        }
+    }
+
+    public void rollbackTransaction(Connection con) {
+        if(con!=null){
+            try {
+                if (!con.isClosed()) {
+                    con.rollback();
+                }
+            } catch (SQLException e) {
+                logger.error("Error while rolling back transaction",e);
+            } finally {
+                closeConnection(con);
+            }
+        }
+    }
+
+    public ConnectionPoolConfig getPoolConfig() {
+        return poolConfig;
+    }
+
+    /**
+     * Facility whose database this is, null for a single-site deployment. Names the pool metrics,
+     * so it must be set before the pool is created.
+     */
+    public String getFacility() {
+        return facility;
+    }
+
+    public void setFacility(String facility) {
+        this.facility = facility;
+    }
+
+    /**
+     * Opens a new physical connection, called by the pool when it needs to grow.
+     */
+    protected Connection openConnection() throws SQLException {
+        logger.debug("Create DB connection");
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    public synchronized void shutdown() {
+        if (pool != null) {
+            logger.info("Shutting down {}", pool);
+            pool.shutdown();
+            pool = null;
+        }
     }
 
     public void closeConnection(Connection con){
         if(con!=null){
             try {
                 con.close();
-                logger.info("Closing DB connection");
+                logger.trace("Releasing DB connection");
+                long released = releasedConnections.incrementAndGet();
+                if (released % LIFECYCLE_LOG_SAMPLE == 0) {
+                    logger.debug("Released {} DB connections", Unbox.box(released));
+                }
             } catch (SQLException e) {
                 logger.error("Error while closing connection",e);
             }
@@ -31,7 +207,7 @@ public class DataBaseConfig {
         if(ps!=null){
             try {
                 ps.close();
-                logger.info("Closing Prepared Statement");
+                logger.trace("Closing Prepared Statement");
             } catch (SQLException e) {
                 logger.error("Error while closing prepared statement",e);
             }
@@ -42,7 +218,7 @@ public class DataBaseConfig {
         if(rs!=null){
             try {
                 rs.close();
-                logger.info("Closing Result Set");
+                logger.trace("Closing Result Set");
             } catch (SQLException e) {
                 logger.error("Error while closing result set",e);
             }
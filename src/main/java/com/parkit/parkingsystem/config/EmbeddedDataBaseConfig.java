@@ -0,0 +1,100 @@
+package com.parkit.parkingsystem.config;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * In-process H2 database in MySQL mode, so a small site runs without a database server.
+ * <p>
+ * The database lives in memory, or in a file to survive restarts. The schema of
+ * resources/Data.sql is created on the first connection if missing, with the given number of
+ * CAR spots followed by BIKE spots when the parking table is empty.
+ */
+public class EmbeddedDataBaseConfig extends DataBaseConfig {
+
+    private static final String[] SCHEMA = {
+            "create table if not exists parking(PARKING_NUMBER int PRIMARY KEY, AVAILABLE bool NOT NULL, TYPE varchar(10) NOT NULL)",
+            "create table if not exists ticket(ID int PRIMARY KEY AUTO_INCREMENT, PARKING_NUMBER int NOT NULL,"
+                    + " VEHICLE_REG_NUMBER varchar(10) NOT NULL, PRICE double, IN_TIME DATETIME NOT NULL, OUT_TIME DATETIME,"
+                    + " FOREIGN KEY (PARKING_NUMBER) REFERENCES parking(PARKING_NUMBER))",
+            "create index if not exists IDX_TICKET_VEHICLE_OUT on ticket(VEHICLE_REG_NUMBER, OUT_TIME)",
+            "create index if not exists IDX_TICKET_VEHICLE_IN on ticket(VEHICLE_REG_NUMBER, IN_TIME)",
+            "create index if not exists IDX_TICKET_OUT on ticket(OUT_TIME)",
+            "create table if not exists ticket_archive(ID int PRIMARY KEY, PARKING_NUMBER int NOT NULL,"
+                    + " VEHICLE_REG_NUMBER varchar(10) NOT NULL, PRICE double, IN_TIME DATETIME NOT NULL, OUT_TIME DATETIME NOT NULL)",
+            "create index if not exists IDX_TICKET_ARCHIVE_VEHICLE_IN on ticket_archive(VEHICLE_REG_NUMBER, IN_TIME)",
+            "create index if not exists IDX_TICKET_ARCHIVE_OUT on ticket_archive(OUT_TIME)",
+            "create table if not exists vehicle_stats(VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY, VISIT_COUNT int NOT NULL)"
+    };
+
+    private final int carSpots;
+    private final int bikeSpots;
+    private volatile boolean schemaCreated;
+
+    /**
+     * @param database {@code mem:<name>} or {@code file:<path>}
+     */
+    protected EmbeddedDataBaseConfig(String database, int carSpots, int bikeSpots) {
+        super("org.h2.Driver", "jdbc:h2:" + database + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        this.carSpots = carSpots;
+        this.bikeSpots = bikeSpots;
+    }
+
+    /**
+     * Database kept in memory until the JVM stops, shared by every configuration of that name.
+     */
+    public static EmbeddedDataBaseConfig inMemory(String name, int carSpots, int bikeSpots) {
+        return new EmbeddedDataBaseConfig("mem:" + name, carSpots, bikeSpots);
+    }
+
+    /**
+     * Database stored in {@code path.mv.db}.
+     */
+    public static EmbeddedDataBaseConfig inFile(String path, int carSpots, int bikeSpots) {
+        return new EmbeddedDataBaseConfig("file:" + path, carSpots, bikeSpots);
+    }
+
+    @Override
+    protected Connection openConnection() throws SQLException {
+        Connection con = super.openConnection();
+        if (!schemaCreated) {
+            try {
+                createSchema(con);
+            } catch (SQLException e) {
+                con.close();
+                throw e;
+            }
+        }
+        return con;
+    }
+
+    private synchronized void createSchema(Connection con) throws SQLException {
+        if (schemaCreated) {
+            return;
+        }
+        try (Statement statement = con.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+            try (ResultSet rs = statement.executeQuery("select count(*) from parking")) {
+                rs.next();
+                if (rs.getInt(1) > 0) {
+                    schemaCreated = true;
+                    return;
+                }
+            }
+        }
+        try (PreparedStatement ps = con.prepareStatement("insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(?,true,?)")) {
+            for (int number = 1; number <= carSpots + bikeSpots; number++) {
+                ps.setInt(1, number);
+                ps.setString(2, number <= carSpots ? "CAR" : "BIKE");
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        schemaCreated = true;
+    }
+}
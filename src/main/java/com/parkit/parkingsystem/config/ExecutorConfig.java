@@ -0,0 +1,125 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How gate operations are dispatched, set with {@code -Dparkit.executor}:
+ * <ul>
+ * <li>{@code fixed} (default): a bounded pool of platform threads, see {@link #getThreads()}</li>
+ * <li>{@code virtual}: one virtual thread per operation, on Java 21 and later. Concurrency
+ * into JDBC is then only bounded by the connection pool.</li>
+ * </ul>
+ * The build targets Java 8, so virtual threads are looked up reflectively; on an older JVM the
+ * virtual mode falls back to the fixed pool.
+ */
+public class ExecutorConfig {
+
+    private static final Logger logger = LogManager.getLogger("ExecutorConfig");
+
+    private static final String CARRIER_PARALLELISM = "jdk.virtualThreadScheduler.parallelism";
+
+    public enum Mode {
+        FIXED, VIRTUAL
+    }
+
+    private Mode mode = Mode.valueOf(System.getProperty("parkit.executor", "fixed").toUpperCase());
+    private int threads = Integer.getInteger("parkit.http.threads", 32);
+    private int queueCapacity = Integer.getInteger("parkit.http.queueCapacity", 1000);
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Platform threads of the fixed pool.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Operations waiting for a thread of the fixed pool. Beyond that the operation is rejected
+     * with a {@link java.util.concurrent.RejectedExecutionException}, and the gate API answers 503.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadFactoryMethod() != null;
+    }
+
+    /**
+     * Sizes the virtual thread scheduler for a connection pool. The MySQL driver does its socket
+     * I/O inside {@code synchronized} blocks, which pins the carrier thread for the whole round
+     * trip; with one spare carrier per pooled connection on top of one per CPU, JDBC calls can
+     * never take every carrier. Must run before the first virtual thread is started, and leaves
+     * an explicit {@value #CARRIER_PARALLELISM} alone.
+     */
+    public void configureCarriers(ConnectionPoolConfig poolConfig) {
+        configureCarriers(poolConfig.getMaxSize());
+    }
+
+    /**
+     * Same as {@link #configureCarriers(ConnectionPoolConfig)} for pools holding up to
+     * {@code maxConnections} together, e.g. one pool per facility.
+     */
+    public void configureCarriers(int maxConnections) {
+        if (mode != Mode.VIRTUAL || System.getProperty(CARRIER_PARALLELISM) != null) {
+            return;
+        }
+        int parallelism = Runtime.getRuntime().availableProcessors() + maxConnections;
+        System.setProperty(CARRIER_PARALLELISM, String.valueOf(parallelism));
+        logger.info("Virtual thread scheduler sized to {} carriers", parallelism);
+    }
+
+    public ExecutorService newExecutor() {
+        if (mode == Mode.VIRTUAL) {
+            Method factory = virtualThreadFactoryMethod();
+            if (factory != null) {
+                try {
+                    return (ExecutorService) factory.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    logger.error("Unable to create virtual thread executor", e);
+                }
+            }
+            logger.warn("Virtual threads need Java 21, using a pool of {} threads", threads);
+        }
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "parkit-gate-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static Method virtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
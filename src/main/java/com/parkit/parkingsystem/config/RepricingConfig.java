@@ -0,0 +1,81 @@
+package com.parkit.parkingsystem.config;
+
+/**
+ * Settings of a bulk re-pricing run.
+ * Every value can be overridden with a system property, e.g. {@code -Dparkit.repricing.threads=8}.
+ */
+public class RepricingConfig {
+
+    private int threads = Integer.getInteger("parkit.repricing.threads", 4);
+    private int partitionSize = Integer.getInteger("parkit.repricing.partitionSize", 10000);
+    private String checkpointFile = System.getProperty("parkit.repricing.checkpoint", "repricing.checkpoint");
+    private String diffFile = System.getProperty("parkit.repricing.diff");
+    private boolean dryRun = Boolean.getBoolean("parkit.repricing.dryRun");
+    private long progressIntervalMillis = Long.getLong("parkit.repricing.progressIntervalMillis", 10000L);
+
+    /**
+     * Number of partitions re-priced at once, each on its own pooled connection.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Number of ticket IDs per partition; a partition is read, re-priced and written in one
+     * transaction.
+     */
+    public int getPartitionSize() {
+        return partitionSize;
+    }
+
+    public void setPartitionSize(int partitionSize) {
+        this.partitionSize = partitionSize;
+    }
+
+    /**
+     * File listing the partitions already written, so an interrupted run resumes where it
+     * stopped; null to start over every time.
+     */
+    public String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public void setCheckpointFile(String checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * CSV file receiving the ID, old and new price of every ticket whose price changes; null for
+     * none.
+     */
+    public String getDiffFile() {
+        return diffFile;
+    }
+
+    public void setDiffFile(String diffFile) {
+        this.diffFile = diffFile;
+    }
+
+    /**
+     * Computes the new prices and the diff without writing them or the checkpoint.
+     */
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    public long getProgressIntervalMillis() {
+        return progressIntervalMillis;
+    }
+
+    public void setProgressIntervalMillis(long progressIntervalMillis) {
+        this.progressIntervalMillis = progressIntervalMillis;
+    }
+}
@@ -0,0 +1,84 @@
+package com.parkit.parkingsystem.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Database of each facility of a multi-site deployment.
+ * <p>
+ * Every facility has a database of its own, with the schema of resources/Data.sql and its own
+ * connection pool, so the tables, indexes and locks of a busy site are never shared with the
+ * others. Databases can live on one server or be spread over several through
+ * {@code -Dparkit.facility.<id>.url}, see {@link DataBaseConfig#create(String)}.
+ * <p>
+ * The facilities are listed in {@code -Dparkit.facilities=north,south}. Without it the router
+ * holds the single database of {@link DataBaseConfig#create()}.
+ */
+public class ShardRouter {
+
+    private final Map<String, DataBaseConfig> shards = new LinkedHashMap<>();
+
+    /**
+     * @param facilities the facility ids; a null id stands for the single-site database
+     */
+    public ShardRouter(List<String> facilities) {
+        for (String facility : facilities) {
+            shards.put(facility, DataBaseConfig.create(facility));
+        }
+    }
+
+    /**
+     * @return a router over the facilities of the {@code parkit.facilities} system property
+     */
+    public static ShardRouter create() {
+        return new ShardRouter(getConfiguredFacilities());
+    }
+
+    /**
+     * @return the ids of {@code -Dparkit.facilities}, or only {@code -Dparkit.facility}, null when unset
+     */
+    public static List<String> getConfiguredFacilities() {
+        List<String> facilities = new ArrayList<>();
+        for (String facility : System.getProperty("parkit.facilities", "").split(",")) {
+            if (!facility.trim().isEmpty()) {
+                facilities.add(facility.trim());
+            }
+        }
+        if (facilities.isEmpty()) {
+            facilities.add(System.getProperty("parkit.facility"));
+        }
+        return facilities;
+    }
+
+    public Set<String> getFacilities() {
+        return Collections.unmodifiableSet(shards.keySet());
+    }
+
+    /**
+     * @return the database of the facility, null if it is not served here
+     */
+    public DataBaseConfig route(String facility) {
+        return shards.get(facility);
+    }
+
+    /**
+     * @return the largest number of connections all the pools may hold at once
+     */
+    public int getMaxConnections() {
+        int connections = 0;
+        for (DataBaseConfig config : shards.values()) {
+            connections += config.getPoolConfig().getMaxSize();
+        }
+        return connections;
+    }
+
+    public void shutdown() {
+        for (DataBaseConfig config : shards.values()) {
+            config.shutdown();
+        }
+    }
+}
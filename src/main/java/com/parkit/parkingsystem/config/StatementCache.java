@@ -0,0 +1,179 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prepared statements of one pooled connection, kept open from one borrow to the next.
+ * <p>
+ * Statements are handed out as proxies: closing one clears its parameters and keeps it for the
+ * next prepare of the same SQL on this connection, so each SQL is only prepared once per
+ * physical connection. A SQL already in use gets a statement of its own. When the connection
+ * goes back to the pool the statements still open are recycled too, and when it is destroyed
+ * they are all closed, so a statement never outlives its connection. The cache keeps the most
+ * recently returned statements up to its size and closes the others.
+ * <p>
+ * Only the thread holding the connection uses its cache, so it is not synchronized.
+ */
+class StatementCache {
+
+    private static final Logger logger = LogManager.getLogger("StatementCache");
+
+    private static final LongAdder prepareCount = MetricsRegistry.getDefault().counter("pool.statements.prepared");
+    private static final LongAdder hitCount = MetricsRegistry.getDefault().counter("pool.statements.cached");
+
+    private final Connection physical;
+    private final int maxSize;
+    private final LinkedHashMap<String, PreparedStatement> idle = new LinkedHashMap<>();
+    private final List<StatementHandler> borrowed = new ArrayList<>();
+
+    StatementCache(Connection physical, int maxSize) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Handles {@code prepareStatement(String)} and {@code prepareStatement(String, int)} of the
+     * connection proxy.
+     */
+    PreparedStatement prepare(Connection connection, Object[] args) throws SQLException {
+        String sql = (String) args[0];
+        String key = args.length == 1 ? sql : args[1] + ":" + sql;
+        PreparedStatement statement = idle.remove(key);
+        if (statement == null) {
+            statement = args.length == 1 ? physical.prepareStatement(sql)
+                    : physical.prepareStatement(sql, (Integer) args[1]);
+            prepareCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        StatementHandler handler = new StatementHandler(connection, key, statement);
+        borrowed.add(handler);
+        return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, handler);
+    }
+
+    int size() {
+        return idle.size();
+    }
+
+    /**
+     * Recycles the statements left open by the borrower of the connection.
+     */
+    void recycleBorrowed() {
+        for (int i = borrowed.size() - 1; i >= 0; i--) {
+            borrowed.get(i).recycle();
+        }
+    }
+
+    /**
+     * Closes every statement, before the physical connection is closed.
+     */
+    void closeAll() {
+        recycleBorrowed();
+        for (PreparedStatement statement : idle.values()) {
+            close(statement);
+        }
+        idle.clear();
+    }
+
+    private void keep(String key, PreparedStatement statement) {
+        try {
+            statement.clearParameters();
+            statement.clearBatch();
+        } catch (SQLException e) {
+            close(statement);
+            return;
+        }
+        if (idle.containsKey(key)) {
+            // Second statement of a SQL used twice at once
+            close(statement);
+            return;
+        }
+        idle.put(key, statement);
+        if (idle.size() > maxSize) {
+            Iterator<Map.Entry<String, PreparedStatement>> eldest = idle.entrySet().iterator();
+            close(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    private static void close(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            logger.error("Error while closing cached prepared statement", e);
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+        private final Connection connection;
+        private final String key;
+        private final PreparedStatement statement;
+        private boolean closed;
+
+        private StatementHandler(Connection connection, String key, PreparedStatement statement) {
+            this.connection = connection;
+            this.key = key;
+            this.statement = statement;
+        }
+
+        private void recycle() {
+            if (!closed) {
+                closed = true;
+                borrowed.remove(this);
+                keep(key, statement);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close": {
+                    recycle();
+                    return null;
+                }
+                case "isClosed": {
+                    return closed;
+                }
+                case "getConnection": {
+                    return connection;
+                }
+                case "equals": {
+                    return proxy == args[0];
+                }
+                case "hashCode": {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString": {
+                    return "Cached[" + statement + "]";
+                }
+                default: {
+                    if (closed) {
+                        throw new SQLException("Prepared statement already closed");
+                    }
+                    try {
+                        return method.invoke(statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            }
+        }
+    }
+}
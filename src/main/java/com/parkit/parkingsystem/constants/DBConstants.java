@@ -2,11 +2,49 @@ package com.parkit.parkingsystem.constants;
 
 public class DBConstants {
 
-    public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
+    // Size of the VEHICLE_REG_NUMBER columns
+    public static final int VEHICLE_REG_NUMBER_LENGTH = 10;
+
+    public static final String GET_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking";
+    public static final String GET_AVAILABLE_SPOTS = "select PARKING_NUMBER from parking where AVAILABLE = true";
+    public static final String COUNT_AVAILABLE_SPOTS = "select TYPE, count(*) from parking where AVAILABLE = true group by TYPE";
     public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+    public static final String RESERVE_PARKING_SPOT = "update parking set AVAILABLE = false where PARKING_NUMBER = ? and AVAILABLE = true";
 
     public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
     public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
-    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME  limit 1";
-    public static final String GET_TICKET_COUNT = "select count(*) from ticket where VEHICLE_REG_NUMBER = ?";
+    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME desc, t.ID desc limit 1";
+    public static final String GET_OPEN_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? and t.OUT_TIME is null order by t.IN_TIME desc limit 1";
+    public static final String GET_OPEN_TICKET_WITH_COUNT = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, coalesce(v.VISIT_COUNT, 0) from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER left join vehicle_stats v on v.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER where t.VEHICLE_REG_NUMBER=? and t.OUT_TIME is null order by t.IN_TIME desc limit 1";
+    public static final String GET_TICKET_COUNT = "select VISIT_COUNT from vehicle_stats where VEHICLE_REG_NUMBER = ?";
+    public static final String GET_VISIT_COUNTS = "select VEHICLE_REG_NUMBER, VISIT_COUNT from vehicle_stats";
+    public static final String INCREMENT_VISIT_COUNT = "insert into vehicle_stats(VEHICLE_REG_NUMBER, VISIT_COUNT) values(?,1) on duplicate key update VISIT_COUNT = LAST_INSERT_ID(VISIT_COUNT + 1)";
+
+    public static final String GET_TICKET_HISTORY = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.VEHICLE_REG_NUMBER=?"
+            + " union all select a.PARKING_NUMBER, a.ID, a.PRICE, a.IN_TIME, a.OUT_TIME, p.TYPE from ticket_archive a join parking p on p.PARKING_NUMBER = a.PARKING_NUMBER where a.VEHICLE_REG_NUMBER=? order by 4 desc, 2 desc";
+    public static final String GET_TICKETS_TO_ARCHIVE = "select ID from ticket where OUT_TIME < ? order by OUT_TIME limit ?";
+    public static final String ARCHIVE_TICKET = "insert into ticket_archive(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket where ID = ?";
+    public static final String DELETE_TICKET = "delete from ticket where ID = ?";
+    public static final String RESTORE_TICKET = "insert into ticket(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?,?)";
+    public static final String RESTORE_ARCHIVED_TICKET = "insert into ticket_archive(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?,?)";
+    public static final String CLEAR_VISIT_COUNTS = "delete from vehicle_stats";
+    public static final String COUNT_VISITS = "insert into vehicle_stats(VEHICLE_REG_NUMBER, VISIT_COUNT) select VEHICLE_REG_NUMBER, count(*) from"
+            + " (select VEHICLE_REG_NUMBER from ticket union all select VEHICLE_REG_NUMBER from ticket_archive) v group by VEHICLE_REG_NUMBER";
+    // DDL, the next ID is appended
+    public static final String SET_NEXT_TICKET_ID = "alter table ticket auto_increment = ";
+
+    public static final String GET_TICKET_ID_RANGE = "select min(ID), max(ID) from (select min(ID) ID from ticket union all select max(ID) from ticket"
+            + " union all select min(ID) from ticket_archive union all select max(ID) from ticket_archive) r";
+    public static final String GET_CLOSED_TICKETS_TO_PRICE = "select t.ID, p.TYPE, t.IN_TIME, t.OUT_TIME, t.PRICE, (select count(*) from ticket v where v.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER and v.IN_TIME <= t.IN_TIME)"
+            + " + (select count(*) from ticket_archive v where v.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER and v.IN_TIME <= t.IN_TIME)"
+            + " from (select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket where ID >= ? and ID < ? and OUT_TIME is not null"
+            + " union all select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket_archive where ID >= ? and ID < ?) t"
+            + " join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER";
+    public static final String UPDATE_TICKET_PRICE = "update ticket set PRICE=? where ID=?";
+    public static final String UPDATE_ARCHIVED_TICKET_PRICE = "update ticket_archive set PRICE=? where ID=?";
+
+    public static final String STREAM_TICKETS = "select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket order by ID";
+    public static final String STREAM_ARCHIVED_TICKETS = "select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket_archive order by ID";
+    public static final String STREAM_CLOSED_TICKETS = "select p.TYPE, t.IN_TIME, t.OUT_TIME, t.PRICE from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.OUT_TIME >= ? and t.OUT_TIME < ?"
+            + " union all select p.TYPE, a.IN_TIME, a.OUT_TIME, a.PRICE from ticket_archive a join parking p on p.PARKING_NUMBER = a.PARKING_NUMBER where a.OUT_TIME >= ? and a.OUT_TIME < ?";
 }
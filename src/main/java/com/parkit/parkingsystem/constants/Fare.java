@@ -3,4 +3,7 @@ package com.parkit.parkingsystem.constants;
 public class Fare {
     public static final double BIKE_RATE_PER_HOUR = 1.0;
     public static final double CAR_RATE_PER_HOUR = 1.5;
+
+    public static final long BIKE_RATE_PER_HOUR_CENTS = 100;
+    public static final long CAR_RATE_PER_HOUR_CENTS = 150;
 }
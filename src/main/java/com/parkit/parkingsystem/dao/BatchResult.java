@@ -0,0 +1,92 @@
+package com.parkit.parkingsystem.dao;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-row outcome of a batched write: which rows of the submitted list were written.
+ */
+public class BatchResult {
+
+    private final boolean[] succeeded;
+    private Exception error;
+
+    public BatchResult(int size) {
+        this.succeeded = new boolean[size];
+    }
+
+    /**
+     * Runs the batch of the statement and records which rows went through. When the driver
+     * reports a {@link BatchUpdateException}, the rows it executed are kept, the others are
+     * marked failed and the exception is kept as {@link #getError()}.
+     */
+    void execute(PreparedStatement ps) throws SQLException {
+        int[] updateCounts;
+        try {
+            updateCounts = ps.executeBatch();
+        } catch (BatchUpdateException e) {
+            updateCounts = e.getUpdateCounts();
+            error = e;
+        }
+        for (int row = 0; row < updateCounts.length && row < succeeded.length; row++) {
+            succeeded[row] = updateCounts[row] > 0 || updateCounts[row] == Statement.SUCCESS_NO_INFO;
+        }
+    }
+
+    /**
+     * Marks a row written, for writes that do not go through a JDBC batch.
+     */
+    void setSucceeded(int row) {
+        succeeded[row] = true;
+    }
+
+    public int size() {
+        return succeeded.length;
+    }
+
+    public boolean isSucceeded(int row) {
+        return succeeded[row];
+    }
+
+    public int getSuccessCount() {
+        int count = 0;
+        for (boolean success : succeeded) {
+            if (success) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the indexes, in the submitted list, of the rows that were not written
+     */
+    public List<Integer> getFailedRows() {
+        List<Integer> failedRows = new ArrayList<>();
+        for (int row = 0; row < succeeded.length; row++) {
+            if (!succeeded[row]) {
+                failedRows.add(row);
+            }
+        }
+        return failedRows;
+    }
+
+    public boolean isAllSucceeded() {
+        return getSuccessCount() == succeeded.length;
+    }
+
+    /**
+     * @return the exception reported by the driver for the failed rows, if any
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    void setError(Exception error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,17 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+/**
+ * Receives closed tickets one at a time, as primitives, so they can be aggregated without
+ * building a {@link com.parkit.parkingsystem.model.Ticket} per row.
+ */
+public interface ClosedTicketHandler {
+
+    /**
+     * @param inTime  entry time, in epoch milliseconds
+     * @param outTime exit time, in epoch milliseconds
+     * @param price   fare paid at the exit
+     */
+    void accept(ParkingType parkingType, long inTime, long outTime, double price);
+}
@@ -0,0 +1,349 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.GateEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Local write-ahead journal of the gate events not yet written to the DB.
+ * <p>
+ * Records are binary, each with its length and a CRC32 so a record torn by a crash is detected
+ * and dropped on restart. Every record (event or acknowledgement) gets the next sequence number.
+ * {@link #sync(long)} makes a record durable, several gates waiting on the same {@code force}
+ * (group commit). Acknowledgements are only written, they become durable with the next sync.
+ * <p>
+ * The journal is a directory of segments named after their first sequence. Once a segment
+ * outgrows the segment size a new one is started with a copy of the events still pending, and
+ * the older segments are deleted, so the journal stays about one segment large.
+ */
+public class GateJournal implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("GateJournal");
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private static final String SEGMENT_GLOB = "gate-*.journal";
+    private static final byte EVENT = 'E';
+    private static final byte ACK = 'A';
+    private static final byte ACK_THROUGH = 'T';
+    // length + CRC32 of the payload
+    private static final int HEADER_BYTES = 8;
+    // kind, sequence, type, parking type, parking number, time, price, then the vehicle
+    private static final int EVENT_BYTES = 1 + 8 + 1 + 1 + 4 + 8 + 8;
+    private static final int ACK_BYTES = 1 + 8 + 8;
+
+    /**
+     * A journaled event and its sequence number.
+     */
+    public static class Entry {
+        private final long sequence;
+        private final GateEvent event;
+
+        Entry(long sequence, GateEvent event) {
+            this.sequence = sequence;
+            this.event = event;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public GateEvent getEvent() {
+            return event;
+        }
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final List<Path> segments = new ArrayList<>();
+    private final TreeMap<Long, GateEvent> pending = new TreeMap<>();
+    private final CRC32 crc = new CRC32();
+    private final Object syncLock = new Object();
+    private ByteBuffer buffer = ByteBuffer.allocate(256);
+    private FileChannel channel;
+    private long segmentSize;
+    private long compactedSize;
+    private long lastSequence;
+    private volatile long writtenSequence;
+    private volatile long syncedSequence;
+
+    public GateJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public GateJournal(Path directory, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_GLOB)) {
+            for (Path segment : stream) {
+                segments.add(segment);
+            }
+        }
+        // Fixed-width names: the name order is the sequence order
+        Collections.sort(segments);
+        long validLength = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            validLength = recover(segments.get(i), i == segments.size() - 1);
+        }
+        if (segments.isEmpty()) {
+            openSegment(lastSequence + 1);
+        } else {
+            channel = FileChannel.open(segments.get(segments.size() - 1), StandardOpenOption.WRITE);
+            // Drop a record left half-written by a crash
+            channel.truncate(validLength);
+            channel.position(validLength);
+            segmentSize = validLength;
+        }
+        writtenSequence = lastSequence;
+        syncedSequence = lastSequence;
+    }
+
+    public static boolean isEnabled() {
+        return System.getProperty("parkit.journal.dir") != null;
+    }
+
+    /**
+     * Opens the journal named by the {@code parkit.journal.dir} and {@code parkit.journal.segmentBytes}
+     * system properties, in a sub-directory named after the facility unless it is null.
+     */
+    public static GateJournal open(String facility) throws IOException {
+        Path directory = Paths.get(System.getProperty("parkit.journal.dir"));
+        return new GateJournal(facility == null ? directory : directory.resolve(facility),
+                Long.getLong("parkit.journal.segmentBytes", DEFAULT_SEGMENT_BYTES));
+    }
+
+    /**
+     * @return the events journaled but not acknowledged yet, in order
+     */
+    public synchronized List<Entry> getUnacknowledged() {
+        List<Entry> entries = new ArrayList<>(pending.size());
+        for (Map.Entry<Long, GateEvent> entry : pending.entrySet()) {
+            entries.add(new Entry(entry.getKey(), entry.getValue()));
+        }
+        return entries;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Appends an event. It is only durable after {@link #sync(long)} with the returned sequence.
+     */
+    public synchronized long append(GateEvent event) throws IOException {
+        rotateIfFull();
+        long sequence = lastSequence + 1;
+        writeEvent(sequence, event);
+        pending.put(sequence, event);
+        lastSequence = sequence;
+        writtenSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * Waits until the record of that sequence is on disk. Whoever forces the file first makes
+     * every record written so far durable, so concurrent gates share one fsync.
+     */
+    public void sync(long sequence) throws IOException {
+        if (syncedSequence >= sequence) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedSequence >= sequence) {
+                return;
+            }
+            long target = writtenSequence;
+            channel.force(false);
+            syncedSequence = target;
+        }
+    }
+
+    /**
+     * Records that the event of that sequence is done with and must not be replayed.
+     *
+     * @return the sequence of the acknowledgement, for {@link #sync(long)}
+     */
+    public synchronized long acknowledge(long sequence) throws IOException {
+        pending.remove(sequence);
+        return writeAck(ACK, sequence);
+    }
+
+    /**
+     * Records that every event up to that sequence is done with.
+     *
+     * @return the sequence of the acknowledgement, for {@link #sync(long)}
+     */
+    public synchronized long acknowledgeThrough(long sequence) throws IOException {
+        pending.headMap(sequence, true).clear();
+        return writeAck(ACK_THROUGH, sequence);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        synchronized (syncLock) {
+            if (channel.isOpen()) {
+                channel.force(false);
+                syncedSequence = writtenSequence;
+                channel.close();
+            }
+        }
+    }
+
+    private long writeAck(byte kind, long sequence) throws IOException {
+        rotateIfFull();
+        long ackSequence = lastSequence + 1;
+        payload(ACK_BYTES).put(kind).putLong(ackSequence).putLong(sequence);
+        writeRecord();
+        lastSequence = ackSequence;
+        writtenSequence = ackSequence;
+        return ackSequence;
+    }
+
+    private void writeEvent(long sequence, GateEvent event) throws IOException {
+        byte[] vehicleRegNumber = event.getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+        ParkingType parkingType = event.getParkingType();
+        payload(EVENT_BYTES + vehicleRegNumber.length)
+                .put(EVENT)
+                .putLong(sequence)
+                .put((byte) event.getType().ordinal())
+                .put((byte) (parkingType == null ? -1 : parkingType.ordinal()))
+                .putInt(event.getParkingNumber())
+                .putLong(event.getTime())
+                .putDouble(event.getPrice())
+                .put(vehicleRegNumber);
+        writeRecord();
+    }
+
+    private ByteBuffer payload(int length) {
+        if (buffer.capacity() < HEADER_BYTES + length) {
+            buffer = ByteBuffer.allocate(HEADER_BYTES + length);
+        }
+        buffer.clear();
+        buffer.position(HEADER_BYTES);
+        return buffer;
+    }
+
+    private void writeRecord() throws IOException {
+        int length = buffer.position() - HEADER_BYTES;
+        crc.reset();
+        crc.update(buffer.array(), HEADER_BYTES, length);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segmentSize += channel.write(buffer);
+        }
+    }
+
+    /**
+     * Starts a new segment once the current one holds a segment size of new records. Pending
+     * events are copied first and made durable, then the older segments are deleted.
+     */
+    private void rotateIfFull() throws IOException {
+        if (segmentSize - compactedSize < segmentBytes) {
+            return;
+        }
+        synchronized (syncLock) {
+            channel.force(false);
+            syncedSequence = writtenSequence;
+            channel.close();
+            List<Path> compacted = new ArrayList<>(segments);
+            openSegment(lastSequence + 1);
+            for (Map.Entry<Long, GateEvent> entry : pending.entrySet()) {
+                writeEvent(entry.getKey(), entry.getValue());
+            }
+            channel.force(false);
+            compactedSize = segmentSize;
+            for (Path segment : compacted) {
+                Files.delete(segment);
+            }
+            segments.removeAll(compacted);
+        }
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        Path segment = directory.resolve(String.format("gate-%020d.journal", firstSequence));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segments.add(segment);
+        segmentSize = 0;
+        compactedSize = 0;
+    }
+
+    /**
+     * Reads the records of a segment into the pending events.
+     *
+     * @return the length of the valid records
+     */
+    private long recover(Path segment, boolean last) throws IOException {
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(segment));
+        while (content.remaining() >= HEADER_BYTES) {
+            int start = content.position();
+            int length = content.getInt();
+            int checksum = content.getInt();
+            if (length <= 0 || length > content.remaining()) {
+                content.position(start);
+                break;
+            }
+            crc.reset();
+            crc.update(content.array(), content.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                content.position(start);
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(content.array(), content.position(), length);
+            content.position(content.position() + length);
+            readRecord(record);
+        }
+        if (content.hasRemaining()) {
+            if (last) {
+                logger.warn("Ignoring incomplete last record of gate journal {}", segment);
+            } else {
+                logger.error("Gate journal segment {} is corrupted after byte {}", segment, content.position());
+            }
+        }
+        return content.position();
+    }
+
+    private void readRecord(ByteBuffer record) {
+        byte kind = record.get();
+        long sequence = record.getLong();
+        lastSequence = Math.max(lastSequence, sequence);
+        if (kind == ACK) {
+            pending.remove(record.getLong());
+        } else if (kind == ACK_THROUGH) {
+            pending.headMap(record.getLong(), true).clear();
+        } else {
+            GateEvent.Type type = GateEvent.Type.values()[record.get()];
+            byte parkingType = record.get();
+            int parkingNumber = record.getInt();
+            long time = record.getLong();
+            double price = record.getDouble();
+            String vehicleRegNumber = new String(record.array(), record.position(), record.remaining(),
+                    StandardCharsets.UTF_8);
+            GateEvent event = new GateEvent(type, vehicleRegNumber,
+                    parkingType < 0 ? null : ParkingType.values()[parkingType], time);
+            event.setParkingNumber(parkingNumber);
+            event.setPrice(price);
+            pending.put(sequence, event);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ParkingSpotDAO} over an {@link InMemoryStore}. Connections are ignored and may be null:
+ * every write applies at once, so a reservation rolled back by the caller is undone by
+ * {@link #cancelReservation(ParkingSpot)}.
+ */
+public class InMemoryParkingSpotDAO extends ParkingSpotDAO {
+
+    private final InMemoryStore store;
+
+    public InMemoryParkingSpotDAO(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public boolean loadAvailableSpots() {
+        store.registerSpots(parkingSpotIndex);
+        return true;
+    }
+
+    /**
+     * The store belongs to this process alone, no spot is freed behind the index's back.
+     */
+    @Override
+    public int refreshFreedSpots() {
+        return 0;
+    }
+
+    @Override
+    public Map<ParkingType, Integer> countAvailableSpots() {
+        return store.countAvailableSpots();
+    }
+
+    @Override
+    public ParkingSpot reserveNextAvailable(ParkingType parkingType) {
+        return reserveNextAvailable(null, parkingType);
+    }
+
+    @Override
+    public ParkingSpot reserveNextAvailable(Connection con, ParkingType parkingType) {
+        if (!parkingSpotIndex.isLoaded()) {
+            loadAvailableSpots();
+        }
+        int parkingNumber;
+        while ((parkingNumber = parkingSpotIndex.claimLowest(parkingType)) > 0) {
+            if (store.reserve(parkingNumber)) {
+                return newParkingSpot(parkingNumber, parkingType, false);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<ParkingSpot> reserveNextAvailable(Connection con, List<ParkingType> parkingTypes) {
+        List<ParkingSpot> parkingSpots = new ArrayList<>(parkingTypes.size());
+        for (ParkingType parkingType : parkingTypes) {
+            parkingSpots.add(reserveNextAvailable(con, parkingType));
+        }
+        return parkingSpots;
+    }
+
+    @Override
+    public void cancelReservation(ParkingSpot parkingSpot) {
+        store.updateParking(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), true));
+        super.cancelReservation(parkingSpot);
+    }
+
+    @Override
+    public boolean updateParking(ParkingSpot parkingSpot) {
+        return updateParking(null, parkingSpot);
+    }
+
+    @Override
+    public boolean updateParking(Connection con, ParkingSpot parkingSpot) {
+        if (!store.updateParking(parkingSpot)) {
+            return false;
+        }
+        parkingSpotIndex.setAvailable(parkingSpot.getId(), parkingSpot.isAvailable());
+        return true;
+    }
+
+    @Override
+    public BatchResult updateParkings(Connection con, List<ParkingSpot> parkingSpots) {
+        BatchResult result = new BatchResult(parkingSpots.size());
+        for (int row = 0; row < parkingSpots.size(); row++) {
+            if (updateParking(con, parkingSpots.get(row))) {
+                result.setSucceeded(row);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,640 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * State of the in-memory engine: parking spots, open tickets and visit counts, with no database
+ * behind them. {@link InMemoryParkingSpotDAO} and {@link InMemoryTicketDAO} serve the DAO
+ * operations from it.
+ * <p>
+ * Spots are primitive arrays indexed by {@code PARKING_NUMBER}, vehicles a hash map keyed by
+ * registration with their visit count, open ticket and latest ticket. A change is applied in
+ * memory and appended to a log buffer, written and synced by a background thread every flush
+ * interval, so the gates never wait on the disk and a crash loses at most that interval.
+ * A compact binary snapshot of the whole state is taken periodically and the log it covers is
+ * deleted, so a restart reads one snapshot and a short log.
+ * <p>
+ * Only the latest ticket of each vehicle is kept; older closed tickets are not retained.
+ */
+public class InMemoryStore implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("InMemoryStore");
+
+    private static final int SNAPSHOT_MAGIC = 0x504b5331;
+    private static final String SNAPSHOT_GLOB = "snapshot-*.bin";
+    private static final String LOG_GLOB = "events-*.log";
+    private static final byte SPOT = 'S';
+    private static final byte SAVE = 'I';
+    private static final byte UPDATE = 'U';
+    // length + CRC32 of the payload
+    private static final int HEADER_BYTES = 8;
+    // kind, sequence, number, available
+    private static final int SPOT_BYTES = 1 + 8 + 4 + 1;
+    // kind, sequence, id, number, price, in-time, out-time, then the vehicle
+    private static final int SAVE_BYTES = 1 + 8 + 4 + 4 + 8 + 8 + 8;
+    // kind, sequence, id, price, out-time, then the vehicle
+    private static final int UPDATE_BYTES = 1 + 8 + 4 + 8 + 8;
+
+    /**
+     * A ticket as kept by the store, out-time 0 while open.
+     */
+    private static final class TicketRecord {
+        private final int id;
+        private final int parkingNumber;
+        private final double price;
+        private final long inTime;
+        private final long outTime;
+
+        private TicketRecord(int id, int parkingNumber, double price, long inTime, long outTime) {
+            this.id = id;
+            this.parkingNumber = parkingNumber;
+            this.price = price;
+            this.inTime = inTime;
+            this.outTime = outTime;
+        }
+    }
+
+    private static final class Vehicle {
+        private int visitCount;
+        private TicketRecord open;
+        private TicketRecord last;
+    }
+
+    private final Path directory;
+    private final Map<String, Vehicle> vehicles = new HashMap<>();
+    private final CRC32 crc = new CRC32();
+    private final Object flushLock = new Object();
+    private ParkingType[] types;
+    private boolean[] available;
+    private int lastTicketId;
+    private long lastSequence;
+    private long snapshotSequence = -1;
+    private ByteBuffer filling = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer draining = ByteBuffer.allocate(64 * 1024);
+    private int recordStart;
+    private FileChannel log;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Restores the state of the directory from its latest snapshot and log, or lays out the
+     * given CAR spots followed by BIKE spots on first use, then takes a snapshot.
+     */
+    public InMemoryStore(Path directory, int carSpots, int bikeSpots) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        List<Path> snapshots = list(SNAPSHOT_GLOB);
+        if (snapshots.isEmpty()) {
+            types = new ParkingType[carSpots + bikeSpots + 1];
+            available = new boolean[types.length];
+            for (int number = 1; number < types.length; number++) {
+                types[number] = number <= carSpots ? ParkingType.CAR : ParkingType.BIKE;
+                available[number] = true;
+            }
+        } else {
+            readSnapshot(snapshots.get(snapshots.size() - 1));
+        }
+        List<Path> logs = list(LOG_GLOB);
+        for (int i = 0; i < logs.size(); i++) {
+            readLog(logs.get(i), i == logs.size() - 1);
+        }
+        snapshot();
+    }
+
+    public static boolean isEnabled() {
+        return "memory".equals(System.getProperty("parkit.db.backend"));
+    }
+
+    /**
+     * Opens the store named by the {@code parkit.memory.*} and {@code parkit.db.*Spots} system
+     * properties and starts its background flushes and snapshots. The store of a facility is kept
+     * in a sub-directory named after it, with {@code parkit.facility.<id>.*Spots} spots.
+     */
+    public static InMemoryStore open(String facility) throws IOException {
+        Path directory = Paths.get(System.getProperty("parkit.memory.dir", "parkit-memory"));
+        int carSpots = Integer.getInteger("parkit.db.carSpots", 3);
+        int bikeSpots = Integer.getInteger("parkit.db.bikeSpots", 2);
+        if (facility != null) {
+            directory = directory.resolve(facility);
+            carSpots = Integer.getInteger("parkit.facility." + facility + ".carSpots", carSpots);
+            bikeSpots = Integer.getInteger("parkit.facility." + facility + ".bikeSpots", bikeSpots);
+        }
+        InMemoryStore store = new InMemoryStore(directory, carSpots, bikeSpots);
+        store.start(Long.getLong("parkit.memory.flushMillis", 100L),
+                Long.getLong("parkit.memory.snapshotMillis", 60000L));
+        return store;
+    }
+
+    /**
+     * Writes the log every {@code flushMillis} and takes a snapshot every {@code snapshotMillis}
+     * on a daemon thread.
+     */
+    public synchronized void start(long flushMillis, long snapshotMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "parkit-memory-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (IOException e) {
+                logger.error("Unable to write the in-memory store log", e);
+            }
+        }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                logger.error("Unable to snapshot the in-memory store", e);
+            }
+        }, snapshotMillis, snapshotMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Loads the spots into the index of free spots.
+     */
+    public synchronized void registerSpots(ParkingSpotIndex parkingSpotIndex) {
+        parkingSpotIndex.clear();
+        for (int number = 1; number < types.length; number++) {
+            if (types[number] != null) {
+                parkingSpotIndex.register(number, types[number], available[number]);
+            }
+        }
+        parkingSpotIndex.markLoaded();
+    }
+
+    public synchronized Map<ParkingType, Integer> countAvailableSpots() {
+        Map<ParkingType, Integer> counts = new EnumMap<>(ParkingType.class);
+        for (ParkingType parkingType : ParkingType.values()) {
+            counts.put(parkingType, 0);
+        }
+        for (int number = 1; number < types.length; number++) {
+            if (types[number] != null && available[number]) {
+                counts.merge(types[number], 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Marks a free spot occupied.
+     *
+     * @return false if the spot is unknown or already occupied
+     */
+    public synchronized boolean reserve(int number) {
+        if (!isSpot(number) || !available[number]) {
+            return false;
+        }
+        setSpot(number, false);
+        return true;
+    }
+
+    /**
+     * @return false if the spot is unknown
+     */
+    public synchronized boolean updateParking(ParkingSpot parkingSpot) {
+        int number = parkingSpot.getId();
+        if (!isSpot(number)) {
+            return false;
+        }
+        if (available[number] != parkingSpot.isAvailable()) {
+            setSpot(number, parkingSpot.isAvailable());
+        }
+        return true;
+    }
+
+    /**
+     * Records a new ticket, giving it the next ID, and counts the visit of its vehicle.
+     */
+    public synchronized boolean saveTicket(Ticket ticket) {
+        if (!isSpot(ticket.getParkingSpot().getId())) {
+            return false;
+        }
+        TicketRecord record = new TicketRecord(lastTicketId + 1, ticket.getParkingSpot().getId(), ticket.getPrice(),
+                ticket.getInTime().getTime(), ticket.getOutTime() == null ? 0 : ticket.getOutTime().getTime());
+        byte[] vehicleRegNumber = ticket.getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+        startRecord(SAVE_BYTES + vehicleRegNumber.length)
+                .put(SAVE)
+                .putLong(++lastSequence)
+                .putInt(record.id)
+                .putInt(record.parkingNumber)
+                .putDouble(record.price)
+                .putLong(record.inTime)
+                .putLong(record.outTime)
+                .put(vehicleRegNumber);
+        endRecord();
+        applySave(ticket.getVehicleRegNumber(), record);
+        ticket.setId(record.id);
+        return true;
+    }
+
+    /**
+     * Writes the price and out-time of a ticket, the open one or the latest one of its vehicle.
+     *
+     * @return false if the vehicle has no such ticket
+     */
+    public synchronized boolean updateTicket(Ticket ticket) {
+        Vehicle vehicle = vehicles.get(ticket.getVehicleRegNumber());
+        if (vehicle == null || !isTicketOf(vehicle, ticket.getId())) {
+            return false;
+        }
+        long outTime = ticket.getOutTime() == null ? 0 : ticket.getOutTime().getTime();
+        byte[] vehicleRegNumber = ticket.getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+        startRecord(UPDATE_BYTES + vehicleRegNumber.length)
+                .put(UPDATE)
+                .putLong(++lastSequence)
+                .putInt(ticket.getId())
+                .putDouble(ticket.getPrice())
+                .putLong(outTime)
+                .put(vehicleRegNumber);
+        endRecord();
+        applyUpdate(vehicle, ticket.getId(), ticket.getPrice(), outTime);
+        return true;
+    }
+
+    /**
+     * @return the latest ticket of the vehicle, open or closed, or null
+     */
+    public synchronized Ticket getTicket(String vehicleRegNumber) {
+        Vehicle vehicle = vehicles.get(vehicleRegNumber);
+        return vehicle == null ? null : toTicket(vehicleRegNumber, vehicle, vehicle.last);
+    }
+
+    /**
+     * @return the open ticket of the vehicle with its visit count, or null
+     */
+    public synchronized Ticket getOpenTicket(String vehicleRegNumber) {
+        Vehicle vehicle = vehicles.get(vehicleRegNumber);
+        return vehicle == null ? null : toTicket(vehicleRegNumber, vehicle, vehicle.open);
+    }
+
+    public synchronized int getVisitCount(String vehicleRegNumber) {
+        Vehicle vehicle = vehicles.get(vehicleRegNumber);
+        return vehicle == null ? 0 : vehicle.visitCount;
+    }
+
+    /**
+     * @return the visit count of every vehicle that has one
+     */
+    public synchronized Map<String, Integer> getVisitCounts() {
+        Map<String, Integer> visits = new HashMap<>();
+        for (Map.Entry<String, Vehicle> entry : vehicles.entrySet()) {
+            if (entry.getValue().visitCount > 0) {
+                visits.put(entry.getKey(), entry.getValue().visitCount);
+            }
+        }
+        return visits;
+    }
+
+    /**
+     * Writes the buffered log records and syncs them to disk.
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            ByteBuffer pending;
+            FileChannel channel;
+            synchronized (this) {
+                if (filling.position() == 0) {
+                    return;
+                }
+                pending = swapBuffers();
+                channel = log;
+            }
+            write(channel, pending);
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Writes the whole state to a new snapshot and starts a new log, then deletes the previous
+     * snapshot and logs. Only the serialization holds the gates.
+     */
+    public void snapshot() throws IOException {
+        synchronized (flushLock) {
+            long sequence;
+            byte[] state;
+            ByteBuffer pending;
+            FileChannel previous;
+            synchronized (this) {
+                if (log != null && lastSequence == snapshotSequence) {
+                    return;
+                }
+                sequence = lastSequence;
+                state = writeState();
+                pending = swapBuffers();
+                previous = log;
+                log = FileChannel.open(directory.resolve(String.format("events-%020d.log", sequence + 1)),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            if (previous != null) {
+                write(previous, pending);
+                previous.force(false);
+                previous.close();
+            }
+            Path snapshot = directory.resolve(String.format("snapshot-%020d.bin", sequence));
+            Path temporary = directory.resolve("snapshot.tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(channel, ByteBuffer.wrap(state));
+                channel.force(true);
+            }
+            Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshotSequence = sequence;
+            for (Path path : list(SNAPSHOT_GLOB)) {
+                if (!path.equals(snapshot)) {
+                    Files.delete(path);
+                }
+            }
+            Path current = directory.resolve(String.format("events-%020d.log", sequence + 1));
+            for (Path path : list(LOG_GLOB)) {
+                if (!path.equals(current)) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread and takes a last snapshot.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+        synchronized (flushLock) {
+            snapshot();
+            log.close();
+        }
+    }
+
+    private boolean isSpot(int number) {
+        return number > 0 && number < types.length && types[number] != null;
+    }
+
+    private static boolean isTicketOf(Vehicle vehicle, int id) {
+        return vehicle.open != null && vehicle.open.id == id || vehicle.last != null && vehicle.last.id == id;
+    }
+
+    private void setSpot(int number, boolean free) {
+        startRecord(SPOT_BYTES)
+                .put(SPOT)
+                .putLong(++lastSequence)
+                .putInt(number)
+                .put((byte) (free ? 1 : 0));
+        endRecord();
+        available[number] = free;
+    }
+
+    private void applySave(String vehicleRegNumber, TicketRecord record) {
+        Vehicle vehicle = vehicles.computeIfAbsent(vehicleRegNumber, k -> new Vehicle());
+        vehicle.visitCount++;
+        vehicle.last = record;
+        if (record.outTime == 0) {
+            vehicle.open = record;
+        }
+        lastTicketId = Math.max(lastTicketId, record.id);
+    }
+
+    private static void applyUpdate(Vehicle vehicle, int id, double price, long outTime) {
+        TicketRecord previous = vehicle.open != null && vehicle.open.id == id ? vehicle.open : vehicle.last;
+        TicketRecord record = new TicketRecord(id, previous.parkingNumber, price, previous.inTime, outTime);
+        if (vehicle.open != null && vehicle.open.id == id) {
+            vehicle.open = outTime == 0 ? record : null;
+        }
+        if (vehicle.last != null && vehicle.last.id == id) {
+            vehicle.last = record;
+        }
+    }
+
+    private Ticket toTicket(String vehicleRegNumber, Vehicle vehicle, TicketRecord record) {
+        if (record == null) {
+            return null;
+        }
+        Ticket ticket = new Ticket();
+        ticket.setId(record.id);
+        ticket.setParkingSpot(new ParkingSpot(record.parkingNumber, types[record.parkingNumber], false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(record.price);
+        ticket.setInTime(new Date(record.inTime));
+        ticket.setOutTime(record.outTime == 0 ? null : new Date(record.outTime));
+        ticket.setVisitCount(vehicle.visitCount);
+        return ticket;
+    }
+
+    private ByteBuffer startRecord(int length) {
+        if (filling.remaining() < HEADER_BYTES + length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(filling.capacity() * 2, filling.position() + HEADER_BYTES + length));
+            filling.flip();
+            larger.put(filling);
+            filling = larger;
+        }
+        recordStart = filling.position();
+        filling.position(recordStart + HEADER_BYTES);
+        return filling;
+    }
+
+    private void endRecord() {
+        int length = filling.position() - recordStart - HEADER_BYTES;
+        crc.reset();
+        crc.update(filling.array(), recordStart + HEADER_BYTES, length);
+        filling.putInt(recordStart, length);
+        filling.putInt(recordStart + 4, (int) crc.getValue());
+    }
+
+    /**
+     * @return the records appended so far, ready to be written while new ones fill the other buffer
+     */
+    private ByteBuffer swapBuffers() {
+        ByteBuffer full = filling;
+        filling = draining;
+        filling.clear();
+        draining = full;
+        full.flip();
+        return full;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private List<Path> list(String glob) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        // Fixed-width names: the name order is the sequence order
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private byte[] writeState() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + types.length * 2 + vehicles.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeLong(lastSequence);
+        out.writeInt(lastTicketId);
+        out.writeInt(types.length);
+        for (int number = 1; number < types.length; number++) {
+            out.writeByte(types[number] == null ? -1 : types[number].ordinal());
+            out.writeBoolean(available[number]);
+        }
+        out.writeInt(vehicles.size());
+        for (Map.Entry<String, Vehicle> entry : vehicles.entrySet()) {
+            Vehicle vehicle = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeInt(vehicle.visitCount);
+            writeTicket(out, vehicle.last);
+            writeTicket(out, vehicle.open);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeTicket(DataOutputStream out, TicketRecord record) throws IOException {
+        out.writeBoolean(record != null);
+        if (record != null) {
+            out.writeInt(record.id);
+            out.writeInt(record.parkingNumber);
+            out.writeDouble(record.price);
+            out.writeLong(record.inTime);
+            out.writeLong(record.outTime);
+        }
+    }
+
+    private void readSnapshot(Path snapshot) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(snapshot))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not an in-memory store snapshot: " + snapshot);
+            }
+            lastSequence = in.readLong();
+            lastTicketId = in.readInt();
+            types = new ParkingType[in.readInt()];
+            available = new boolean[types.length];
+            for (int number = 1; number < types.length; number++) {
+                byte type = in.readByte();
+                types[number] = type < 0 ? null : ParkingType.values()[type];
+                available[number] = in.readBoolean();
+            }
+            int vehicleCount = in.readInt();
+            for (int i = 0; i < vehicleCount; i++) {
+                Vehicle vehicle = new Vehicle();
+                String vehicleRegNumber = in.readUTF();
+                vehicle.visitCount = in.readInt();
+                vehicle.last = readTicket(in);
+                vehicle.open = readTicket(in);
+                vehicles.put(vehicleRegNumber, vehicle);
+            }
+        }
+        snapshotSequence = lastSequence;
+    }
+
+    private static TicketRecord readTicket(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new TicketRecord(in.readInt(), in.readInt(), in.readDouble(), in.readLong(), in.readLong());
+    }
+
+    /**
+     * Applies the records of a log newer than the state read so far, stopping at the first
+     * incomplete or corrupted one.
+     */
+    private void readLog(Path path, boolean last) throws IOException {
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(path));
+        while (content.remaining() >= HEADER_BYTES) {
+            int start = content.position();
+            int length = content.getInt();
+            int checksum = content.getInt();
+            if (length <= 0 || length > content.remaining()) {
+                content.position(start);
+                break;
+            }
+            crc.reset();
+            crc.update(content.array(), content.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                content.position(start);
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(content.array(), content.position(), length);
+            content.position(content.position() + length);
+            readRecord(record);
+        }
+        if (content.hasRemaining()) {
+            if (last) {
+                logger.warn("Ignoring incomplete last record of in-memory store log {}", path);
+            } else {
+                logger.error("In-memory store log {} is corrupted after byte {}", path, content.position());
+            }
+        }
+    }
+
+    private void readRecord(ByteBuffer record) {
+        byte kind = record.get();
+        long sequence = record.getLong();
+        if (sequence <= lastSequence) {
+            // Already in the snapshot
+            return;
+        }
+        lastSequence = sequence;
+        if (kind == SPOT) {
+            available[record.getInt()] = record.get() == 1;
+        } else if (kind == SAVE) {
+            TicketRecord ticket = new TicketRecord(record.getInt(), record.getInt(), record.getDouble(),
+                    record.getLong(), record.getLong());
+            applySave(readVehicle(record), ticket);
+        } else {
+            int id = record.getInt();
+            double price = record.getDouble();
+            long outTime = record.getLong();
+            Vehicle vehicle = vehicles.get(readVehicle(record));
+            if (vehicle != null && isTicketOf(vehicle, id)) {
+                applyUpdate(vehicle, id, price, outTime);
+            }
+        }
+    }
+
+    private static String readVehicle(ByteBuffer record) {
+        return new String(record.array(), record.position(), record.remaining(), StandardCharsets.UTF_8);
+    }
+}
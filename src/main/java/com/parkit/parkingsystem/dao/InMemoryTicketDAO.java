@@ -0,0 +1,171 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link TicketDAO} over an {@link InMemoryStore}. There are no transactions: connections are
+ * null and ignored, and every write applies at once.
+ */
+public class InMemoryTicketDAO extends TicketDAO {
+
+    private final InMemoryStore store;
+
+    public InMemoryTicketDAO(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Connection beginTransaction() {
+        return null;
+    }
+
+    @Override
+    public void commitTransaction(Connection con) {
+        // no transaction
+    }
+
+    @Override
+    public void rollbackTransaction(Connection con) {
+        // no transaction
+    }
+
+    @Override
+    public boolean saveTicket(Ticket ticket) {
+        if (!saveTicket(null, ticket)) {
+            return false;
+        }
+        shareVisits(Collections.singletonList(ticket));
+        return true;
+    }
+
+    @Override
+    public boolean saveTicket(Connection con, Ticket ticket) {
+        if (!store.saveTicket(ticket)) {
+            return false;
+        }
+        ticket.setVisitCount(store.getVisitCount(ticket.getVehicleRegNumber()));
+        return true;
+    }
+
+    @Override
+    public BatchResult saveTickets(List<Ticket> tickets) {
+        BatchResult result = saveTickets(null, tickets);
+        List<Ticket> saved = new ArrayList<>();
+        for (int row = 0; row < tickets.size(); row++) {
+            if (result.isSucceeded(row)) {
+                saved.add(tickets.get(row));
+            }
+        }
+        shareVisits(saved);
+        return result;
+    }
+
+    @Override
+    public BatchResult saveTickets(Connection con, List<Ticket> tickets) {
+        BatchResult result = new BatchResult(tickets.size());
+        for (int row = 0; row < tickets.size(); row++) {
+            if (store.saveTicket(tickets.get(row))) {
+                result.setSucceeded(row);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Ticket getTicket(String vehicleRegNumber) {
+        return inFacility(store.getTicket(vehicleRegNumber));
+    }
+
+    @Override
+    public Ticket getTicket(Connection con, String vehicleRegNumber) {
+        return getTicket(vehicleRegNumber);
+    }
+
+    /**
+     * @return the latest ticket of the vehicle, the only one the store keeps
+     */
+    @Override
+    public List<Ticket> getTicketHistory(String vehicleRegNumber) {
+        Ticket ticket = inFacility(store.getTicket(vehicleRegNumber));
+        return ticket == null ? Collections.<Ticket>emptyList() : Collections.singletonList(ticket);
+    }
+
+    @Override
+    public int archiveClosedTickets(long cutoffMillis, int batchSize) {
+        return 0;
+    }
+
+    @Override
+    public Ticket getOpenTicket(String vehicleRegNumber) {
+        return inFacility(store.getOpenTicket(vehicleRegNumber));
+    }
+
+    @Override
+    public Ticket getOpenTicketWithVisitCount(String vehicleRegNumber) {
+        return getOpenTicketWithVisitCount(null, vehicleRegNumber);
+    }
+
+    @Override
+    public Ticket getOpenTicketWithVisitCount(Connection con, String vehicleRegNumber) {
+        Ticket ticket = inFacility(store.getOpenTicket(vehicleRegNumber));
+        if (ticket != null) {
+            ticket.setVisitCount(ticket.getVisitCount() + getVisitsElsewhere(vehicleRegNumber));
+        }
+        return ticket;
+    }
+
+    @Override
+    public boolean updateTicket(Ticket ticket) {
+        return store.updateTicket(ticket);
+    }
+
+    @Override
+    public boolean updateTicket(Connection con, Ticket ticket) {
+        return store.updateTicket(ticket);
+    }
+
+    @Override
+    public BatchResult updateTickets(List<Ticket> tickets) {
+        return updateTickets(null, tickets);
+    }
+
+    @Override
+    public BatchResult updateTickets(Connection con, List<Ticket> tickets) {
+        BatchResult result = new BatchResult(tickets.size());
+        for (int row = 0; row < tickets.size(); row++) {
+            if (store.updateTicket(tickets.get(row))) {
+                result.setSucceeded(row);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int getNbTicket(String vehicleRegNumber) {
+        return getNbTicket(null, vehicleRegNumber);
+    }
+
+    @Override
+    public int getNbTicket(Connection con, String vehicleRegNumber) {
+        return store.getVisitCount(vehicleRegNumber) + getVisitsElsewhere(vehicleRegNumber);
+    }
+
+    @Override
+    public Map<String, Integer> getVisitCounts() {
+        return store.getVisitCounts();
+    }
+
+    private Ticket inFacility(Ticket ticket) {
+        if (ticket != null) {
+            ticket.setFacility(dataBaseConfig.getFacility());
+            ticket.getParkingSpot().setFacility(dataBaseConfig.getFacility());
+        }
+        return ticket;
+    }
+}
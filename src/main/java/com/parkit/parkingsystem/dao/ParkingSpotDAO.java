@@ -4,56 +4,392 @@ import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.Timer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 public class ParkingSpotDAO {
     private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
 
+    private static final Timer loadTimer = MetricsRegistry.getDefault().timer("parkingSpotDAO.loadAvailableSpots");
+    private static final Timer refreshTimer = MetricsRegistry.getDefault().timer("parkingSpotDAO.refreshFreedSpots");
+    private static final Timer countTimer = MetricsRegistry.getDefault().timer("parkingSpotDAO.countAvailableSpots");
+    private static final Timer reserveTimer = MetricsRegistry.getDefault().timer("parkingSpotDAO.reserveNextAvailable");
+    private static final Timer updateTimer = MetricsRegistry.getDefault().timer("parkingSpotDAO.updateParking");
+    private static final Timer updateBatchTimer = MetricsRegistry.getDefault().timer("parkingSpotDAO.updateParkings");
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
-    public int getNextAvailableSlot(ParkingType parkingType){
+    public ParkingSpotIndex parkingSpotIndex = new ParkingSpotIndex();
+
+    /**
+     * (Re)loads the in-memory index of free spots from the parking table.
+     * Called at startup, and again whenever the table is changed behind the DAO's back.
+     */
+    public boolean loadAvailableSpots(){
+        long start = loadTimer.start();
         Connection con = null;
-        int result=-1;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
-            ps.setString(1, parkingType.toString());
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_PARKING_SPOTS);
             ResultSet rs = ps.executeQuery();
-            if(rs.next()){
-                result = rs.getInt(1);;
+            parkingSpotIndex.clear();
+            while(rs.next()){
+                parkingSpotIndex.register(rs.getInt(1), ParkingType.valueOf(rs.getString(3)), rs.getBoolean(2));
             }
+            parkingSpotIndex.markLoaded();
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
+            return true;
+        }catch (Exception ex){
+            loadTimer.error();
+            logger.error("Error loading parking spots",ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            loadTimer.stop(start);
+        }
+    }
+
+    /**
+     * Puts back in the index the spots the parking table reads free, e.g. freed by the exits of
+     * another node. Spots taken by another node need no refresh: their conditional update fails
+     * and the claim moves on. A spot this node is reserving may be put back before its
+     * transaction commits; the claim that picks it next fails the same way.
+     *
+     * @return the number of spots put back, or -1 if the DB could not be read
+     */
+    public int refreshFreedSpots(){
+        long start = refreshTimer.start();
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_AVAILABLE_SPOTS);
+            rs = ps.executeQuery();
+            int freed = 0;
+            while(rs.next()){
+                if(parkingSpotIndex.setAvailable(rs.getInt(1), true)){
+                    freed++;
+                }
+            }
+            return freed;
         }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
+            refreshTimer.error();
+            logger.error("Error refreshing available parking spots",ex);
+            return -1;
         }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
             dataBaseConfig.closeConnection(con);
+            refreshTimer.stop(start);
+        }
+    }
+
+    /**
+     * Counts the free spots of each type in the parking table.
+     *
+     * @return the count per type, 0 for a type without free spots, or null if the DB could not be read
+     */
+    public Map<ParkingType, Integer> countAvailableSpots(){
+        long start = countTimer.start();
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.COUNT_AVAILABLE_SPOTS);
+            ResultSet rs = ps.executeQuery();
+            Map<ParkingType, Integer> counts = new EnumMap<>(ParkingType.class);
+            for(ParkingType parkingType : ParkingType.values()){
+                counts.put(parkingType, 0);
+            }
+            while(rs.next()){
+                counts.put(ParkingType.valueOf(rs.getString(1)), rs.getInt(2));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            return counts;
+        }catch (Exception ex){
+            countTimer.error();
+            logger.error("Error counting available parking spots",ex);
+            return null;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            countTimer.stop(start);
+        }
+    }
+
+    public int getNextAvailableSlot(ParkingType parkingType){
+        if(!parkingSpotIndex.isLoaded() && !loadAvailableSpots()){
+            return -1;
+        }
+        return parkingSpotIndex.lowestAvailable(parkingType);
+    }
+
+    /**
+     * Atomically claims the lowest free spot of that type for an entering vehicle.
+     * The spot is first taken out of the in-memory index, so concurrent gates of this process
+     * never get the same number, then marked occupied with a conditional update, so a spot
+     * taken meanwhile by another process is skipped.
+     *
+     * @return the reserved spot, already marked unavailable, or null if none could be reserved
+     */
+    public ParkingSpot reserveNextAvailable(ParkingType parkingType){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            return reserveNextAvailable(con, parkingType);
+        }catch (Exception ex){
+            logger.error("Error reserving parking spot",ex);
+            return null;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Same as {@link #reserveNextAvailable(ParkingType)} on the caller's connection, so the
+     * reservation commits or rolls back with the rest of the caller's transaction. After a
+     * rollback the caller must hand the spot back with {@link #cancelReservation(ParkingSpot)}.
+     */
+    public ParkingSpot reserveNextAvailable(Connection con, ParkingType parkingType){
+        if(!parkingSpotIndex.isLoaded() && !loadAvailableSpots()){
+            return null;
+        }
+        long start = reserveTimer.start();
+        int parkingNumber;
+        try {
+            while((parkingNumber = parkingSpotIndex.claimLowest(parkingType)) > 0){
+                PreparedStatement ps = null;
+                try {
+                    ps = con.prepareStatement(DBConstants.RESERVE_PARKING_SPOT);
+                    ps.setInt(1, parkingNumber);
+                    if(ps.executeUpdate() == 1){
+                        return newParkingSpot(parkingNumber, parkingType, false);
+                    }
+                    // Already occupied in the DB: leave it out of the index and try the next one
+                    logger.warn("Parking spot {} was taken by another gate, trying next one", parkingNumber);
+                }catch (Exception ex){
+                    reserveTimer.error();
+                    logger.error("Error reserving parking spot",ex);
+                    parkingSpotIndex.setAvailable(parkingNumber, true);
+                    return null;
+                }finally {
+                    dataBaseConfig.closePreparedStatement(ps);
+                }
+            }
+            return null;
+        }finally {
+            reserveTimer.stop(start);
+        }
+    }
+
+    /**
+     * Batched {@link #reserveNextAvailable(Connection, ParkingType)}: reserves a spot for each
+     * type of the list with one JDBC batch per round instead of one update per spot. Spots
+     * another gate took in the meantime are left out of the index and replaced in the next round.
+     *
+     * @return the reserved spots in the order of the types, null where the type is full
+     * @throws SQLException if the batch fails, after putting the spots back in the index
+     */
+    public List<ParkingSpot> reserveNextAvailable(Connection con, List<ParkingType> parkingTypes) throws SQLException {
+        List<ParkingSpot> parkingSpots = new ArrayList<>(Collections.<ParkingSpot>nCopies(parkingTypes.size(), null));
+        if(parkingTypes.isEmpty() || (!parkingSpotIndex.isLoaded() && !loadAvailableSpots())){
+            return parkingSpots;
+        }
+        long start = reserveTimer.start();
+        List<Integer> pending = new ArrayList<>();
+        for(int row = 0; row < parkingTypes.size(); row++){
+            pending.add(row);
+        }
+        List<Integer> rows = new ArrayList<>();
+        List<Integer> parkingNumbers = new ArrayList<>();
+        try {
+            while(!pending.isEmpty()){
+                rows.clear();
+                parkingNumbers.clear();
+                for(int row : pending){
+                    int parkingNumber = parkingSpotIndex.claimLowest(parkingTypes.get(row));
+                    if(parkingNumber > 0){
+                        rows.add(row);
+                        parkingNumbers.add(parkingNumber);
+                    }
+                }
+                if(rows.isEmpty()){
+                    break;
+                }
+                BatchResult result = new BatchResult(rows.size());
+                PreparedStatement ps = null;
+                try {
+                    ps = con.prepareStatement(DBConstants.RESERVE_PARKING_SPOT);
+                    for(int parkingNumber : parkingNumbers){
+                        ps.setInt(1, parkingNumber);
+                        ps.addBatch();
+                    }
+                    result.execute(ps);
+                }finally {
+                    dataBaseConfig.closePreparedStatement(ps);
+                }
+                if(result.getError() != null){
+                    throw new SQLException("Parking spot reservation batch failed", result.getError());
+                }
+                pending.clear();
+                for(int i = 0; i < rows.size(); i++){
+                    if(result.isSucceeded(i)){
+                        parkingSpots.set(rows.get(i), newParkingSpot(parkingNumbers.get(i), parkingTypes.get(rows.get(i)), false));
+                    }else{
+                        // Already occupied in the DB: leave it out of the index and try the next one
+                        logger.warn("Parking spot {} was taken by another gate, trying next one", parkingNumbers.get(i));
+                        pending.add(rows.get(i));
+                    }
+                }
+            }
+            return parkingSpots;
+        }catch (SQLException | RuntimeException ex){
+            reserveTimer.error();
+            for(int parkingNumber : parkingNumbers){
+                parkingSpotIndex.setAvailable(parkingNumber, true);
+            }
+            for(ParkingSpot parkingSpot : parkingSpots){
+                if(parkingSpot != null){
+                    cancelReservation(parkingSpot);
+                }
+            }
+            throw ex;
+        }finally {
+            reserveTimer.stop(start);
+        }
+    }
+
+    /**
+     * Takes the lowest free spot of that type out of the index without writing to the DB,
+     * for callers that persist the reservation later with {@link #updateParkings(Connection, List)}.
+     * Only valid when this process is the only one allocating the spots.
+     *
+     * @return the claimed spot, or null if the type is full
+     */
+    public ParkingSpot claimNextAvailable(ParkingType parkingType){
+        if(!parkingSpotIndex.isLoaded() && !loadAvailableSpots()){
+            return null;
+        }
+        int parkingNumber = parkingSpotIndex.claimLowest(parkingType);
+        return parkingNumber > 0 ? newParkingSpot(parkingNumber, parkingType, false) : null;
+    }
+
+    /**
+     * @return a spot of the facility of this DAO's database
+     */
+    protected ParkingSpot newParkingSpot(int parkingNumber, ParkingType parkingType, boolean available){
+        ParkingSpot parkingSpot = new ParkingSpot(parkingNumber, parkingType, available);
+        parkingSpot.setFacility(dataBaseConfig.getFacility());
+        return parkingSpot;
+    }
+
+    /**
+     * Puts back in the index a spot whose reservation was rolled back with its transaction.
+     */
+    public void cancelReservation(ParkingSpot parkingSpot){
+        parkingSpotIndex.setAvailable(parkingSpot.getId(), true);
+    }
+
+    /**
+     * Puts back in the index spots freed by a transaction, once it has committed.
+     */
+    public void releaseCommitted(List<ParkingSpot> parkingSpots){
+        for(ParkingSpot parkingSpot : parkingSpots){
+            parkingSpotIndex.setAvailable(parkingSpot.getId(), true);
         }
-        return result;
     }
 
     public boolean updateParking(ParkingSpot parkingSpot){
-        //update the availability fo that parking slot
         Connection con = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+            return updateParking(con, parkingSpot);
+        }catch (Exception ex){
+            logger.error("Error updating parking info",ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Writes the availability of a spot. Inside a transaction, a spot being freed only goes
+     * back to the index with {@link #releaseCommitted(List)} after the commit: until then its
+     * row still reads occupied for the other gates, which would skip it.
+     */
+    public boolean updateParking(Connection con, ParkingSpot parkingSpot){
+        //update the availability fo that parking slot
+        long start = updateTimer.start();
+        PreparedStatement ps = null;
+        try {
+            ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
             ps.setBoolean(1, parkingSpot.isAvailable());
             ps.setInt(2, parkingSpot.getId());
             int updateRowCount = ps.executeUpdate();
-            dataBaseConfig.closePreparedStatement(ps);
+            if(updateRowCount == 1 && (!parkingSpot.isAvailable() || con.getAutoCommit())){
+                parkingSpotIndex.setAvailable(parkingSpot.getId(), parkingSpot.isAvailable());
+            }
             return (updateRowCount == 1);
         }catch (Exception ex){
+            updateTimer.error();
             logger.error("Error updating parking info",ex);
             return false;
         }finally {
-            dataBaseConfig.closeConnection(con);
+            dataBaseConfig.closePreparedStatement(ps);
+            updateTimer.stop(start);
         }
     }
 
+    /**
+     * Writes the availability of many spots on the caller's transaction with a JDBC batch,
+     * updating the index for the rows that went through, except freed spots which wait for
+     * {@link #releaseCommitted(List)}.
+     */
+    public BatchResult updateParkings(Connection con, List<ParkingSpot> parkingSpots) throws SQLException {
+        BatchResult result = new BatchResult(parkingSpots.size());
+        if(parkingSpots.isEmpty()){
+            return result;
+        }
+        long start = updateBatchTimer.start();
+        PreparedStatement ps = null;
+        try {
+            ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+            for(ParkingSpot parkingSpot : parkingSpots){
+                ps.setBoolean(1, parkingSpot.isAvailable());
+                ps.setInt(2, parkingSpot.getId());
+                ps.addBatch();
+            }
+            result.execute(ps);
+            if(result.getError() != null){
+                updateBatchTimer.error();
+                logger.error("Error updating parking info batch, failed rows: {}", result.getFailedRows(), result.getError());
+            }
+            boolean autoCommit = con.getAutoCommit();
+            for(int row = 0; row < parkingSpots.size(); row++){
+                if(result.isSucceeded(row) && (!parkingSpots.get(row).isAvailable() || autoCommit)){
+                    parkingSpotIndex.setAvailable(parkingSpots.get(row).getId(), parkingSpots.get(row).isAvailable());
+                }
+            }
+            return result;
+        }catch (SQLException | RuntimeException ex){
+            updateBatchTimer.error();
+            throw ex;
+        }finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            updateBatchTimer.stop(start);
+        }
+    }
 }
@@ -0,0 +1,195 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory view of the free parking spots, one bit per {@code PARKING_NUMBER} and per
+ * {@link ParkingType}. The lowest free number is found with a word scan of the bitset
+ * instead of a {@code min()} query over the parking table.
+ * <p>
+ * Reads and claims are lock-free: each 64-spot word is an {@link AtomicLongArray} cell and
+ * a spot is claimed by compare-and-set on its word, so two gates can never be handed the
+ * same number. Only a reload from the DB takes the monitor.
+ * <p>
+ * Every change of a bit also moves a {@link LongAdder} per type, so the number of free spots
+ * is read without scanning the bitset, however often the display boards ask for it.
+ * <p>
+ * There is no summary level of non-empty words: a claim scans up to {@code n / 64} words,
+ * about 800 sequential reads for 50,000 spots of one type. A summary word would need a
+ * second CAS per claim and per release, and a claim racing a release could then miss a free
+ * spot and report the type as full.
+ */
+public class ParkingSpotIndex {
+
+    private static final class Snapshot {
+        private final Map<ParkingType, AtomicLongArray> freeSpots;
+        private final Map<ParkingType, LongAdder> freeCounts;
+        private final Map<ParkingType, Integer> capacities;
+        private final ParkingType[] typeByNumber;
+
+        private Snapshot(Map<ParkingType, AtomicLongArray> freeSpots, Map<ParkingType, LongAdder> freeCounts,
+                         Map<ParkingType, Integer> capacities, ParkingType[] typeByNumber) {
+            this.freeSpots = freeSpots;
+            this.freeCounts = freeCounts;
+            this.capacities = capacities;
+            this.typeByNumber = typeByNumber;
+        }
+    }
+
+    private static final AtomicLongArray NO_SPOTS = new AtomicLongArray(0);
+
+    private final Map<ParkingType, BitSet> pendingSpots = new EnumMap<>(ParkingType.class);
+    private ParkingType[] pendingTypes = new ParkingType[0];
+    private volatile Snapshot snapshot;
+
+    public ParkingSpotIndex() {
+        for (ParkingType parkingType : ParkingType.values()) {
+            pendingSpots.put(parkingType, new BitSet());
+        }
+    }
+
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * Starts a reload: forgets the spots registered so far. The previous content keeps
+     * serving reads until {@link #markLoaded()}.
+     */
+    public synchronized void clear() {
+        for (BitSet bitSet : pendingSpots.values()) {
+            bitSet.clear();
+        }
+        pendingTypes = new ParkingType[0];
+    }
+
+    public synchronized void register(int number, ParkingType parkingType, boolean available) {
+        if (number >= pendingTypes.length) {
+            pendingTypes = Arrays.copyOf(pendingTypes, Math.max(number + 1, pendingTypes.length * 2));
+        }
+        pendingTypes[number] = parkingType;
+        pendingSpots.get(parkingType).set(number, available);
+    }
+
+    /**
+     * Publishes the spots registered since {@link #clear()}.
+     */
+    public synchronized void markLoaded() {
+        publish();
+    }
+
+    /**
+     * @return the lowest free spot number of that type, or 0 when the type is full
+     */
+    public int lowestAvailable(ParkingType parkingType) {
+        AtomicLongArray words = words(parkingType);
+        for (int i = 0; i < words.length(); i++) {
+            long word = words.get(i);
+            if (word != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Atomically takes the lowest free spot of that type out of the index.
+     *
+     * @return the claimed spot number, or 0 when the type is full
+     */
+    public int claimLowest(ParkingType parkingType) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return 0;
+        }
+        AtomicLongArray words = current.freeSpots.get(parkingType);
+        for (int i = 0; i < words.length(); i++) {
+            long word;
+            while ((word = words.get(i)) != 0) {
+                long bit = Long.lowestOneBit(word);
+                if (words.compareAndSet(i, word, word & ~bit)) {
+                    current.freeCounts.get(parkingType).decrement();
+                    return (i << 6) + Long.numberOfTrailingZeros(bit);
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Records the availability written to the DB. Spots unknown to the index are ignored.
+     *
+     * @return true if the availability of the spot actually changed
+     */
+    public boolean setAvailable(int number, boolean available) {
+        Snapshot current = snapshot;
+        if (current == null || number <= 0 || number >= current.typeByNumber.length
+                || current.typeByNumber[number] == null) {
+            return false;
+        }
+        ParkingType parkingType = current.typeByNumber[number];
+        AtomicLongArray words = current.freeSpots.get(parkingType);
+        int index = number >>> 6;
+        long bit = 1L << number;
+        long word;
+        long updated;
+        do {
+            word = words.get(index);
+            updated = available ? word | bit : word & ~bit;
+            if (updated == word) {
+                return false;
+            }
+        } while (!words.compareAndSet(index, word, updated));
+        current.freeCounts.get(parkingType).add(available ? 1 : -1);
+        return true;
+    }
+
+    /**
+     * @return the number of free spots of that type, from its counter
+     */
+    public int countAvailable(ParkingType parkingType) {
+        Snapshot current = snapshot;
+        return current == null ? 0 : (int) current.freeCounts.get(parkingType).sum();
+    }
+
+    /**
+     * @return the number of spots of that type, free or not
+     */
+    public int capacity(ParkingType parkingType) {
+        Snapshot current = snapshot;
+        return current == null ? 0 : current.capacities.get(parkingType);
+    }
+
+    private AtomicLongArray words(ParkingType parkingType) {
+        Snapshot current = snapshot;
+        return current == null ? NO_SPOTS : current.freeSpots.get(parkingType);
+    }
+
+    private void publish() {
+        // toLongArray() drops trailing empty words, size every type to cover all spot numbers
+        int wordCount = (pendingTypes.length + 63) >>> 6;
+        Map<ParkingType, AtomicLongArray> freeSpots = new EnumMap<>(ParkingType.class);
+        Map<ParkingType, LongAdder> freeCounts = new EnumMap<>(ParkingType.class);
+        Map<ParkingType, Integer> capacities = new EnumMap<>(ParkingType.class);
+        for (Map.Entry<ParkingType, BitSet> entry : pendingSpots.entrySet()) {
+            freeSpots.put(entry.getKey(), new AtomicLongArray(Arrays.copyOf(entry.getValue().toLongArray(), wordCount)));
+            LongAdder freeCount = new LongAdder();
+            freeCount.add(entry.getValue().cardinality());
+            freeCounts.put(entry.getKey(), freeCount);
+            capacities.put(entry.getKey(), 0);
+        }
+        for (ParkingType parkingType : pendingTypes) {
+            if (parkingType != null) {
+                capacities.merge(parkingType, 1, Integer::sum);
+            }
+        }
+        snapshot = new Snapshot(freeSpots, freeCounts, capacities, pendingTypes.clone());
+    }
+}
@@ -0,0 +1,75 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+/**
+ * Closed tickets of one ID range as read for re-pricing, in primitive arrays reused from one
+ * range to the next.
+ */
+public class PriceBatch {
+
+    private final int[] ids;
+    private final ParkingType[] parkingTypes;
+    private final long[] inTimes;
+    private final long[] outTimes;
+    private final double[] prices;
+    private final int[] visitCounts;
+    private int size;
+
+    /**
+     * @param capacity the largest ID range that will be read into the batch
+     */
+    public PriceBatch(int capacity) {
+        ids = new int[capacity];
+        parkingTypes = new ParkingType[capacity];
+        inTimes = new long[capacity];
+        outTimes = new long[capacity];
+        prices = new double[capacity];
+        visitCounts = new int[capacity];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void add(int id, ParkingType parkingType, long inTime, long outTime, double price, int visitCount) {
+        ids[size] = id;
+        parkingTypes[size] = parkingType;
+        inTimes[size] = inTime;
+        outTimes[size] = outTime;
+        prices[size] = price;
+        visitCounts[size] = visitCount;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    public ParkingType getParkingType(int row) {
+        return parkingTypes[row];
+    }
+
+    public long getInTime(int row) {
+        return inTimes[row];
+    }
+
+    public long getOutTime(int row) {
+        return outTimes[row];
+    }
+
+    public double getPrice(int row) {
+        return prices[row];
+    }
+
+    /**
+     * @return the number of tickets of the vehicle that entered up to this one, this one included
+     */
+    public int getVisitCount(int row) {
+        return visitCounts[row];
+    }
+}
@@ -0,0 +1,77 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads the ticket and ticket_archive tables for reports.
+ * <p>
+ * Tickets are streamed through a forward-only, read-only result set fetched
+ * {@code parkit.report.fetchSize} rows at a time (1000; on MySQL this relies on
+ * {@code useCursorFetch}), and handed to a {@link ClosedTicketHandler} row by row, so memory does
+ * not grow with the table.
+ */
+public class ReportDAO {
+
+    private static final Logger logger = LogManager.getLogger("ReportDAO");
+
+    private static final Timer streamTimer = MetricsRegistry.getDefault().timer("reportDAO.streamClosedTickets");
+    private static final LongAdder streamedRows = MetricsRegistry.getDefault().counter("reportDAO.streamedRows");
+
+    static final int FETCH_SIZE = Integer.getInteger("parkit.report.fetchSize", 1000);
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    /**
+     * Streams the tickets closed in {@code [fromMillis, toMillis)}, in no particular order.
+     *
+     * @return the number of tickets streamed, or -1 if the table could not be read; the handler
+     * may have received part of the tickets by then
+     */
+    public long streamClosedTickets(long fromMillis, long toMillis, ClosedTicketHandler handler) {
+        long start = streamTimer.start();
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        long rows = 0;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.STREAM_CLOSED_TICKETS, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(FETCH_SIZE);
+            for (int table = 0; table < 2; table++) {
+                // ticket, then ticket_archive
+                ps.setTimestamp(2 * table + 1, new Timestamp(fromMillis));
+                ps.setTimestamp(2 * table + 2, new Timestamp(toMillis));
+            }
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                handler.accept(ParkingType.valueOf(rs.getString(1)), rs.getTimestamp(2).getTime(),
+                        rs.getTimestamp(3).getTime(), rs.getDouble(4));
+                rows++;
+            }
+            return rows;
+        } catch (Exception ex) {
+            streamTimer.error();
+            logger.error("Error streaming closed tickets after {} rows", rows, ex);
+            return -1;
+        } finally {
+            streamedRows.add(rows);
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+            streamTimer.stop(start);
+        }
+    }
+}
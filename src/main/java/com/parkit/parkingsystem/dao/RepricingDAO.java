@@ -0,0 +1,165 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads and rewrites ticket prices by ID range, for bulk re-pricing, in the ticket table and
+ * in ticket_archive where the older tickets keep their ID.
+ */
+public class RepricingDAO {
+
+    private static final Logger logger = LogManager.getLogger("RepricingDAO");
+
+    private static final Timer readTimer = MetricsRegistry.getDefault().timer("repricingDAO.readClosedTickets");
+    private static final Timer updateTimer = MetricsRegistry.getDefault().timer("repricingDAO.updatePrices");
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    public Connection beginTransaction() throws ClassNotFoundException, SQLException {
+        return dataBaseConfig.beginTransaction();
+    }
+
+    public void commitTransaction(Connection con) throws SQLException {
+        dataBaseConfig.commitTransaction(con);
+    }
+
+    public void rollbackTransaction(Connection con) {
+        dataBaseConfig.rollbackTransaction(con);
+    }
+
+    /**
+     * @return the lowest and highest ticket ID, {@code {1, 0}} for an empty table, or null if
+     * the table could not be read
+     */
+    public int[] getTicketIdRange() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_TICKET_ID_RANGE);
+            rs = ps.executeQuery();
+            if (rs.next() && rs.getObject(1) != null) {
+                return new int[]{rs.getInt(1), rs.getInt(2)};
+            }
+            return new int[]{1, 0};
+        } catch (Exception ex) {
+            logger.error("Error reading ticket ID range", ex);
+            return null;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Reads the closed tickets, live or archived, with {@code fromId <= ID < toId} into the batch, replacing its
+     * content. The batch must hold at least {@code toId - fromId} rows.
+     *
+     * @return the number of tickets read
+     */
+    public int readClosedTickets(Connection con, int fromId, int toId, PriceBatch batch) throws SQLException {
+        long start = readTimer.start();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        batch.clear();
+        try {
+            ps = con.prepareStatement(DBConstants.GET_CLOSED_TICKETS_TO_PRICE);
+            ps.setInt(1, fromId);
+            ps.setInt(2, toId);
+            ps.setInt(3, fromId);
+            ps.setInt(4, toId);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                batch.add(rs.getInt(1), ParkingType.valueOf(rs.getString(2)), rs.getTimestamp(3).getTime(),
+                        rs.getTimestamp(4).getTime(), rs.getDouble(5), rs.getInt(6));
+            }
+            return batch.size();
+        } catch (SQLException | RuntimeException ex) {
+            readTimer.error();
+            throw ex;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            readTimer.stop(start);
+        }
+    }
+
+    /**
+     * Sets the price of the first {@code count} tickets of {@code ids} with one JDBC batch, on
+     * the caller's transaction. Tickets missing from the ticket table are then updated in
+     * ticket_archive with a second batch.
+     */
+    public BatchResult updatePrices(Connection con, int[] ids, double[] prices, int count) throws SQLException {
+        BatchResult result = new BatchResult(count);
+        if (count == 0) {
+            return result;
+        }
+        long start = updateTimer.start();
+        PreparedStatement ps = null;
+        try {
+            ps = con.prepareStatement(DBConstants.UPDATE_TICKET_PRICE);
+            for (int row = 0; row < count; row++) {
+                ps.setDouble(1, prices[row]);
+                ps.setInt(2, ids[row]);
+                ps.addBatch();
+            }
+            result.execute(ps);
+            if (result.getError() == null && result.getSuccessCount() < count) {
+                updateArchivedPrices(con, ids, prices, result);
+            }
+            if (result.getError() != null) {
+                updateTimer.error();
+                logger.error("Error updating ticket prices, failed rows: {}", result.getFailedRows(), result.getError());
+            }
+            return result;
+        } catch (SQLException | RuntimeException ex) {
+            updateTimer.error();
+            throw ex;
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            updateTimer.stop(start);
+        }
+    }
+
+    private void updateArchivedPrices(Connection con, int[] ids, double[] prices, BatchResult result) throws SQLException {
+        int[] rows = new int[result.size() - result.getSuccessCount()];
+        PreparedStatement ps = null;
+        try {
+            ps = con.prepareStatement(DBConstants.UPDATE_ARCHIVED_TICKET_PRICE);
+            int archived = 0;
+            for (int row = 0; row < result.size(); row++) {
+                if (!result.isSucceeded(row)) {
+                    ps.setDouble(1, prices[row]);
+                    ps.setInt(2, ids[row]);
+                    ps.addBatch();
+                    rows[archived++] = row;
+                }
+            }
+            BatchResult archivedResult = new BatchResult(archived);
+            archivedResult.execute(ps);
+            for (int i = 0; i < archived; i++) {
+                if (archivedResult.isSucceeded(i)) {
+                    result.setSucceeded(rows[i]);
+                }
+            }
+            if (archivedResult.getError() != null) {
+                result.setError(archivedResult.getError());
+            }
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.parkit.parkingsystem.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static com.parkit.parkingsystem.dao.TicketArchiveWriter.BLOCK_HEADER_BYTES;
+import static com.parkit.parkingsystem.dao.TicketArchiveWriter.FILE_HEADER_BYTES;
+import static com.parkit.parkingsystem.dao.TicketArchiveWriter.MAGIC;
+import static com.parkit.parkingsystem.dao.TicketArchiveWriter.VERSION;
+
+/**
+ * Reads a ticket archive written by {@link TicketArchiveWriter}, one ticket at a time.
+ * <p>
+ * Each block is memory-mapped and checked against its CRC32, then read in place: the reader is
+ * a cursor whose getters decode the current row straight from the mapped columns, so no ticket
+ * object or intermediate array is built. Registration numbers are decoded once, when they enter
+ * the dictionary.
+ * <pre>
+ * while (reader.next()) {
+ *     reader.getVehicleRegNumber() ...
+ * }
+ * </pre>
+ */
+public class TicketArchiveReader implements Closeable {
+
+    private static final int IN_TIMES = 0;
+    private static final int OUT_TIMES = 1;
+    private static final int VEHICLES = 2;
+    private static final int IDS = 3;
+
+    private final FileChannel channel;
+    private final long size;
+    private final List<String> dictionary = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private long position = FILE_HEADER_BYTES;
+    private MappedByteBuffer block;
+    private int blockRows;
+    private int row;
+    private int parkingStart;
+    private int parkingWidth;
+    private int priceStart;
+    private int priceWidth;
+    private long timeUnit;
+    // read positions of the varint columns in the mapped block
+    private final int[] positions = new int[4];
+
+    private int id;
+    private int parkingNumber;
+    private double price;
+    private long inTime;
+    private long outTime;
+    private String vehicleRegNumber;
+
+    public TicketArchiveReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // until the header is read
+        }
+        header.flip();
+        if (header.remaining() < FILE_HEADER_BYTES || header.getInt() != MAGIC) {
+            channel.close();
+            throw new IOException(file + " is not a ticket archive");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            channel.close();
+            throw new IOException("Unsupported ticket archive version " + version);
+        }
+    }
+
+    /**
+     * Moves to the next ticket.
+     *
+     * @return false at the end of the archive
+     * @throws IOException if a block is truncated or corrupt
+     */
+    public boolean next() throws IOException {
+        while (block == null || row == blockRows) {
+            if (!nextBlock()) {
+                return false;
+            }
+        }
+        parkingNumber = getFixed(parkingStart, parkingWidth);
+        price = getFixed(priceStart, priceWidth) / 100.0;
+        if (row > 0) {
+            inTime += unzigzag(readVarint(IN_TIMES)) * timeUnit;
+            id += (int) unzigzag(readVarint(IDS));
+        }
+        long stay = readVarint(OUT_TIMES);
+        outTime = stay == 0 ? 0 : inTime + unzigzag(stay - 1) * timeUnit;
+        vehicleRegNumber = dictionary.get((int) readVarint(VEHICLES));
+        row++;
+        return true;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getParkingNumber() {
+        return parkingNumber;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    /**
+     * @return the entry time, in epoch milliseconds
+     */
+    public long getInTime() {
+        return inTime;
+    }
+
+    /**
+     * @return the exit time, in epoch milliseconds, 0 for a ticket still open
+     */
+    public long getOutTime() {
+        return outTime;
+    }
+
+    @Override
+    public void close() throws IOException {
+        block = null;
+        channel.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (position == size) {
+            block = null;
+            return false;
+        }
+        if (size - position < BLOCK_HEADER_BYTES) {
+            throw new IOException("Truncated ticket archive block at " + position);
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, position, BLOCK_HEADER_BYTES);
+        int rows = header.getInt(0);
+        int bodyBytes = header.getInt(4);
+        if (size - position - BLOCK_HEADER_BYTES < bodyBytes) {
+            throw new IOException("Truncated ticket archive block at " + position);
+        }
+        block = channel.map(FileChannel.MapMode.READ_ONLY, position, BLOCK_HEADER_BYTES + (long) bodyBytes);
+        ByteBuffer body = block.duplicate();
+        body.position(BLOCK_HEADER_BYTES);
+        crc.reset();
+        crc.update(body);
+        if ((int) crc.getValue() != header.getInt(8)) {
+            throw new IOException("Corrupt ticket archive block at " + position);
+        }
+        position += BLOCK_HEADER_BYTES + bodyBytes;
+
+        block.position(BLOCK_HEADER_BYTES);
+        long newVehicles = readVarint(block);
+        for (long i = 0; i < newVehicles; i++) {
+            byte[] bytes = new byte[(int) readVarint(block)];
+            block.get(bytes);
+            dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        blockRows = rows;
+        row = 0;
+        parkingWidth = header.get(24);
+        priceWidth = header.get(25);
+        timeUnit = header.get(26) == 1 ? 1000 : 1;
+        parkingStart = BLOCK_HEADER_BYTES + header.getInt(12);
+        priceStart = parkingStart + rows * parkingWidth;
+        int inStart = priceStart + rows * priceWidth;
+        inTime = block.getLong(inStart);
+        positions[IN_TIMES] = inStart + 8;
+        positions[OUT_TIMES] = inStart + header.getInt(16);
+        positions[VEHICLES] = positions[OUT_TIMES] + header.getInt(20);
+        int idStart = positions[VEHICLES] + header.getInt(28);
+        id = block.getInt(idStart);
+        positions[IDS] = idStart + 4;
+        return rows > 0;
+    }
+
+    private int getFixed(int columnStart, int width) {
+        switch (width) {
+            case 1: {
+                return block.get(columnStart + row);
+            }
+            case 2: {
+                return block.getShort(columnStart + row * 2);
+            }
+            default: {
+                return block.getInt(columnStart + row * 4);
+            }
+        }
+    }
+
+    /**
+     * Decodes the varint at the position of the given column of the mapped block and moves past it.
+     */
+    private long readVarint(int column) {
+        int at = positions[column];
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = block.get(at++);
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        positions[column] = at;
+        return value;
+    }
+
+    private static long readVarint(ByteBuffer source) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = source.get();
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
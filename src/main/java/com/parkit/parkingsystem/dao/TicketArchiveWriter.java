@@ -0,0 +1,228 @@
+package com.parkit.parkingsystem.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Writes tickets to a columnar archive file, read back by {@link TicketArchiveReader}.
+ * <p>
+ * After an 8 byte header (magic and version), tickets are stored in blocks of up to
+ * {@value #BLOCK_ROWS} rows. A block starts with its row count, body length, CRC32 of the body,
+ * the lengths of its variable sections and its encoding, followed by the columns one after the
+ * other:
+ * <ul>
+ * <li>the registration numbers first seen in this block, appended to the archive's dictionary</li>
+ * <li>parking numbers, fixed width</li>
+ * <li>prices in cents, fixed width</li>
+ * <li>in-times: the first in milliseconds, then zigzag varint deltas to the previous one</li>
+ * <li>out-times: varint of the zigzag stay length plus one, 0 for an open ticket</li>
+ * <li>vehicles: varint index in the dictionary</li>
+ * <li>IDs: the first one, then zigzag varint deltas to the previous one</li>
+ * </ul>
+ * The fixed widths are the smallest of 1, 2 or 4 bytes holding every value of the block, and
+ * the deltas count seconds when all times of the block are whole seconds, as DATETIME columns
+ * are. Tickets close in time and returning vehicles thus take about 9 bytes each. Prices are
+ * kept to the cent.
+ */
+public class TicketArchiveWriter implements TicketRowHandler, Closeable {
+
+    static final int MAGIC = 0x504b5441; // "PKTA"
+    static final int VERSION = 2;
+    static final int FILE_HEADER_BYTES = 8;
+    // rows, body length, CRC32, dictionary, in-time and out-time section lengths, then the
+    // parking number width, price width and time unit flag, one byte each, and the vehicle
+    // section length
+    static final int BLOCK_HEADER_BYTES = 32;
+    static final int BLOCK_ROWS = 65536;
+
+    private final FileChannel channel;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<String> newVehicles = new ArrayList<>();
+    private final int[] parkingNumbers = new int[BLOCK_ROWS];
+    private final int[] pricesCents = new int[BLOCK_ROWS];
+    private final long[] inTimes = new long[BLOCK_ROWS];
+    private final long[] outTimes = new long[BLOCK_ROWS];
+    private final int[] vehicles = new int[BLOCK_ROWS];
+    private final int[] ids = new int[BLOCK_ROWS];
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_HEADER_BYTES + BLOCK_ROWS * 45);
+    private int rows;
+    private long totalRows;
+
+    public TicketArchiveWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        writeFully(header);
+    }
+
+    @Override
+    public void accept(int id, int parkingNumber, String vehicleRegNumber, double price, long inTime, long outTime)
+            throws IOException {
+        Integer vehicle = dictionary.get(vehicleRegNumber);
+        if (vehicle == null) {
+            vehicle = dictionary.size();
+            dictionary.put(vehicleRegNumber, vehicle);
+            newVehicles.add(vehicleRegNumber);
+        }
+        parkingNumbers[rows] = parkingNumber;
+        pricesCents[rows] = Math.toIntExact(Math.round(price * 100));
+        inTimes[rows] = inTime;
+        outTimes[rows] = outTime;
+        vehicles[rows] = vehicle;
+        ids[rows] = id;
+        if (++rows == BLOCK_ROWS) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * @return the number of tickets written so far
+     */
+    public long getTotalRows() {
+        return totalRows + rows;
+    }
+
+    /**
+     * Writes the last block and forces the file to disk.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        int dictionaryBytes = 0;
+        for (String vehicle : newVehicles) {
+            dictionaryBytes += 5 + vehicle.length() * 3;
+        }
+        int capacity = BLOCK_HEADER_BYTES + 5 + dictionaryBytes + rows * (4 + 4 + 10 + 10 + 5 + 5) + 8 + 4;
+        int parkingWidth = width(parkingNumbers);
+        int priceWidth = width(pricesCents);
+        long unit = 1000;
+        for (int row = 0; row < rows && unit > 1; row++) {
+            if (inTimes[row] % 1000 != 0 || outTimes[row] % 1000 != 0) {
+                unit = 1;
+            }
+        }
+        if (buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+        }
+        buffer.clear();
+        buffer.position(BLOCK_HEADER_BYTES);
+
+        putVarint(buffer, newVehicles.size());
+        for (String vehicle : newVehicles) {
+            byte[] bytes = vehicle.getBytes(StandardCharsets.UTF_8);
+            putVarint(buffer, bytes.length);
+            buffer.put(bytes);
+        }
+        int dictionaryEnd = buffer.position();
+        putFixed(buffer, parkingNumbers, parkingWidth);
+        putFixed(buffer, pricesCents, priceWidth);
+        int inStart = buffer.position();
+        buffer.putLong(inTimes[0]);
+        for (int row = 1; row < rows; row++) {
+            putVarint(buffer, zigzag((inTimes[row] - inTimes[row - 1]) / unit));
+        }
+        int outStart = buffer.position();
+        for (int row = 0; row < rows; row++) {
+            putVarint(buffer, outTimes[row] == 0 ? 0 : zigzag((outTimes[row] - inTimes[row]) / unit) + 1);
+        }
+        int vehicleStart = buffer.position();
+        for (int row = 0; row < rows; row++) {
+            putVarint(buffer, vehicles[row]);
+        }
+        int idStart = buffer.position();
+        buffer.putInt(ids[0]);
+        for (int row = 1; row < rows; row++) {
+            putVarint(buffer, zigzag((long) ids[row] - ids[row - 1]));
+        }
+        int end = buffer.position();
+
+        ByteBuffer body = buffer.duplicate();
+        body.position(BLOCK_HEADER_BYTES).limit(end);
+        crc.reset();
+        crc.update(body);
+        buffer.putInt(0, rows)
+                .putInt(4, end - BLOCK_HEADER_BYTES)
+                .putInt(8, (int) crc.getValue())
+                .putInt(12, dictionaryEnd - BLOCK_HEADER_BYTES)
+                .putInt(16, outStart - inStart)
+                .putInt(20, vehicleStart - outStart)
+                .put(24, (byte) parkingWidth)
+                .put(25, (byte) priceWidth)
+                .put(26, (byte) (unit == 1000 ? 1 : 0))
+                .putInt(28, idStart - vehicleStart);
+        buffer.position(0).limit(end);
+        writeFully(buffer);
+        totalRows += rows;
+        rows = 0;
+        newVehicles.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    /**
+     * @return the number of bytes of the smallest signed integer holding the first rows of values
+     */
+    private int width(int[] values) {
+        int min = 0;
+        int max = 0;
+        for (int row = 0; row < rows; row++) {
+            min = Math.min(min, values[row]);
+            max = Math.max(max, values[row]);
+        }
+        if (min >= Byte.MIN_VALUE && max <= Byte.MAX_VALUE) {
+            return 1;
+        }
+        return min >= Short.MIN_VALUE && max <= Short.MAX_VALUE ? 2 : 4;
+    }
+
+    private void putFixed(ByteBuffer target, int[] values, int width) {
+        for (int row = 0; row < rows; row++) {
+            if (width == 1) {
+                target.put((byte) values[row]);
+            } else if (width == 2) {
+                target.putShort((short) values[row]);
+            } else {
+                target.putInt(values[row]);
+            }
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void putVarint(ByteBuffer target, long value) {
+        while ((value & ~0x7fL) != 0) {
+            target.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        target.put((byte) value);
+    }
+}
@@ -5,98 +5,454 @@ import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.Timer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Tickets of the gates. Open tickets and recent history live in the ticket table, which the
+ * lookups of the gates read; closed tickets past the archive horizon are moved to
+ * ticket_archive by {@link #archiveClosedTickets(long, int)} and only read when the history is
+ * asked for.
+ * <p>
+ * Each facility counts the visits of its own tickets in its vehicle_stats. The counts returned
+ * to the gates add those of {@link #otherFacilities}, so a recurring customer gets the discount
+ * whichever site they park in. Those are kept in memory: loaded once by
+ * {@link #loadVisitsElsewhere()}, then pushed by the other facilities as their visits commit, so
+ * a gate transaction never waits on another facility's DB.
+ */
 public class TicketDAO {
 
     private static final Logger logger = LogManager.getLogger("TicketDAO");
 
+    private static final Timer saveTicketTimer = MetricsRegistry.getDefault().timer("ticketDAO.saveTicket");
+    private static final Timer saveTicketsTimer = MetricsRegistry.getDefault().timer("ticketDAO.saveTickets");
+    private static final Timer findTicketTimer = MetricsRegistry.getDefault().timer("ticketDAO.findTicket");
+    private static final Timer openTicketTimer = MetricsRegistry.getDefault().timer("ticketDAO.getOpenTicketWithVisitCount");
+    private static final Timer updateTicketTimer = MetricsRegistry.getDefault().timer("ticketDAO.updateTicket");
+    private static final Timer updateTicketsTimer = MetricsRegistry.getDefault().timer("ticketDAO.updateTickets");
+    private static final Timer nbTicketTimer = MetricsRegistry.getDefault().timer("ticketDAO.getNbTicket");
+    private static final Timer archiveTimer = MetricsRegistry.getDefault().timer("ticketDAO.archiveClosedTickets");
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+    // Ticket DAOs of the other facilities of the deployment, told about the visits committed here
+    public List<TicketDAO> otherFacilities = Collections.emptyList();
+
+    // Visits of each vehicle recorded in the other facilities
+    private final Map<String, Integer> visitsElsewhere = new ConcurrentHashMap<>();
+
+    /**
+     * Starts a transaction spanning several DAO calls, see {@link DataBaseConfig#beginTransaction()}.
+     */
+    public Connection beginTransaction() throws ClassNotFoundException, SQLException {
+        return dataBaseConfig.beginTransaction();
+    }
+
+    public void commitTransaction(Connection con) throws SQLException {
+        dataBaseConfig.commitTransaction(con);
+    }
+
+    public void rollbackTransaction(Connection con) {
+        dataBaseConfig.rollbackTransaction(con);
+    }
+
     public boolean saveTicket(Ticket ticket){
         Connection con = null;
-        boolean isSucces = false;
         try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET);
-            //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-            //ps.setInt(1,ticket.getId());
-            ps.setInt(1,ticket.getParkingSpot().getId());
-            ps.setString(2, ticket.getVehicleRegNumber());
-            ps.setDouble(3, ticket.getPrice());
-            ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
-            ps.setTimestamp(5, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
+            con = dataBaseConfig.beginTransaction();
+            if(saveTicket(con, ticket)){
+                dataBaseConfig.commitTransaction(con);
+                shareVisits(Collections.singletonList(ticket));
+                return true;
+            }
+        }catch (Exception ex){
+            logger.error("Error saving ticket",ex);
+        }
+        dataBaseConfig.rollbackTransaction(con);
+        return false;
+    }
+
+    /**
+     * Inserts the ticket and increments the vehicle's visit counter in vehicle_stats.
+     * The caller's connection must be in a transaction so both writes commit together.
+     * The ticket's visit count is set to the incremented counter of this facility.
+     */
+    public boolean saveTicket(Connection con, Ticket ticket){
+        long start = saveTicketTimer.start();
+        PreparedStatement ps = null;
+        PreparedStatement statsPs = null;
+        try {
+            ps = con.prepareStatement(DBConstants.SAVE_TICKET);
+            bindTicket(ps, ticket);
             int rowsUpdated = ps.executeUpdate();
-            return rowsUpdated == 1;
+            if(rowsUpdated != 1){
+                saveTicketTimer.error();
+                return false;
+            }
+            statsPs = con.prepareStatement(DBConstants.INCREMENT_VISIT_COUNT, Statement.RETURN_GENERATED_KEYS);
+            statsPs.setString(1, ticket.getVehicleRegNumber());
+            ticket.setVisitCount(incrementedVisitCount(con, statsPs, statsPs.executeUpdate(), ticket.getVehicleRegNumber()));
+            return true;
         }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
+            saveTicketTimer.error();
+            logger.error("Error saving ticket",ex);
         }finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closePreparedStatement(statsPs);
+            saveTicketTimer.stop(start);
+        }
+        return false;
+    }
 
-            dataBaseConfig.closeConnection(con);
+    /**
+     * @return the visit counter just written: 1 for a new row, else the LAST_INSERT_ID value
+     * the upsert hands back as generated key. H2 does not return it, there the counter is read
+     * again, in process.
+     */
+    private int incrementedVisitCount(Connection con, PreparedStatement statsPs, int rowsUpdated, String vehicleRegNumber) throws SQLException {
+        if(rowsUpdated == 1){
+            return 1;
         }
-         return false;
+        ResultSet keys = statsPs.getGeneratedKeys();
+        try {
+            if(keys.next()){
+                return keys.getInt(1);
+            }
+        }finally {
+            dataBaseConfig.closeResultSet(keys);
+        }
+        return readVisitCount(con, vehicleRegNumber);
     }
 
+    /**
+     * Inserts many tickets in one transaction with JDBC batches, all or nothing: when a row
+     * fails the transaction is rolled back and every row is reported failed. Inserted tickets
+     * get their generated ID.
+     */
+    public BatchResult saveTickets(List<Ticket> tickets){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.beginTransaction();
+            BatchResult result = saveTickets(con, tickets);
+            if(!result.isAllSucceeded()){
+                throw new SQLException("Ticket batch rolled back, failed rows " + result.getFailedRows(), result.getError());
+            }
+            dataBaseConfig.commitTransaction(con);
+            shareVisits(tickets);
+            return result;
+        }catch (Exception ex){
+            logger.error("Error saving ticket batch",ex);
+            dataBaseConfig.rollbackTransaction(con);
+            for(Ticket ticket : tickets){
+                // Generated by the insert that was rolled back
+                ticket.setId(0);
+            }
+            return failedBatch(tickets.size(), ex);
+        }
+    }
+
+    /**
+     * Batched {@link #saveTicket(Connection, Ticket)} on the caller's transaction: one insert
+     * batch for the tickets, then one visit counter batch for the rows that were inserted.
+     */
+    public BatchResult saveTickets(Connection con, List<Ticket> tickets) throws SQLException {
+        BatchResult result = new BatchResult(tickets.size());
+        if(tickets.isEmpty()){
+            return result;
+        }
+        long start = saveTicketsTimer.start();
+        PreparedStatement ps = null;
+        PreparedStatement statsPs = null;
+        ResultSet keys = null;
+        try {
+            ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
+            for(Ticket ticket : tickets){
+                bindTicket(ps, ticket);
+                ps.addBatch();
+            }
+            result.execute(ps);
+            logBatchError("Error saving ticket batch", result, saveTicketsTimer);
+            keys = ps.getGeneratedKeys();
+            for(int row = 0; row < tickets.size(); row++){
+                if(result.isSucceeded(row) && keys.next()){
+                    tickets.get(row).setId(keys.getInt(1));
+                }
+            }
+            statsPs = con.prepareStatement(DBConstants.INCREMENT_VISIT_COUNT);
+            for(int row = 0; row < tickets.size(); row++){
+                if(result.isSucceeded(row)){
+                    statsPs.setString(1, tickets.get(row).getVehicleRegNumber());
+                    statsPs.addBatch();
+                }
+            }
+            statsPs.executeBatch();
+            return result;
+        }catch (SQLException | RuntimeException ex){
+            saveTicketsTimer.error();
+            throw ex;
+        }finally {
+            dataBaseConfig.closeResultSet(keys);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closePreparedStatement(statsPs);
+            saveTicketsTimer.stop(start);
+        }
+    }
+
+    /**
+     * @return the latest ticket of the vehicle, open or closed, among the tickets not archived
+     */
     public Ticket getTicket(String vehicleRegNumber) {
+        return findTicket(DBConstants.GET_TICKET, vehicleRegNumber);
+    }
+
+    /**
+     * {@link #getTicket(String)} on the caller's connection, failing instead of returning null
+     * when the DB cannot be read.
+     */
+    public Ticket getTicket(Connection con, String vehicleRegNumber) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = con.prepareStatement(DBConstants.GET_TICKET);
+            ps.setString(1, vehicleRegNumber);
+            rs = ps.executeQuery();
+            return rs.next() ? readTicket(rs, vehicleRegNumber) : null;
+        }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    /**
+     * @return the ticket of the vehicle still parked (no out-time yet), or null
+     */
+    public Ticket getOpenTicket(String vehicleRegNumber) {
+        return findTicket(DBConstants.GET_OPEN_TICKET, vehicleRegNumber);
+    }
+
+    public Ticket getOpenTicketWithVisitCount(String vehicleRegNumber) {
         Connection con = null;
-        Ticket ticket = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET);
-            //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+            return getOpenTicketWithVisitCount(con, vehicleRegNumber);
+        }catch (Exception ex){
+            logger.error("Error fetching ticket",ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return null;
+    }
+
+    /**
+     * Loads the open ticket of a vehicle together with its ticket count in a single query,
+     * on the caller's connection.
+     */
+    public Ticket getOpenTicketWithVisitCount(Connection con, String vehicleRegNumber) {
+        long start = openTicketTimer.start();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        Ticket ticket = null;
+        try {
+            ps = con.prepareStatement(DBConstants.GET_OPEN_TICKET_WITH_COUNT);
             ps.setString(1,vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
+            rs = ps.executeQuery();
             if(rs.next()){
-                ticket = new Ticket();
-                ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setId(rs.getInt(2));
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(rs.getDouble(3));
-                ticket.setInTime(rs.getTimestamp(4));
-                ticket.setOutTime(rs.getTimestamp(5));
+                ticket = readTicket(rs, vehicleRegNumber);
+                ticket.setVisitCount(rs.getInt(7) + getVisitsElsewhere(vehicleRegNumber));
             }
-            dataBaseConfig.closeResultSet(rs);
-            dataBaseConfig.closePreparedStatement(ps);
         }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
+            openTicketTimer.error();
+            logger.error("Error fetching ticket",ex);
         }finally {
-            dataBaseConfig.closeConnection(con);
-            return ticket;
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            openTicketTimer.stop(start);
         }
+        return ticket;
     }
 
     public boolean updateTicket(Ticket ticket) {
         Connection con = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
+            return updateTicket(con, ticket);
+        }catch (Exception ex){
+            logger.error("Error saving ticket info",ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return false;
+    }
+
+    public boolean updateTicket(Connection con, Ticket ticket) {
+        long start = updateTicketTimer.start();
+        PreparedStatement ps = null;
+        try {
+            ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
             ps.setDouble(1, ticket.getPrice());
             ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
             ps.setInt(3,ticket.getId());
             ps.execute();
             return true;
         }catch (Exception ex){
+            updateTicketTimer.error();
             logger.error("Error saving ticket info",ex);
         }finally {
-            dataBaseConfig.closeConnection(con);
+            dataBaseConfig.closePreparedStatement(ps);
+            updateTicketTimer.stop(start);
         }
         return false;
     }
-    public int getNbTicket(String vehicleRegNumber) {
+
+    /**
+     * Closes many tickets (price and out-time) in one transaction with a JDBC batch, all or
+     * nothing like {@link #saveTickets(List)}.
+     */
+    public BatchResult updateTickets(List<Ticket> tickets) {
         Connection con = null;
-        int count = 0;
+        try {
+            con = dataBaseConfig.beginTransaction();
+            BatchResult result = updateTickets(con, tickets);
+            if(!result.isAllSucceeded()){
+                throw new SQLException("Ticket batch rolled back, failed rows " + result.getFailedRows(), result.getError());
+            }
+            dataBaseConfig.commitTransaction(con);
+            return result;
+        }catch (Exception ex){
+            logger.error("Error saving ticket info batch",ex);
+            dataBaseConfig.rollbackTransaction(con);
+            return failedBatch(tickets.size(), ex);
+        }
+    }
 
+    public BatchResult updateTickets(Connection con, List<Ticket> tickets) throws SQLException {
+        BatchResult result = new BatchResult(tickets.size());
+        if(tickets.isEmpty()){
+            return result;
+        }
+        long start = updateTicketsTimer.start();
+        PreparedStatement ps = null;
         try {
+            ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
+            for(Ticket ticket : tickets){
+                ps.setDouble(1, ticket.getPrice());
+                ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+                ps.setInt(3,ticket.getId());
+                ps.addBatch();
+            }
+            result.execute(ps);
+            logBatchError("Error saving ticket info batch", result, updateTicketsTimer);
+            return result;
+        }catch (SQLException | RuntimeException ex){
+            updateTicketsTimer.error();
+            throw ex;
+        }finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            updateTicketsTimer.stop(start);
+        }
+    }
 
+    /**
+     * @return the number of tickets recorded for the vehicle in every facility, read from their
+     * vehicle_stats counters
+     */
+    public int getNbTicket(String vehicleRegNumber) {
+        Connection con = null;
+        try {
             con = dataBaseConfig.getConnection();
+            return getNbTicket(con, vehicleRegNumber);
+        } catch (Exception ex) {
+            logger.error("Error counting tickets", ex);
+        } finally {
+            /*fermer la connexion*/
+            dataBaseConfig.closeConnection(con);
+        }
+        return 0;
+    }
+
+    public int getNbTicket(Connection con, String vehicleRegNumber) {
+        return readVisitCount(con, vehicleRegNumber) + getVisitsElsewhere(vehicleRegNumber);
+    }
 
+    /**
+     * @return the visits of the vehicle recorded in the other facilities, from memory
+     */
+    public int getVisitsElsewhere(String vehicleRegNumber) {
+        return visitsElsewhere.getOrDefault(vehicleRegNumber, 0);
+    }
+
+    /**
+     * Loads the visit counts of the {@link #otherFacilities}, one query each. Called once they are
+     * set, before the gates open; {@link #shareVisits(List)} keeps the counts up to date after.
+     */
+    public void loadVisitsElsewhere() {
+        Map<String, Integer> visits = new HashMap<>();
+        for (TicketDAO other : otherFacilities) {
+            for (Map.Entry<String, Integer> entry : other.getVisitCounts().entrySet()) {
+                visits.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+        visitsElsewhere.clear();
+        visitsElsewhere.putAll(visits);
+    }
+
+    /**
+     * Counts the committed tickets as visits in the memory of the {@link #otherFacilities}.
+     * Callers writing tickets on their own transaction call it once that commits.
+     */
+    public void shareVisits(List<Ticket> tickets) {
+        for (TicketDAO other : otherFacilities) {
+            for (Ticket ticket : tickets) {
+                other.visitsElsewhere.merge(ticket.getVehicleRegNumber(), 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * @return the visit counts recorded in this facility only, per vehicle
+     */
+    public Map<String, Integer> getVisitCounts() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        Map<String, Integer> visits = new HashMap<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_VISIT_COUNTS);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                visits.put(rs.getString(1), rs.getInt(2));
+            }
+        } catch (Exception ex) {
+            logger.error("Error counting tickets", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+        return visits;
+    }
+
+    private int readVisitCount(Connection con, String vehicleRegNumber) {
+        long start = nbTicketTimer.start();
+        int count = 0;
+
+        try {
 
             PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET_COUNT);
 
@@ -117,13 +473,311 @@ public class TicketDAO {
 
         } catch (Exception ex) {
 
+            nbTicketTimer.error();
             logger.error("Error counting tickets", ex);
         } finally {
-            /*fermer la connexion*/
-            dataBaseConfig.closeConnection(con);
+            nbTicketTimer.stop(start);
         }
 
 
         return count;
     }
+
+    /**
+     * @return every ticket of the vehicle, archived ones included, latest first
+     */
+    public List<Ticket> getTicketHistory(String vehicleRegNumber) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        List<Ticket> tickets = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_TICKET_HISTORY);
+            ps.setString(1, vehicleRegNumber);
+            ps.setString(2, vehicleRegNumber);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                tickets.add(readTicket(rs, vehicleRegNumber));
+            }
+        }catch (Exception ex){
+            logger.error("Error fetching ticket history",ex);
+        }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+        return tickets;
+    }
+
+    /**
+     * Moves up to {@code batchSize} tickets closed before {@code cutoffMillis}, oldest first,
+     * from ticket to ticket_archive in one transaction. They keep their ID.
+     *
+     * @return the number of tickets moved, or -1 if the batch was rolled back
+     */
+    public int archiveClosedTickets(long cutoffMillis, int batchSize) {
+        long start = archiveTimer.start();
+        Connection con = null;
+        PreparedStatement ps = null;
+        PreparedStatement archivePs = null;
+        PreparedStatement deletePs = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.beginTransaction();
+            ps = con.prepareStatement(DBConstants.GET_TICKETS_TO_ARCHIVE);
+            ps.setTimestamp(1, new Timestamp(cutoffMillis));
+            ps.setInt(2, batchSize);
+            rs = ps.executeQuery();
+            archivePs = con.prepareStatement(DBConstants.ARCHIVE_TICKET);
+            deletePs = con.prepareStatement(DBConstants.DELETE_TICKET);
+            int count = 0;
+            while (rs.next()) {
+                archivePs.setInt(1, rs.getInt(1));
+                archivePs.addBatch();
+                deletePs.setInt(1, rs.getInt(1));
+                deletePs.addBatch();
+                count++;
+            }
+            if (count > 0) {
+                archivePs.executeBatch();
+                deletePs.executeBatch();
+            }
+            dataBaseConfig.commitTransaction(con);
+            return count;
+        }catch (Exception ex){
+            archiveTimer.error();
+            logger.error("Error archiving closed tickets",ex);
+            dataBaseConfig.rollbackTransaction(con);
+            return -1;
+        }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closePreparedStatement(archivePs);
+            dataBaseConfig.closePreparedStatement(deletePs);
+            archiveTimer.stop(start);
+        }
+    }
+
+    /**
+     * Writes back tickets exported with their ID, under that ID, in one transaction: closed
+     * tickets to ticket_archive, open ones to ticket. vehicle_stats is left alone, see
+     * {@link #rebuildVisitCounts()}.
+     *
+     * @return the number of tickets written, or -1 if the batch was rolled back
+     */
+    public int restoreTickets(List<Ticket> tickets) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        PreparedStatement archivePs = null;
+        try {
+            con = dataBaseConfig.beginTransaction();
+            ps = con.prepareStatement(DBConstants.RESTORE_TICKET);
+            archivePs = con.prepareStatement(DBConstants.RESTORE_ARCHIVED_TICKET);
+            int open = 0;
+            for (Ticket ticket : tickets) {
+                PreparedStatement target = ticket.getOutTime() == null ? ps : archivePs;
+                target.setInt(1, ticket.getId());
+                target.setInt(2, ticket.getParkingSpot().getId());
+                target.setString(3, ticket.getVehicleRegNumber());
+                target.setDouble(4, ticket.getPrice());
+                target.setTimestamp(5, new Timestamp(ticket.getInTime().getTime()));
+                target.setTimestamp(6, ticket.getOutTime() == null ? null : new Timestamp(ticket.getOutTime().getTime()));
+                target.addBatch();
+                if (target == ps) {
+                    open++;
+                }
+            }
+            if (open > 0) {
+                ps.executeBatch();
+            }
+            if (open < tickets.size()) {
+                archivePs.executeBatch();
+            }
+            dataBaseConfig.commitTransaction(con);
+            return tickets.size();
+        }catch (Exception ex){
+            logger.error("Error restoring tickets",ex);
+            dataBaseConfig.rollbackTransaction(con);
+            return -1;
+        }finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closePreparedStatement(archivePs);
+        }
+    }
+
+    /**
+     * Recounts vehicle_stats from the tickets, live and archived, in one transaction, e.g. after
+     * {@link #restoreTickets(List)}.
+     */
+    public boolean rebuildVisitCounts() {
+        Connection con = null;
+        PreparedStatement clearPs = null;
+        PreparedStatement countPs = null;
+        try {
+            con = dataBaseConfig.beginTransaction();
+            clearPs = con.prepareStatement(DBConstants.CLEAR_VISIT_COUNTS);
+            clearPs.executeUpdate();
+            countPs = con.prepareStatement(DBConstants.COUNT_VISITS);
+            countPs.executeUpdate();
+            dataBaseConfig.commitTransaction(con);
+            return true;
+        }catch (Exception ex){
+            logger.error("Error rebuilding visit counts",ex);
+            dataBaseConfig.rollbackTransaction(con);
+            return false;
+        }finally {
+            dataBaseConfig.closePreparedStatement(clearPs);
+            dataBaseConfig.closePreparedStatement(countPs);
+        }
+    }
+
+    /**
+     * Moves the ID sequence of the ticket table past the highest ID, live or archived, so new
+     * tickets never take the ID of a restored archived one. Runs DDL, outside any transaction.
+     */
+    public boolean skipUsedTicketIds() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        PreparedStatement alterPs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_TICKET_ID_RANGE);
+            rs = ps.executeQuery();
+            if (!rs.next() || rs.getObject(2) == null) {
+                return true;
+            }
+            alterPs = con.prepareStatement(DBConstants.SET_NEXT_TICKET_ID + (rs.getInt(2) + 1));
+            alterPs.execute();
+            return true;
+        }catch (Exception ex){
+            logger.error("Error moving the ticket ID sequence",ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closePreparedStatement(alterPs);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Streams every ticket through forward-only result sets, fetched {@code parkit.report.fetchSize}
+     * rows at a time, e.g. to archive the table: the live tickets, then the archived ones, each
+     * table in the order of its primary key so neither has to be sorted. Both scans read one
+     * repeatable-read snapshot, so a ticket archived meanwhile is streamed once.
+     *
+     * @return the number of tickets streamed, or -1 if the tables could not be read or the
+     * handler failed
+     */
+    public long streamTickets(TicketRowHandler handler) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        int isolation = Connection.TRANSACTION_NONE;
+        long rows = 0;
+        try {
+            con = dataBaseConfig.beginTransaction();
+            isolation = con.getTransactionIsolation();
+            con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            for (String query : new String[]{DBConstants.STREAM_TICKETS, DBConstants.STREAM_ARCHIVED_TICKETS}) {
+                ps = con.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(ReportDAO.FETCH_SIZE);
+                rs = ps.executeQuery();
+                while (rs.next()) {
+                    Timestamp outTime = rs.getTimestamp(6);
+                    handler.accept(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getDouble(4), rs.getTimestamp(5).getTime(),
+                            outTime == null ? 0 : outTime.getTime());
+                    rows++;
+                }
+                dataBaseConfig.closeResultSet(rs);
+                dataBaseConfig.closePreparedStatement(ps);
+                rs = null;
+                ps = null;
+            }
+            con.setTransactionIsolation(isolation);
+            dataBaseConfig.commitTransaction(con);
+            return rows;
+        }catch (Exception ex){
+            logger.error("Error streaming tickets after {} rows", rows, ex);
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            restoreIsolation(con, isolation);
+            dataBaseConfig.rollbackTransaction(con);
+            return -1;
+        }
+    }
+
+    private void restoreIsolation(Connection con, int isolation) {
+        if (con != null && isolation != Connection.TRANSACTION_NONE) {
+            try {
+                con.setTransactionIsolation(isolation);
+            } catch (SQLException ex) {
+                logger.error("Error restoring transaction isolation", ex);
+            }
+        }
+    }
+
+    private Ticket findTicket(String query, String vehicleRegNumber) {
+        long start = findTicketTimer.start();
+        Connection con = null;
+        Ticket ticket = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(query);
+            //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+            ps.setString(1,vehicleRegNumber);
+            ResultSet rs = ps.executeQuery();
+            if(rs.next()){
+                ticket = readTicket(rs, vehicleRegNumber);
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }catch (Exception ex){
+            findTicketTimer.error();
+            logger.error("Error fetching ticket",ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            findTicketTimer.stop(start);
+        }
+        return ticket;
+    }
+
+    private void bindTicket(PreparedStatement ps, Ticket ticket) throws SQLException {
+        //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+        //ps.setInt(1,ticket.getId());
+        ps.setInt(1,ticket.getParkingSpot().getId());
+        ps.setString(2, ticket.getVehicleRegNumber());
+        ps.setDouble(3, ticket.getPrice());
+        ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+        ps.setTimestamp(5, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
+    }
+
+    private static void logBatchError(String message, BatchResult result, Timer timer) {
+        if(result.getError() != null){
+            timer.error();
+            logger.error("{}, failed rows: {}", message, result.getFailedRows(), result.getError());
+        }
+    }
+
+    private static BatchResult failedBatch(int size, Exception error) {
+        BatchResult result = new BatchResult(size);
+        result.setError(error);
+        return result;
+    }
+
+    private Ticket readTicket(ResultSet rs, String vehicleRegNumber) throws SQLException {
+        Ticket ticket = new Ticket();
+        ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
+        parkingSpot.setFacility(dataBaseConfig.getFacility());
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setFacility(dataBaseConfig.getFacility());
+        ticket.setId(rs.getInt(2));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(rs.getDouble(3));
+        ticket.setInTime(rs.getTimestamp(4));
+        ticket.setOutTime(rs.getTimestamp(5));
+        return ticket;
+    }
 }
@@ -0,0 +1,16 @@
+package com.parkit.parkingsystem.dao;
+
+import java.io.IOException;
+
+/**
+ * Receives tickets one row at a time, as primitives, e.g. to archive them.
+ */
+public interface TicketRowHandler {
+
+    /**
+     * @param id      ticket ID, live and archived tickets share one sequence
+     * @param inTime  entry time, in epoch milliseconds
+     * @param outTime exit time, in epoch milliseconds, 0 for a ticket still open
+     */
+    void accept(int id, int parkingNumber, String vehicleRegNumber, double price, long inTime, long outTime) throws IOException;
+}
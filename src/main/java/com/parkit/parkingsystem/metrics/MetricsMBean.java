@@ -0,0 +1,72 @@
+package com.parkit.parkingsystem.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.Map;
+
+/**
+ * Read-only JMX view of a {@link MetricsRegistry}, one attribute per value of its snapshot.
+ */
+class MetricsMBean implements DynamicMBean {
+
+    private final MetricsRegistry registry;
+
+    MetricsMBean(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = registry.snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> snapshot = registry.snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            if (snapshot.containsKey(attribute)) {
+                list.add(new Attribute(attribute, snapshot.get(attribute)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "Metrics have no operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Number> snapshot = registry.snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+        int i = 0;
+        for (Map.Entry<String, Number> entry : snapshot.entrySet()) {
+            attributes[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false);
+        }
+        return new MBeanInfo(MetricsMBean.class.getName(), "Parking system metrics", attributes, null,
+                new MBeanOperationInfo[0], null);
+    }
+}
@@ -0,0 +1,136 @@
+package com.parkit.parkingsystem.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Named timers, counters and gauges of the application.
+ * <p>
+ * Components look their metrics up once, in a static field, and only touch lock-free
+ * structures on the hot path. The values are published through JMX with
+ * {@link #registerMBean()} and as Prometheus text with {@link #toText()}.
+ */
+public class MetricsRegistry {
+
+    private static final Logger logger = LogManager.getLogger("MetricsRegistry");
+
+    public static final String OBJECT_NAME = "com.parkit.parkingsystem:type=Metrics";
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_LABELS = {"p50", "p90", "p99", "p999"};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.9", "0.99", "0.999"};
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentSkipListMap<>();
+
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, key -> new Timer());
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Publishes a value read on demand, replacing a gauge of the same name.
+     */
+    public void gauge(String name, Supplier<? extends Number> gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * @return every value by name, timers flattened into count, errors, mean, percentiles and max in microseconds
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            Timer timer = entry.getValue();
+            LatencyHistogram histogram = timer.getHistogram();
+            String name = entry.getKey();
+            values.put(name + ".count", timer.getCount());
+            values.put(name + ".errors", timer.getErrorCount());
+            values.put(name + ".meanMicros", histogram.getMean() / 1000);
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                values.put(name + "." + PERCENTILE_LABELS[i] + "Micros",
+                        histogram.getValueAtPercentile(PERCENTILES[i]) / 1000.0);
+            }
+            values.put(name + ".maxMicros", histogram.getMax() / 1000.0);
+        }
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().sum());
+        }
+        for (Map.Entry<String, Supplier<? extends Number>> entry : gauges.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        return values;
+    }
+
+    /**
+     * @return the metrics in the Prometheus text format: timers as summaries in seconds
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            String name = metricName(entry.getKey()) + "_seconds";
+            LatencyHistogram histogram = entry.getValue().getHistogram();
+            text.append("# TYPE ").append(name).append(" summary\n");
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                text.append(name).append("{quantile=\"").append(QUANTILE_LABELS[i]).append("\"} ")
+                        .append(histogram.getValueAtPercentile(PERCENTILES[i]) / 1e9).append('\n');
+            }
+            text.append(name).append("_sum ").append(histogram.getSum() / 1e9).append('\n');
+            text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+            String errors = metricName(entry.getKey()) + "_errors_total";
+            text.append("# TYPE ").append(errors).append(" counter\n");
+            text.append(errors).append(' ').append(entry.getValue().getErrorCount()).append('\n');
+        }
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            String name = metricName(entry.getKey()) + "_total";
+            text.append("# TYPE ").append(name).append(" counter\n");
+            text.append(name).append(' ').append(entry.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, Supplier<? extends Number>> entry : gauges.entrySet()) {
+            String name = metricName(entry.getKey());
+            text.append("# TYPE ").append(name).append(" gauge\n");
+            text.append(name).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Registers this registry on the platform MBean server, once.
+     */
+    public synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(this), name);
+            }
+        } catch (JMException e) {
+            logger.error("Unable to register metrics MBean", e);
+        }
+    }
+
+    private static String metricName(String name) {
+        return "parkit_" + name.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+}
@@ -0,0 +1,46 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and error count of one operation:
+ * <pre>
+ * long start = timer.start();
+ * try {
+ *     ...
+ * } catch (Exception e) {
+ *     timer.error();
+ * } finally {
+ *     timer.stop(start);
+ * }
+ * </pre>
+ */
+public class Timer {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void stop(long start) {
+        histogram.record(System.nanoTime() - start);
+    }
+
+    public void error() {
+        errors.increment();
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    public long getErrorCount() {
+        return errors.sum();
+    }
+}
@@ -0,0 +1,80 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+/**
+ * A vehicle passing a gate, as buffered by a lane controller and replayed later.
+ */
+public class GateEvent {
+
+    public enum Type {
+        ENTRY,
+        EXIT
+    }
+
+    private Type type;
+    private String vehicleRegNumber;
+    private ParkingType parkingType;
+    private long time;
+    private int parkingNumber;
+    private double price;
+
+    public GateEvent(Type type, String vehicleRegNumber, ParkingType parkingType, long time) {
+        this.type = type;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.parkingType = parkingType;
+        this.time = time;
+    }
+
+    public static GateEvent entry(String vehicleRegNumber, ParkingType parkingType, long time) {
+        return new GateEvent(Type.ENTRY, vehicleRegNumber, parkingType, time);
+    }
+
+    public static GateEvent exit(String vehicleRegNumber, long time) {
+        return new GateEvent(Type.EXIT, vehicleRegNumber, null, time);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    /**
+     * Vehicle type of an entry, null for an exit.
+     */
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    /**
+     * Time the vehicle passed the gate, in epoch milliseconds.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Spot given to the vehicle at the gate, 0 when the spot is left to the replay.
+     */
+    public int getParkingNumber() {
+        return parkingNumber;
+    }
+
+    public void setParkingNumber(int parkingNumber) {
+        this.parkingNumber = parkingNumber;
+    }
+
+    /**
+     * Fare charged at the exit gate.
+     */
+    public double getPrice() {
+        return price;
+    }
+
+    public void setPrice(double price) {
+        this.price = price;
+    }
+}
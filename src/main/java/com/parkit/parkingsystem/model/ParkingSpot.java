@@ -6,6 +6,7 @@ public class ParkingSpot {
     private int number;
     private ParkingType parkingType;
     private boolean isAvailable;
+    private String facility;
 
     public ParkingSpot(int number, ParkingType parkingType, boolean isAvailable) {
         this.number = number;
@@ -37,6 +38,17 @@ public class ParkingSpot {
         isAvailable = available;
     }
 
+    /**
+     * Facility the spot belongs to, null for a single site.
+     */
+    public String getFacility() {
+        return facility;
+    }
+
+    public void setFacility(String facility) {
+        this.facility = facility;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
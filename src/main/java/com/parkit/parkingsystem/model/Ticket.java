@@ -10,6 +10,9 @@ public class Ticket {
     private double price;
     private Date inTime;
     private Date outTime;
+    private int visitCount;
+    private int discountPercent;
+    private String facility;
 
     public int getId() {
         return id;
@@ -58,4 +61,38 @@ public class Ticket {
     public void setOutTime(Date outTime) {
         this.outTime = outTime;
     }
+
+    /**
+     * Facility the ticket was issued in, null for a single site.
+     */
+    public String getFacility() {
+        return facility;
+    }
+
+    public void setFacility(String facility) {
+        this.facility = facility;
+    }
+
+    /**
+     * Number of tickets recorded for this vehicle in every facility, this one included, when
+     * the ticket was loaded together with it; 0 otherwise.
+     */
+    public int getVisitCount() {
+        return visitCount;
+    }
+
+    public void setVisitCount(int visitCount) {
+        this.visitCount = visitCount;
+    }
+
+    /**
+     * Discount applied to the price when the ticket was closed, in percent.
+     */
+    public int getDiscountPercent() {
+        return discountPercent;
+    }
+
+    public void setDiscountPercent(int discountPercent) {
+        this.discountPercent = discountPercent;
+    }
 }
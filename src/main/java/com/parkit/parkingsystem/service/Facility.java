@@ -0,0 +1,167 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotDAO;
+import com.parkit.parkingsystem.dao.InMemoryStore;
+import com.parkit.parkingsystem.dao.InMemoryTicketDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ReportDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The gates of one car park and the services behind them.
+ * <p>
+ * A deployment serving several facilities opens one per facility on the database its
+ * {@link com.parkit.parkingsystem.config.ShardRouter} routes to: spot index, occupancy counters,
+ * journal, live report and archiver all belong to the facility, so a busy site does not slow
+ * the others down. Only the visit counts behind the recurring-customer discount are read
+ * across facilities, see {@link #shareVisitCounts(List)}.
+ */
+public class Facility {
+
+    private static final Logger logger = LogManager.getLogger("Facility");
+
+    private static final long SHUTDOWN_MILLIS = 30000;
+
+    private final String id;
+    private final ParkingService parkingService;
+    private final OccupancyService occupancyService;
+    private final ReportService reportService;
+    private final TicketDAO ticketDAO;
+    private final TicketArchiver archiver;
+    private final InMemoryStore store;
+    private RevenueReport liveReport;
+
+    /**
+     * @param id            facility id, null for a single site
+     * @param reportService source of the reports, null when there is no ticket table
+     */
+    public Facility(String id, ParkingService parkingService, OccupancyService occupancyService,
+                    ReportService reportService) {
+        this(id, parkingService, occupancyService, reportService, null, null, null);
+    }
+
+    private Facility(String id, ParkingService parkingService, OccupancyService occupancyService,
+                     ReportService reportService, TicketDAO ticketDAO, TicketArchiver archiver, InMemoryStore store) {
+        this.id = id;
+        this.parkingService = parkingService;
+        this.occupancyService = occupancyService;
+        this.reportService = reportService;
+        this.ticketDAO = ticketDAO;
+        this.archiver = archiver;
+        this.store = store;
+    }
+
+    /**
+     * Opens the facility on its database and starts its background tasks, configured with the
+     * {@code parkit.memory.*}, {@code parkit.journal.*}, {@code parkit.writeBehind.*},
+     * {@code parkit.occupancy.*} and {@code parkit.archive.*} system properties.
+     */
+    public static Facility open(String id, DataBaseConfig dataBaseConfig) throws IOException {
+        InMemoryStore store = InMemoryStore.isEnabled() ? InMemoryStore.open(id) : null;
+        ParkingSpotDAO parkingSpotDAO = store == null ? new ParkingSpotDAO() : new InMemoryParkingSpotDAO(store);
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO.loadAvailableSpots();
+        TicketDAO ticketDAO = store == null ? new TicketDAO() : new InMemoryTicketDAO(store);
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        ParkingService parkingService = ParkingService.create(null, parkingSpotDAO, ticketDAO, id);
+        OccupancyService occupancyService = new OccupancyService(parkingSpotDAO, id);
+        if (!(parkingService instanceof WriteBehindParkingService)) {
+            // With write-behind the parking table lags behind the gates on purpose
+            occupancyService.start(Long.getLong("parkit.occupancy.reconcileMillis", 60000L));
+        }
+        ReportService reportService = null;
+        TicketArchiver archiver = null;
+        if (store == null) {
+            archiver = TicketArchiver.create(ticketDAO);
+            archiver.start(Long.getLong("parkit.archive.intervalMillis", 3600000L));
+            ReportDAO reportDAO = new ReportDAO();
+            reportDAO.dataBaseConfig = dataBaseConfig;
+            reportService = new ReportService(reportDAO);
+        }
+        return new Facility(id, parkingService, occupancyService, reportService, ticketDAO, archiver, store);
+    }
+
+    /**
+     * Makes the visit counts of each facility include the visits recorded in the others, so a
+     * vehicle keeps its discount from one site to the next. Each facility still writes its own
+     * counts and loads those of the others here, once; after that the others' counts are kept
+     * in memory as their visits commit, and a gate never queries another facility's DB.
+     */
+    public static void shareVisitCounts(List<Facility> facilities) {
+        for (Facility facility : facilities) {
+            if (facility.ticketDAO == null) {
+                continue;
+            }
+            List<TicketDAO> others = new ArrayList<>();
+            for (Facility other : facilities) {
+                if (other != facility && other.ticketDAO != null) {
+                    others.add(other.ticketDAO);
+                }
+            }
+            facility.ticketDAO.otherFacilities = others;
+        }
+        for (Facility facility : facilities) {
+            if (facility.ticketDAO != null) {
+                facility.ticketDAO.loadVisitsElsewhere();
+            }
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ParkingService getParkingService() {
+        return parkingService;
+    }
+
+    public OccupancyService getOccupancyService() {
+        return occupancyService;
+    }
+
+    public ReportService getReportService() {
+        return reportService;
+    }
+
+    /**
+     * @return today's report, followed from the exits since it was first asked for today
+     */
+    public synchronized RevenueReport getLiveReport() {
+        LocalDate today = LocalDate.now(reportService.getZone());
+        if (liveReport == null || !liveReport.getFrom().equals(today)) {
+            liveReport = reportService.follow(parkingService, today, today.plusDays(1));
+        }
+        return liveReport;
+    }
+
+    /**
+     * Stops the background tasks and waits for the pending writes. The database is left to
+     * its owner.
+     */
+    public void close() {
+        occupancyService.stop();
+        if (archiver != null) {
+            archiver.stop();
+        }
+        try {
+            parkingService.shutdown(SHUTDOWN_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                logger.error("Unable to snapshot the in-memory store of facility {}", id, e);
+            }
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.Timer;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.tariff.Tariff;
+import com.parkit.parkingsystem.tariff.TariffRegistry;
 
 public class FareCalculatorService {
 
+    // calculateFareCents stays unmeasured: two clock reads would cost as much as the fare itself
+    private static final Timer fareTimer = MetricsRegistry.getDefault().timer("fareCalculator.calculateFare");
 
     public void calculateFare(Ticket ticket) {
         calculateFare(ticket, false); // Pas de réduction par défaut
@@ -12,48 +18,73 @@ public class FareCalculatorService {
 
 
     public void calculateFare(Ticket ticket, boolean discount) {
+        long start = fareTimer.start();
+        try {
+            validate(ticket);
 
-        // Validation des heures d'entrée et de sortie
-        if (ticket.getOutTime() == null || ticket.getOutTime().before(ticket.getInTime())) {
-            throw new IllegalArgumentException("Out time provided is incorrect: " + ticket.getOutTime());
+            long priceCents = calculateFareCents(ticket.getInTime().getTime(), ticket.getOutTime().getTime(),
+                    ticket.getParkingSpot().getParkingType(), discount);
+
+            ticket.setPrice(priceCents / 100.0); // Enregistrer le tarif final dans le ticket
+        } catch (RuntimeException e) {
+            fareTimer.error();
+            throw e;
+        } finally {
+            fareTimer.stop(start);
         }
+    }
 
-        // Calcul de la durée en millisecondes
-        long inTimeMillis = ticket.getInTime().getTime();
-        long outTimeMillis = ticket.getOutTime().getTime();
-        double durationMillis = outTimeMillis - inTimeMillis;
-        double durationMinutes = durationMillis / (1000 * 60); // Conversion ms -> minutes
+    /**
+     * Prices the ticket with the discount tier matching the vehicle's number of visits.
+     *
+     * @return the discount applied, in percent
+     */
+    public int calculateFare(Ticket ticket, int visitCount) {
+        long start = fareTimer.start();
+        try {
+            validate(ticket);
 
-        // Gratuité si la durée <= 30 minutes
-        if (durationMinutes <= 30) {
-            ticket.setPrice(0); // Gratuit
-            return;
-        }
+            Tariff tariff = TariffRegistry.getDefault().current();
+            int percentOff = tariff.discountPercent(visitCount);
+            long priceCents = tariff.priceCents(ticket.getInTime().getTime(), ticket.getOutTime().getTime(),
+                    ticket.getParkingSpot().getParkingType(), percentOff);
 
-        // Calcul de la durée en heures
-        double durationHours = durationMillis / (1000 * 60 * 60); // Conversion ms -> heures
-
-        // Calcul du tarif en fonction du type de parking
-        double totalFare;
-        switch (ticket.getParkingSpot().getParkingType()) {
-            case CAR: {
-                totalFare = durationHours * Fare.CAR_RATE_PER_HOUR; // Tarif pour voiture
-                break;
-            }
-            case BIKE: {
-                totalFare = durationHours * Fare.BIKE_RATE_PER_HOUR; // Tarif pour moto
-                break;
-            }
-            default: {
-                throw new IllegalArgumentException("Unknown Parking Type");
-            }
+            ticket.setPrice(priceCents / 100.0);
+            return percentOff;
+        } catch (RuntimeException e) {
+            fareTimer.error();
+            throw e;
+        } finally {
+            fareTimer.stop(start);
         }
+    }
 
-        // Appliquer la réduction de 5 % si `discount` est true
-        if (discount) {
-            totalFare *= 0.95;
-        }
+    /**
+     * Computes a fare on primitive epoch milliseconds with the tariff in force, without
+     * allocating. {@code discount} applies the recurring customer discount.
+     *
+     * @return the fare in cents, rounded half up
+     */
+    public static long calculateFareCents(long inMillis, long outMillis, ParkingType parkingType, boolean discount) {
+        Tariff tariff = TariffRegistry.getDefault().current();
+        return tariff.priceCents(inMillis, outMillis, parkingType, discount ? tariff.recurringDiscountPercent() : 0);
+    }
+
+    /**
+     * Computes a fare on primitives with the given tariff and the discount tier matching the
+     * number of visits, for bulk re-pricing.
+     *
+     * @return the fare in cents, rounded half up
+     */
+    public static long calculateFareCents(Tariff tariff, long inMillis, long outMillis, ParkingType parkingType,
+                                          int visitCount) {
+        return tariff.priceCents(inMillis, outMillis, parkingType, tariff.discountPercent(visitCount));
+    }
 
-        ticket.setPrice(totalFare); // Enregistrer le tarif final dans le ticket
+    private static void validate(Ticket ticket) {
+        // Validation des heures d'entrée et de sortie
+        if (ticket.getOutTime() == null || ticket.getOutTime().before(ticket.getInTime())) {
+            throw new IllegalArgumentException("Out time provided is incorrect: " + ticket.getOutTime());
+        }
     }
-}
\ No newline at end of file
+}
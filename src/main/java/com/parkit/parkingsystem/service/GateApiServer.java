@@ -0,0 +1,426 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.ExecutorConfig;
+import com.parkit.parkingsystem.config.ShardRouter;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.model.Ticket;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * HTTP front end of the gates, so one process serves many lanes at once:
+ * <ul>
+ * <li>{@code POST /entry?type=CAR&vehicle=AB123CD} records an entry, 409 when the parking is full</li>
+ * <li>{@code POST /exit?vehicle=AB123CD} records an exit, 404 without an open ticket</li>
+ * <li>{@code GET /status} returns the free and occupied spots per vehicle type, from memory</li>
+ * <li>{@code GET /metrics} returns the latencies, counters and gauges in the Prometheus text format</li>
+ * <li>{@code GET /report?from=2024-01-01&to=2024-02-01} returns revenue, visits and dwell time per hour
+ * and vehicle type as CSV, streamed from the ticket table; without dates, today's report kept live
+ * by the exits</li>
+ * </ul>
+ * A server running several facilities needs {@code facility=<id>} on every request but
+ * {@code /metrics}, e.g. {@code POST /entry?facility=north&type=CAR&vehicle=AB123CD}.
+ * Responses are small JSON objects. Requests run on the executor of {@link ExecutorConfig}:
+ * a bounded worker pool, or one virtual thread per request. When the pool and its queue are
+ * full, the request is answered 503 right away on the server thread.
+ */
+public class GateApiServer {
+
+    private static final Logger logger = LogManager.getLogger("GateApiServer");
+
+    static {
+        // The JDK server writes headers and body separately: without TCP_NODELAY every response on a
+        // keep-alive connection waits for the client's delayed ACK (~40 ms)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    // Set while the server thread answers a request the executor rejected
+    private static final ThreadLocal<Boolean> rejected = ThreadLocal.withInitial(() -> false);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Facility> facilities = new LinkedHashMap<>();
+
+    public GateApiServer(ParkingService parkingService, OccupancyService occupancyService, int port,
+                         ExecutorService executor) throws IOException {
+        this(parkingService, occupancyService, null, port, executor);
+    }
+
+    /**
+     * @param reportService source of {@code /report}, null to answer it with 404
+     */
+    public GateApiServer(ParkingService parkingService, OccupancyService occupancyService,
+                         ReportService reportService, int port, ExecutorService executor) throws IOException {
+        this(Collections.singletonList(new Facility(null, parkingService, occupancyService, reportService)), port,
+                executor);
+    }
+
+    /**
+     * @param facilities the facilities served, requests name theirs unless there is only one
+     */
+    public GateApiServer(List<Facility> facilities, int port, ExecutorService executor) throws IOException {
+        for (Facility facility : facilities) {
+            this.facilities.put(facility.getId(), facility);
+        }
+        this.executor = executor;
+        this.server = HttpServer.create(new InetSocketAddress(port), Integer.getInteger("parkit.http.backlog", 1024));
+        server.setExecutor(this::dispatch);
+        server.createContext("/entry", overloadable(this::handleEntry));
+        server.createContext("/exit", overloadable(this::handleExit));
+        server.createContext("/status", overloadable(this::handleStatus));
+        server.createContext("/metrics", overloadable(this::handleMetrics));
+        server.createContext("/report", overloadable(this::handleReport));
+    }
+
+    /**
+     * Starts a server on the production database, or on the database of every facility of
+     * {@code parkit.facilities}, configured with the {@code parkit.db.*}, {@code parkit.facility.*},
+     * {@code parkit.memory.*}, {@code parkit.http.*}, {@code parkit.executor}, {@code parkit.journal.*},
+     * {@code parkit.writeBehind.*}, {@code parkit.occupancy.*} and {@code parkit.archive.*} system
+     * properties, and stops it on JVM shutdown.
+     */
+    public static GateApiServer launch() throws IOException {
+        ShardRouter router = ShardRouter.create();
+        List<Facility> facilities = new ArrayList<>();
+        for (String id : router.getFacilities()) {
+            facilities.add(Facility.open(id, router.route(id)));
+        }
+        Facility.shareVisitCounts(facilities);
+        ExecutorConfig executorConfig = new ExecutorConfig();
+        executorConfig.configureCarriers(router.getMaxConnections());
+        ExecutorService executor = executorConfig.newExecutor();
+        MetricsRegistry.getDefault().registerMBean();
+        GateApiServer server = new GateApiServer(facilities, Integer.getInteger("parkit.http.port", 8080), executor);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            for (Facility facility : facilities) {
+                facility.close();
+            }
+            router.shutdown();
+        }));
+        return server;
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Gate API listening on port {}", getPort());
+    }
+
+    /**
+     * Stops accepting requests, waits up to {@code delaySeconds} for the running ones, then
+     * stops the workers.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Hands the request to the executor. A rejected one still runs here, but only to answer 503,
+     * so the server thread never does the work of an overloaded pool.
+     */
+    private void dispatch(Runnable request) {
+        try {
+            executor.execute(request);
+        } catch (RejectedExecutionException e) {
+            rejected.set(true);
+            try {
+                request.run();
+            } finally {
+                rejected.set(false);
+            }
+        }
+    }
+
+    private static HttpHandler overloadable(HttpHandler handler) {
+        return exchange -> {
+            if (rejected.get()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, error("Server overloaded, retry later"));
+                return;
+            }
+            handler.handle(exchange);
+        };
+    }
+
+    private void handleEntry(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, error("POST expected"));
+            return;
+        }
+        Map<String, String> params = queryParams(exchange);
+        if (params == null) {
+            return;
+        }
+        Facility facility = facility(exchange, params);
+        if (facility == null) {
+            return;
+        }
+        String vehicleRegNumber = params.get("vehicle");
+        ParkingType parkingType;
+        try {
+            parkingType = ParkingType.valueOf(String.valueOf(params.get("type")));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error("type must be one of CAR, BIKE"));
+            return;
+        }
+        if (!checkVehicle(exchange, vehicleRegNumber)) {
+            return;
+        }
+        try {
+            Ticket ticket = facility.getParkingService().processIncomingVehicle(parkingType, vehicleRegNumber);
+            if (ticket == null) {
+                send(exchange, 409, error("No " + parkingType + " spot available"));
+                return;
+            }
+            send(exchange, 201, "{\"ticketId\":" + ticket.getId()
+                    + ",\"parkingNumber\":" + ticket.getParkingSpot().getId()
+                    + ",\"vehicle\":\"" + escape(vehicleRegNumber) + "\""
+                    + ",\"inTime\":" + ticket.getInTime().getTime()
+                    + ",\"visitCount\":" + ticket.getVisitCount() + "}");
+        } catch (Exception e) {
+            logger.error("Unable to process incoming vehicle", e);
+            send(exchange, 500, error("Unable to process incoming vehicle"));
+        }
+    }
+
+    private void handleExit(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, error("POST expected"));
+            return;
+        }
+        Map<String, String> params = queryParams(exchange);
+        if (params == null) {
+            return;
+        }
+        Facility facility = facility(exchange, params);
+        if (facility == null) {
+            return;
+        }
+        String vehicleRegNumber = params.get("vehicle");
+        if (!checkVehicle(exchange, vehicleRegNumber)) {
+            return;
+        }
+        try {
+            Ticket ticket = facility.getParkingService().processExitingVehicle(vehicleRegNumber);
+            if (ticket == null) {
+                send(exchange, 404, error("No open ticket for vehicle " + vehicleRegNumber));
+                return;
+            }
+            send(exchange, 200, "{\"ticketId\":" + ticket.getId()
+                    + ",\"parkingNumber\":" + ticket.getParkingSpot().getId()
+                    + ",\"vehicle\":\"" + escape(vehicleRegNumber) + "\""
+                    + ",\"outTime\":" + ticket.getOutTime().getTime()
+                    + ",\"price\":" + ticket.getPrice()
+                    + ",\"discountPercent\":" + ticket.getDiscountPercent() + "}");
+        } catch (Exception e) {
+            logger.error("Unable to process exiting vehicle", e);
+            send(exchange, 500, error("Unable to process exiting vehicle"));
+        }
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, error("GET expected"));
+            return;
+        }
+        Map<String, String> params = queryParams(exchange);
+        if (params == null) {
+            return;
+        }
+        Facility facility = facility(exchange, params);
+        if (facility == null) {
+            return;
+        }
+        OccupancyService occupancyService = facility.getOccupancyService();
+        StringBuilder body = new StringBuilder("{\"available\":{");
+        appendPerType(body, occupancyService.getAvailable());
+        body.append("},\"occupied\":{");
+        appendPerType(body, occupancyService.getOccupied());
+        send(exchange, 200, body.append("}}").toString());
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, error("GET expected"));
+            return;
+        }
+        send(exchange, 200, "text/plain; version=0.0.4", MetricsRegistry.getDefault().toText());
+    }
+
+    private void handleReport(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, error("GET expected"));
+            return;
+        }
+        Map<String, String> params = queryParams(exchange);
+        if (params == null) {
+            return;
+        }
+        Facility facility = facility(exchange, params);
+        if (facility == null) {
+            return;
+        }
+        ReportService reportService = facility.getReportService();
+        if (reportService == null) {
+            send(exchange, 404, error("Reports need the ticket table"));
+            return;
+        }
+        RevenueReport report;
+        if (params.get("from") == null) {
+            report = facility.getLiveReport();
+        } else {
+            LocalDate from;
+            LocalDate to;
+            try {
+                from = LocalDate.parse(params.get("from"));
+                to = params.get("to") == null ? from.plusDays(1) : LocalDate.parse(params.get("to"));
+            } catch (DateTimeParseException e) {
+                send(exchange, 400, error("from and to must be dates like 2024-01-31"));
+                return;
+            }
+            if (!to.isAfter(from)) {
+                send(exchange, 400, error("to must be after from"));
+                return;
+            }
+            if (to.toEpochDay() - from.toEpochDay() > RevenueReport.MAX_DAYS) {
+                send(exchange, 400, error("A report spans at most " + RevenueReport.MAX_DAYS + " days"));
+                return;
+            }
+            report = reportService.report(from, to);
+        }
+        if (report == null) {
+            send(exchange, 500, error("Unable to read the tickets"));
+            return;
+        }
+        StringBuilder body = new StringBuilder();
+        report.writeCsv(body);
+        send(exchange, 200, "text/csv", body.toString());
+    }
+
+    /**
+     * @return the facility named by the request, or the only one served; null once the error is sent
+     */
+    private Facility facility(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String id = params.get("facility");
+        if (id == null) {
+            if (facilities.size() == 1) {
+                return facilities.values().iterator().next();
+            }
+            send(exchange, 400, error("facility is required"));
+            return null;
+        }
+        Facility facility = facilities.get(id);
+        if (facility == null) {
+            send(exchange, 404, error("Unknown facility " + id));
+        }
+        return facility;
+    }
+
+    private static void appendPerType(StringBuilder body, Map<ParkingType, Integer> counts) {
+        for (Map.Entry<ParkingType, Integer> count : counts.entrySet()) {
+            if (count.getKey().ordinal() > 0) {
+                body.append(',');
+            }
+            body.append('"').append(count.getKey()).append("\":").append(count.getValue());
+        }
+    }
+
+    private static boolean checkVehicle(HttpExchange exchange, String vehicleRegNumber) throws IOException {
+        if (vehicleRegNumber == null || vehicleRegNumber.isEmpty()) {
+            send(exchange, 400, error("vehicle is required"));
+            return false;
+        }
+        if (vehicleRegNumber.length() > DBConstants.VEHICLE_REG_NUMBER_LENGTH) {
+            send(exchange, 400, error("vehicle must be at most " + DBConstants.VEHICLE_REG_NUMBER_LENGTH
+                    + " characters"));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the decoded query parameters, null once the error is sent for a malformed query
+     */
+    private static Map<String, String> queryParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        try {
+            for (String pair : query.split("&")) {
+                int separator = pair.indexOf('=');
+                if (separator > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                            URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Truncated or invalid %XX escape
+            send(exchange, 400, error("Malformed query string"));
+            return null;
+        }
+        return params;
+    }
+
+    private static String error(String message) {
+        return "{\"error\":\"" + escape(message) + "\"}";
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, "application/json", body);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
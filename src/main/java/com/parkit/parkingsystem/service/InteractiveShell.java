@@ -1,24 +1,62 @@
 package com.parkit.parkingsystem.service;
 
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotDAO;
+import com.parkit.parkingsystem.dao.InMemoryStore;
+import com.parkit.parkingsystem.dao.InMemoryTicketDAO;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.tariff.TariffRegistry;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+
 public class InteractiveShell {
 
     private static final Logger logger = LogManager.getLogger("InteractiveShell");
 
+    private static final long SHUTDOWN_MILLIS = 30000;
+
     public static void loadInterface(){
         logger.info("App initialized!!!");
         System.out.println("Welcome to Parking System!");
 
         boolean continueApp = true;
         InputReaderUtil inputReaderUtil = new InputReaderUtil();
-        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
-        TicketDAO ticketDAO = new TicketDAO();
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        // Un terminal sert une seule installation, celle de -Dparkit.facility
+        String facility = System.getProperty("parkit.facility");
+        InMemoryStore store = null;
+        if (InMemoryStore.isEnabled()) {
+            try {
+                store = InMemoryStore.open(facility);
+            } catch (IOException e) {
+                logger.error("Unable to open the in-memory store", e);
+                return;
+            }
+        }
+        DataBaseConfig dataBaseConfig = DataBaseConfig.create(facility);
+        ParkingSpotDAO parkingSpotDAO = store == null ? new ParkingSpotDAO() : new InMemoryParkingSpotDAO(store);
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO.loadAvailableSpots();
+        TicketDAO ticketDAO = store == null ? new TicketDAO() : new InMemoryTicketDAO(store);
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        ParkingService parkingService;
+        try {
+            parkingService = ParkingService.create(inputReaderUtil, parkingSpotDAO, ticketDAO, facility);
+        } catch (IOException e) {
+            logger.error("Unable to open the gate journal, writing tickets without it", e);
+            parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        }
+        TicketArchiver archiver = store == null ? TicketArchiver.create(ticketDAO) : null;
+        if (archiver != null) {
+            archiver.start(Long.getLong("parkit.archive.intervalMillis", 3600000L));
+        }
+        MetricsRegistry.getDefault().registerMBean();
+        // Rechargement à chaud du tarif quand -Dparkit.tariff.file est fourni
+        TariffRegistry.getDefault().watch(Long.getLong("parkit.tariff.watchIntervalMillis", 10000L));
 
         while(continueApp){
             loadMenu();
@@ -34,6 +72,12 @@ public class InteractiveShell {
                 }
                 case 3: {
                     System.out.println("Exiting from the system!");
+                    if (archiver != null) {
+                        archiver.stop();
+                    }
+                    shutdown(parkingService);
+                    closeStore(store);
+                    dataBaseConfig.shutdown();
                     continueApp = false;
                     break;
                 }
@@ -42,6 +86,24 @@ public class InteractiveShell {
         }
     }
 
+    private static void shutdown(ParkingService parkingService){
+        try {
+            parkingService.shutdown(SHUTDOWN_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeStore(InMemoryStore store){
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                logger.error("Unable to snapshot the in-memory store", e);
+            }
+        }
+    }
+
     private static void loadMenu(){
         System.out.println("Please select an option. Simply enter the number to choose an action");
         System.out.println("1 New Vehicle Entering - Allocate Parking Space");
@@ -0,0 +1,184 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.GateJournal;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.GateEvent;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * {@link ParkingService} writing every gate event to the {@link GateJournal} before the DB.
+ * <p>
+ * The event is appended and synced, then the usual transaction runs. The event is acknowledged
+ * once the transaction committed, or when the gate was refused for good (parking full, no open
+ * ticket). When the write fails, e.g. with the DB down, the gate gets the error but the event
+ * stays in the journal: it is retried, in journal order, before the next gate event and on the
+ * next start by {@link #recover()}. An entry whose vehicle already has an open ticket was
+ * committed before and is skipped; the replay itself skips an exit whose ticket is closed.
+ * <p>
+ * Enabled with {@code -Dparkit.journal.dir=<directory>}.
+ */
+public class JournaledParkingService extends ParkingService {
+
+    private static final Logger logger = LogManager.getLogger("JournaledParkingService");
+
+    private final TicketDAO ticketDAO;
+    private final GateJournal journal;
+    // Events journaled but not written to the DB, by sequence
+    private final ConcurrentSkipListMap<Long, GateEvent> failed = new ConcurrentSkipListMap<>();
+
+    public JournaledParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO,
+                                   GateJournal journal) {
+        super(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        this.ticketDAO = ticketDAO;
+        this.journal = journal;
+    }
+
+    public static boolean isEnabled() {
+        return GateJournal.isEnabled();
+    }
+
+    /**
+     * Opens the journal of the facility named by the {@code parkit.journal.*} system properties
+     * and replays what a previous run left in it.
+     */
+    public static JournaledParkingService open(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO,
+                                               TicketDAO ticketDAO, String facility) throws IOException {
+        JournaledParkingService service = new JournaledParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO,
+                GateJournal.open(facility));
+        service.recover();
+        return service;
+    }
+
+    /**
+     * Replays the unacknowledged events of the journal into the DB, see {@link #retryFailed()}.
+     * Only call it while no gate event is in flight, e.g. on start.
+     *
+     * @return the number of events applied
+     */
+    public int recover() {
+        for (GateJournal.Entry entry : journal.getUnacknowledged()) {
+            failed.put(entry.getSequence(), entry.getEvent());
+        }
+        if (!failed.isEmpty()) {
+            logger.warn("Replaying {} gate events interrupted before reaching the DB", failed.size());
+        }
+        return retryFailed();
+    }
+
+    /**
+     * Replays the events whose DB write failed, chunk by chunk in journal order. Stops at the
+     * first chunk that cannot be written, so an exit is never applied before its entry: that
+     * chunk and the ones after it stay in the journal for the next try.
+     *
+     * @return the number of events applied
+     */
+    public int retryFailed() {
+        if (failed.isEmpty()) {
+            return 0;
+        }
+        synchronized (failed) {
+            int applied = 0;
+            while (!failed.isEmpty()) {
+                List<Long> sequences = new ArrayList<>(REPLAY_CHUNK_SIZE);
+                List<GateEvent> events = new ArrayList<>(REPLAY_CHUNK_SIZE);
+                for (Map.Entry<Long, GateEvent> entry : failed.entrySet()) {
+                    if (sequences.size() == REPLAY_CHUNK_SIZE) {
+                        break;
+                    }
+                    sequences.add(entry.getKey());
+                    GateEvent event = entry.getValue();
+                    if (event.getType() == GateEvent.Type.ENTRY
+                            && ticketDAO.getOpenTicketWithVisitCount(event.getVehicleRegNumber()) != null) {
+                        continue;
+                    }
+                    events.add(event);
+                }
+                int chunkApplied = events.isEmpty() ? 0 : replayChunk(events);
+                if (chunkApplied < 0) {
+                    logger.error("{} gate events left in the journal until the next try", failed.size());
+                    break;
+                }
+                applied += chunkApplied;
+                for (Long sequence : sequences) {
+                    acknowledge(sequence);
+                    failed.remove(sequence);
+                }
+            }
+            return applied;
+        }
+    }
+
+    /**
+     * @return the number of events journaled whose DB write is still to be retried
+     */
+    public int getFailedCount() {
+        return failed.size();
+    }
+
+    @Override
+    protected Ticket recordEntry(ParkingType parkingType, String vehicleRegNumber) throws Exception {
+        retryFailed();
+        GateEvent event = GateEvent.entry(vehicleRegNumber, parkingType, System.currentTimeMillis());
+        return write(event, () -> super.recordEntry(parkingType, vehicleRegNumber));
+    }
+
+    @Override
+    protected Ticket recordExit(String vehicleRegNumber) throws Exception {
+        retryFailed();
+        GateEvent event = GateEvent.exit(vehicleRegNumber, System.currentTimeMillis());
+        return write(event, () -> super.recordExit(vehicleRegNumber));
+    }
+
+    /**
+     * Journals the event, then writes it to the DB: acknowledged once committed or refused,
+     * kept for a retry when the write fails.
+     */
+    private Ticket write(GateEvent event, Callable<Ticket> transaction) throws Exception {
+        long sequence = journal(event);
+        Ticket ticket;
+        try {
+            ticket = transaction.call();
+        } catch (Exception e) {
+            failed.put(sequence, event);
+            throw e;
+        }
+        acknowledge(sequence);
+        return ticket;
+    }
+
+    @Override
+    public void shutdown(long timeoutMillis) {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.error("Error closing gate journal", e);
+        }
+    }
+
+    private long journal(GateEvent event) throws IOException {
+        long sequence = journal.append(event);
+        journal.sync(sequence);
+        return sequence;
+    }
+
+    private void acknowledge(long sequence) {
+        try {
+            journal.acknowledge(sequence);
+        } catch (IOException e) {
+            // Replayed on the next start, where an event already in the DB is skipped
+            logger.error("Unable to acknowledge gate event {}", sequence, e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Free and occupied spots per vehicle type, for the display boards.
+ * <p>
+ * Reads come from the counters of the in-memory spot index, which every reservation and
+ * {@code updateParking} moves, so polling never reaches the DB. {@link #reconcile()} runs
+ * from time to time: it first puts back in the index the spots freed by the other nodes
+ * sharing the parking table, then compares the counters with the table and reloads the index
+ * when they disagree twice in a row, e.g. after spots were changed by hand. A single mismatch
+ * is tolerated since transactions in flight are seen by the index first.
+ */
+public class OccupancyService {
+
+    private static final Logger logger = LogManager.getLogger("OccupancyService");
+
+    private final ParkingSpotDAO parkingSpotDAO;
+    private ScheduledExecutorService reconciler;
+    private boolean drifted;
+
+    public OccupancyService(ParkingSpotDAO parkingSpotDAO) {
+        this(parkingSpotDAO, null);
+    }
+
+    /**
+     * @param facility names the gauges of a facility's counters, null for a single site
+     */
+    public OccupancyService(ParkingSpotDAO parkingSpotDAO, String facility) {
+        this.parkingSpotDAO = parkingSpotDAO;
+        String prefix = facility == null ? "occupancy.available." : "occupancy." + facility + ".available.";
+        for (ParkingType parkingType : ParkingType.values()) {
+            MetricsRegistry.getDefault().gauge(prefix + parkingType, () -> getAvailable(parkingType));
+        }
+    }
+
+    public int getAvailable(ParkingType parkingType) {
+        return parkingSpotDAO.parkingSpotIndex.countAvailable(parkingType);
+    }
+
+    public int getCapacity(ParkingType parkingType) {
+        return parkingSpotDAO.parkingSpotIndex.capacity(parkingType);
+    }
+
+    public int getOccupied(ParkingType parkingType) {
+        return getCapacity(parkingType) - getAvailable(parkingType);
+    }
+
+    /**
+     * @return the free spots of every type
+     */
+    public Map<ParkingType, Integer> getAvailable() {
+        Map<ParkingType, Integer> available = new EnumMap<>(ParkingType.class);
+        for (ParkingType parkingType : ParkingType.values()) {
+            available.put(parkingType, getAvailable(parkingType));
+        }
+        return available;
+    }
+
+    /**
+     * @return the occupied spots of every type
+     */
+    public Map<ParkingType, Integer> getOccupied() {
+        Map<ParkingType, Integer> occupied = new EnumMap<>(ParkingType.class);
+        for (ParkingType parkingType : ParkingType.values()) {
+            occupied.put(parkingType, getOccupied(parkingType));
+        }
+        return occupied;
+    }
+
+    /**
+     * Refreshes the spots freed elsewhere, then checks the counters against the parking table,
+     * reloading the index on a persistent mismatch.
+     *
+     * @return true if the counters matched the table
+     */
+    public synchronized boolean reconcile() {
+        int freed = parkingSpotDAO.refreshFreedSpots();
+        if (freed > 0) {
+            logger.info("{} spots freed by other nodes are available again", freed);
+        }
+        Map<ParkingType, Integer> counted = parkingSpotDAO.countAvailableSpots();
+        if (counted == null) {
+            return false;
+        }
+        if (counted.equals(getAvailable())) {
+            drifted = false;
+            return true;
+        }
+        if (!drifted) {
+            drifted = true;
+            return false;
+        }
+        logger.warn("Free spots {} differ from the parking table {}, reloading", getAvailable(), counted);
+        if (parkingSpotDAO.loadAvailableSpots()) {
+            drifted = false;
+        }
+        return false;
+    }
+
+    /**
+     * Reconciles every {@code intervalMillis} on a daemon thread.
+     */
+    public synchronized void start(long intervalMillis) {
+        if (reconciler != null || intervalMillis <= 0) {
+            return;
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "parkit-occupancy-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciler.scheduleWithFixedDelay(this::reconcile, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+            reconciler = null;
+        }
+    }
+}
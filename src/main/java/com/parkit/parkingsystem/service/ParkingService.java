@@ -1,15 +1,30 @@
 package com.parkit.parkingsystem.service;
 
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.BatchResult;
+import com.parkit.parkingsystem.dao.ClosedTicketHandler;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.Timer;
+import com.parkit.parkingsystem.model.GateEvent;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ParkingService {
 
@@ -17,9 +32,18 @@ public class ParkingService {
 
     private static FareCalculatorService fareCalculatorService = new FareCalculatorService();
 
+    private static final Timer entryTimer = MetricsRegistry.getDefault().timer("parkingService.entry");
+    private static final Timer exitTimer = MetricsRegistry.getDefault().timer("parkingService.exit");
+    private static final Timer replayTimer = MetricsRegistry.getDefault().timer("parkingService.replayChunk");
+    private static final LongAdder parkingFullCount = MetricsRegistry.getDefault().counter("parkingService.entry.full");
+    private static final LongAdder noOpenTicketCount = MetricsRegistry.getDefault().counter("parkingService.exit.noOpenTicket");
+
+    static final int REPLAY_CHUNK_SIZE = 500;
+
     private InputReaderUtil inputReaderUtil;
     private ParkingSpotDAO parkingSpotDAO;
     private  TicketDAO ticketDAO;
+    private volatile ClosedTicketHandler exitListener;
 
     public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
         this.inputReaderUtil = inputReaderUtil;
@@ -27,40 +51,134 @@ public class ParkingService {
         this.ticketDAO = ticketDAO;
     }
 
+    /**
+     * Parking service without a console, for front ends that pass the vehicle in the request.
+     */
+    public ParkingService(ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
+        this(null, parkingSpotDAO, ticketDAO);
+    }
+
+    /**
+     * Builds the parking service selected by the system properties: write-behind when
+     * {@code parkit.writeBehind} is set, journaled when {@code parkit.journal.dir} is set,
+     * otherwise writing straight to the DB.
+     *
+     * @param facility facility of the DAOs, whose journal is its own; null for a single site
+     */
+    public static ParkingService create(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO,
+                                        TicketDAO ticketDAO, String facility) throws IOException {
+        if (WriteBehindParkingService.isEnabled()) {
+            return WriteBehindParkingService.open(inputReaderUtil, parkingSpotDAO, ticketDAO, facility);
+        }
+        if (JournaledParkingService.isEnabled()) {
+            return JournaledParkingService.open(inputReaderUtil, parkingSpotDAO, ticketDAO, facility);
+        }
+        return new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+    }
+
+    /**
+     * Releases what the service holds once the gates are closed, waiting at most the timeout
+     * for pending writes. Nothing to do when writing straight to the DB.
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+    }
+
+    /**
+     * Sets the handler told of every ticket closed by an exit or a replayed exit, replacing the
+     * previous one; null removes it.
+     */
+    public void setExitListener(ClosedTicketHandler exitListener) {
+        this.exitListener = exitListener;
+    }
+
     public void processIncomingVehicle() {
         try {
-            ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
-            if (parkingSpot != null && parkingSpot.getId() > 0) {
-                String vehicleRegNumber = getVehichleRegNumber();
-                parkingSpot.setAvailable(false);
-                parkingSpotDAO.updateParking(parkingSpot);
-
-                Date inTime = new Date();
-                Ticket ticket = new Ticket();
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(0);
-                ticket.setInTime(inTime);
-                ticket.setOutTime(null);
-                ticketDAO.saveTicket(ticket);
-
-
-                int ticketCount = ticketDAO.getNbTicket(vehicleRegNumber);
-                if (ticketCount > 1) {
-                    System.out.println("Welcome back! As a recurring customer of our parking lot, you'll benefit from a discount.");
-                } else {
-                    System.out.println("Welcome to our parking lot!");
-                }
+            ParkingType parkingType = getVehichleType();
+            String vehicleRegNumber = getVehichleRegNumber();
+            Ticket ticket = processIncomingVehicle(parkingType, vehicleRegNumber);
+            if (ticket == null) {
+                throw new Exception("Error reserving a parking spot. Parking slots might be full");
+            }
 
-                System.out.println("Generated Ticket and saved in DB.");
-                System.out.println("Please park your vehicle in spot number: " + parkingSpot.getId());
-                System.out.println("Recorded in-time for vehicle number: " + vehicleRegNumber + " is: " + inTime);
+            if (ticket.getVisitCount() > 1) {
+                System.out.println("Welcome back! As a recurring customer of our parking lot, you'll benefit from a discount.");
+            } else {
+                System.out.println("Welcome to our parking lot!");
             }
+
+            System.out.println("Generated Ticket and saved in DB.");
+            System.out.println("Please park your vehicle in spot number: " + ticket.getParkingSpot().getId());
+            System.out.println("Recorded in-time for vehicle number: " + vehicleRegNumber + " is: " + ticket.getInTime());
+        } catch (IllegalArgumentException ie) {
+            logger.error("Error parsing user input for type of vehicle", ie);
         } catch (Exception e) {
             logger.error("Unable to process incoming vehicle", e);
         }
     }
 
+    /**
+     * Records an entering vehicle, see {@link #recordEntry(ParkingType, String)}, and measures it.
+     *
+     * @return the saved ticket with the vehicle's visit count, or null when no spot of that type is free
+     * @throws Exception if the entry could not be recorded, in which case nothing stays reserved
+     */
+    public Ticket processIncomingVehicle(ParkingType parkingType, String vehicleRegNumber) throws Exception {
+        long start = entryTimer.start();
+        try {
+            Ticket ticket = recordEntry(parkingType, vehicleRegNumber);
+            if (ticket == null) {
+                parkingFullCount.increment();
+            }
+            return ticket;
+        } catch (Exception e) {
+            entryTimer.error();
+            throw e;
+        } finally {
+            entryTimer.stop(start);
+        }
+    }
+
+    /**
+     * Records an entering vehicle. The spot reservation, the ticket and the visit count are
+     * handled on one connection in one transaction, so a failure can no longer leave a spot
+     * occupied without its ticket.
+     */
+    protected Ticket recordEntry(ParkingType parkingType, String vehicleRegNumber) throws Exception {
+        Connection con = null;
+        ParkingSpot parkingSpot = null;
+        try {
+            con = ticketDAO.beginTransaction();
+            parkingSpot = parkingSpotDAO.reserveNextAvailable(con, parkingType);
+            if (parkingSpot == null) {
+                ticketDAO.rollbackTransaction(con);
+                return null;
+            }
+
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(parkingSpot);
+            ticket.setFacility(parkingSpot.getFacility());
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(0);
+            ticket.setInTime(new Date());
+            ticket.setOutTime(null);
+            if (!ticketDAO.saveTicket(con, ticket)) {
+                throw new Exception("Error saving ticket for vehicle " + vehicleRegNumber);
+            }
+
+            // saveTicket read back the counter of this facility with its upsert
+            ticket.setVisitCount(ticket.getVisitCount() + ticketDAO.getVisitsElsewhere(vehicleRegNumber));
+            ticketDAO.commitTransaction(con);
+            ticketDAO.shareVisits(Collections.singletonList(ticket));
+            return ticket;
+        } catch (Exception e) {
+            ticketDAO.rollbackTransaction(con);
+            if (parkingSpot != null) {
+                parkingSpotDAO.cancelReservation(parkingSpot);
+            }
+            throw e;
+        }
+    }
+
     private String getVehichleRegNumber() throws Exception {
         System.out.println("Please type the vehicle registration number and press enter key");
         return inputReaderUtil.readVehicleRegistrationNumber();
@@ -107,35 +225,263 @@ public class ParkingService {
     public void processExitingVehicle() {
         try {
             String vehicleRegNumber = getVehichleRegNumber();
-            Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
-            Date outTime = new Date();
-            ticket.setOutTime(outTime);
+            Ticket ticket = processExitingVehicle(vehicleRegNumber);
+            if (ticket == null) {
+                throw new Exception("No open ticket found for vehicle number: " + vehicleRegNumber);
+            }
 
+            if (ticket.getDiscountPercent() > 0) {
+                System.out.println("As a recurring customer, you benefited from a " + ticket.getDiscountPercent() + "% discount!");
+            }
 
-            int ticketCount = ticketDAO.getNbTicket(vehicleRegNumber);
-            boolean isReturningCustomer = ticketCount > 1;
 
+            System.out.println("Please pay the parking fare: " + ticket.getPrice());
+            System.out.println("Recorded out-time for vehicle number: " + ticket.getVehicleRegNumber() + " is: " + ticket.getOutTime());
+        } catch (Exception e) {
+            logger.error("Unable to process exiting vehicle", e);
+            System.out.println("Unable to update ticket information. Error occurred.");
+        }
+    }
 
-            fareCalculatorService.calculateFare(ticket, isReturningCustomer);
+    /**
+     * Records an exiting vehicle, see {@link #recordExit(String)}, and measures it.
+     *
+     * @return the closed ticket with its price, or null when the vehicle has no open ticket
+     * @throws Exception if the exit could not be recorded, in which case the ticket stays open
+     */
+    public Ticket processExitingVehicle(String vehicleRegNumber) throws Exception {
+        long start = exitTimer.start();
+        try {
+            Ticket ticket = recordExit(vehicleRegNumber);
+            if (ticket == null) {
+                noOpenTicketCount.increment();
+            } else {
+                notifyExit(ticket);
+            }
+            return ticket;
+        } catch (Exception e) {
+            exitTimer.error();
+            throw e;
+        } finally {
+            exitTimer.stop(start);
+        }
+    }
 
-            if (ticketDAO.updateTicket(ticket)) {
-                ParkingSpot parkingSpot = ticket.getParkingSpot();
-                parkingSpot.setAvailable(true);
-                parkingSpotDAO.updateParking(parkingSpot);
+    /**
+     * Records an exiting vehicle: the ticket lookup brings the visit count along, and closing
+     * the ticket and freeing the spot commit together.
+     */
+    protected Ticket recordExit(String vehicleRegNumber) throws Exception {
+        Connection con = null;
+        try {
+            con = ticketDAO.beginTransaction();
+            Ticket ticket = ticketDAO.getOpenTicketWithVisitCount(con, vehicleRegNumber);
+            if (ticket == null) {
+                ticketDAO.rollbackTransaction(con);
+                return null;
+            }
+            ticket.setOutTime(new Date());
+            ticket.setDiscountPercent(fareCalculatorService.calculateFare(ticket, ticket.getVisitCount()));
+
+            if (!ticketDAO.updateTicket(con, ticket)) {
+                throw new Exception("Error updating ticket of vehicle " + vehicleRegNumber);
+            }
+            ParkingSpot parkingSpot = ticket.getParkingSpot();
+            parkingSpot.setAvailable(true);
+            if (!parkingSpotDAO.updateParking(con, parkingSpot)) {
+                throw new Exception("Error freeing parking spot " + parkingSpot.getId());
+            }
+            ticketDAO.commitTransaction(con);
+            parkingSpotDAO.releaseCommitted(Collections.singletonList(parkingSpot));
+            return ticket;
+        } catch (Exception e) {
+            ticketDAO.rollbackTransaction(con);
+            throw e;
+        }
+    }
 
+    /**
+     * Applies gate events buffered by a lane controller while its link was down, in order.
+     * Events are applied in chunks of {@value #REPLAY_CHUNK_SIZE}, each chunk in one transaction
+     * with batched spot reservations, ticket inserts, ticket updates and spot updates. An entry
+     * the batched reservation left without a spot takes the spot of an exit replayed before it,
+     * as it did at the gate. Events refused for good (still no free spot, no open ticket) are
+     * logged and dropped. A chunk that fails
+     * is rolled back as a whole and the replay stops there, so an exit is never applied before
+     * its entry.
+     *
+     * @return the events still to replay, from the failed chunk on; empty once all are applied
+     */
+    public List<GateEvent> replayGateEvents(List<GateEvent> events) {
+        for (int from = 0; from < events.size(); from += REPLAY_CHUNK_SIZE) {
+            if (replayChunk(events.subList(from, Math.min(events.size(), from + REPLAY_CHUNK_SIZE))) < 0) {
+                return new ArrayList<>(events.subList(from, events.size()));
+            }
+        }
+        return new ArrayList<>();
+    }
 
-                if (isReturningCustomer) {
-                    System.out.println("As a recurring customer, you benefited from a 5% discount!");
+    /**
+     * @return the number of events applied, or -1 when the chunk was rolled back
+     */
+    int replayChunk(List<GateEvent> events) {
+        long start = replayTimer.start();
+        Connection con = null;
+        List<ParkingSpot> reservedSpots = new ArrayList<>();
+        List<ParkingSpot> freedSpots = new ArrayList<>();
+        List<Ticket> closedTickets = new ArrayList<>();
+        List<Ticket> openedTickets = new ArrayList<>();
+        try {
+            con = ticketDAO.beginTransaction();
+            List<Ticket> entries = new ArrayList<>();
+            List<Ticket> exits = new ArrayList<>();
+            Set<String> pendingEntries = new HashSet<>();
+            Set<String> pendingExits = new HashSet<>();
+            // Spots freed by the exits of the chunk only go back to the index after the commit
+            List<ParkingType> entryTypes = new ArrayList<>();
+            for (GateEvent event : events) {
+                if (event.getType() == GateEvent.Type.ENTRY) {
+                    entryTypes.add(event.getParkingType());
+                }
+            }
+            List<ParkingSpot> entrySpots = parkingSpotDAO.reserveNextAvailable(con, entryTypes);
+            for (ParkingSpot parkingSpot : entrySpots) {
+                if (parkingSpot != null) {
+                    reservedSpots.add(parkingSpot);
+                }
+            }
+            Iterator<ParkingSpot> nextSpot = entrySpots.iterator();
+            int applied = 0;
+            for (GateEvent event : events) {
+                String vehicleRegNumber = event.getVehicleRegNumber();
+                if (event.getType() == GateEvent.Type.ENTRY) {
+                    ParkingSpot parkingSpot = nextSpot.next();
+                    if (parkingSpot == null) {
+                        // Lot full when the chunk was reserved: the exits replayed so far freed spots since
+                        flushReplayedExits(con, exits, pendingExits, freedSpots, closedTickets);
+                        parkingSpot = takeFreedSpot(con, freedSpots, event.getParkingType());
+                    }
+                    if (parkingSpot == null) {
+                        logger.error("No parking spot available to replay entry of vehicle {}", vehicleRegNumber);
+                        continue;
+                    }
+                    Ticket ticket = new Ticket();
+                    ticket.setParkingSpot(parkingSpot);
+                    ticket.setFacility(parkingSpot.getFacility());
+                    ticket.setVehicleRegNumber(vehicleRegNumber);
+                    ticket.setPrice(0);
+                    ticket.setInTime(new Date(event.getTime()));
+                    entries.add(ticket);
+                    openedTickets.add(ticket);
+                    pendingEntries.add(vehicleRegNumber);
+                } else {
+                    // The ticket of an entry in this chunk must be inserted before it can be found
+                    if (pendingEntries.remove(vehicleRegNumber)) {
+                        flushReplayedEntries(con, entries, pendingEntries);
+                    }
+                    if (pendingExits.remove(vehicleRegNumber)) {
+                        flushReplayedExits(con, exits, pendingExits, freedSpots, closedTickets);
+                    }
+                    Ticket ticket = ticketDAO.getOpenTicketWithVisitCount(con, vehicleRegNumber);
+                    if (ticket == null) {
+                        logger.error("No open ticket to replay exit of vehicle {}", vehicleRegNumber);
+                        continue;
+                    }
+                    try {
+                        ticket.setOutTime(new Date(event.getTime()));
+                        fareCalculatorService.calculateFare(ticket, ticket.getVisitCount());
+                    } catch (IllegalArgumentException ie) {
+                        logger.error("Invalid exit time replayed for vehicle {}", vehicleRegNumber, ie);
+                        continue;
+                    }
+                    exits.add(ticket);
+                    pendingExits.add(vehicleRegNumber);
                 }
+                applied++;
+            }
+            flushReplayedEntries(con, entries, pendingEntries);
+            flushReplayedExits(con, exits, pendingExits, freedSpots, closedTickets);
+            ticketDAO.commitTransaction(con);
+            ticketDAO.shareVisits(openedTickets);
+            parkingSpotDAO.releaseCommitted(freedSpots);
+            for (Ticket ticket : closedTickets) {
+                notifyExit(ticket);
+            }
+            return applied;
+        } catch (Exception e) {
+            replayTimer.error();
+            logger.error("Unable to replay {} gate events, chunk rolled back", events.size(), e);
+            if (con != null) {
+                ticketDAO.rollbackTransaction(con);
+            }
+            for (ParkingSpot parkingSpot : reservedSpots) {
+                parkingSpotDAO.cancelReservation(parkingSpot);
+            }
+            return -1;
+        } finally {
+            replayTimer.stop(start);
+        }
+    }
 
+    private void flushReplayedEntries(Connection con, List<Ticket> entries, Set<String> pendingEntries) throws SQLException {
+        BatchResult result = ticketDAO.saveTickets(con, entries);
+        if (!result.isAllSucceeded()) {
+            throw new SQLException("Replayed tickets not saved, rows " + result.getFailedRows(), result.getError());
+        }
+        entries.clear();
+        pendingEntries.clear();
+    }
 
-                System.out.println("Please pay the parking fare: " + ticket.getPrice());
-                System.out.println("Recorded out-time for vehicle number: " + ticket.getVehicleRegNumber() + " is: " + outTime);
-            } else {
-                System.out.println("Unable to update ticket information. Error occurred.");
+    private void flushReplayedExits(Connection con, List<Ticket> exits, Set<String> pendingExits,
+                                    List<ParkingSpot> freedSpots, List<Ticket> closedTickets) throws SQLException {
+        BatchResult result = ticketDAO.updateTickets(con, exits);
+        if (!result.isAllSucceeded()) {
+            throw new SQLException("Replayed tickets not updated, rows " + result.getFailedRows(), result.getError());
+        }
+        List<ParkingSpot> spots = new ArrayList<>();
+        for (Ticket ticket : exits) {
+            ParkingSpot parkingSpot = ticket.getParkingSpot();
+            parkingSpot.setAvailable(true);
+            spots.add(parkingSpot);
+        }
+        result = parkingSpotDAO.updateParkings(con, spots);
+        if (!result.isAllSucceeded()) {
+            throw new SQLException("Replayed parking spots not freed, rows " + result.getFailedRows(), result.getError());
+        }
+        freedSpots.addAll(spots);
+        closedTickets.addAll(exits);
+        exits.clear();
+        pendingExits.clear();
+    }
+
+    /**
+     * Takes back for an entry a spot of that type freed earlier in the chunk, so it stays
+     * occupied in the DB and is not put back in the index after the commit.
+     *
+     * @return the spot, or null when no exit of the chunk freed one
+     */
+    private ParkingSpot takeFreedSpot(Connection con, List<ParkingSpot> freedSpots, ParkingType parkingType) throws SQLException {
+        for (Iterator<ParkingSpot> it = freedSpots.iterator(); it.hasNext(); ) {
+            ParkingSpot freedSpot = it.next();
+            if (freedSpot.getParkingType() == parkingType) {
+                ParkingSpot parkingSpot = new ParkingSpot(freedSpot.getId(), parkingType, false);
+                parkingSpot.setFacility(freedSpot.getFacility());
+                BatchResult result = parkingSpotDAO.updateParkings(con, Collections.singletonList(parkingSpot));
+                if (!result.isAllSucceeded()) {
+                    throw new SQLException("Replayed parking spot not taken back, rows " + result.getFailedRows(), result.getError());
+                }
+                it.remove();
+                return parkingSpot;
             }
-        } catch (Exception e) {
-            logger.error("Unable to process exiting vehicle", e);
+        }
+        return null;
+    }
+
+    private void notifyExit(Ticket ticket) {
+        ClosedTicketHandler listener = exitListener;
+        if (listener != null) {
+            listener.accept(ticket.getParkingSpot().getParkingType(), ticket.getInTime().getTime(),
+                    ticket.getOutTime().getTime(), ticket.getPrice());
         }
     }
 }
@@ -0,0 +1,73 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.dao.ReportDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Builds {@link RevenueReport}s from the ticket table, and keeps them up to date from the gates.
+ */
+public class ReportService {
+
+    private static final Logger logger = LogManager.getLogger("ReportService");
+
+    private final ReportDAO reportDAO;
+    private final ZoneId zone;
+
+    public ReportService(ReportDAO reportDAO) {
+        this(reportDAO, ZoneId.systemDefault());
+    }
+
+    public ReportService(ReportDAO reportDAO, ZoneId zone) {
+        this.reportDAO = reportDAO;
+        this.zone = zone;
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * Aggregates the tickets closed from the start of {@code from} to the start of {@code to}
+     * in one pass over the ticket table.
+     *
+     * @return the report, or null if the table could not be read
+     */
+    public RevenueReport report(LocalDate from, LocalDate to) {
+        RevenueReport report = new RevenueReport(from, to, zone);
+        long start = System.currentTimeMillis();
+        long rows = reportDAO.streamClosedTickets(report.getStartMillis(), report.getEndMillis(), report);
+        if (rows < 0) {
+            return null;
+        }
+        logger.info("Report {} to {} aggregated {} tickets in {} ms", from, to, rows, System.currentTimeMillis() - start);
+        return report;
+    }
+
+    /**
+     * Same as {@link #report(LocalDate, LocalDate)}, then kept up to date by the exits of the
+     * parking service. The tickets closed before the call are read from the table and the later
+     * ones are taken from the gates, so none is counted twice. An exit that is not yet in the
+     * table at that moment, e.g. still queued by write-behind, is missed.
+     *
+     * @return the live report, or null if the table could not be read
+     */
+    public RevenueReport follow(ParkingService parkingService, LocalDate from, LocalDate to) {
+        RevenueReport report = new RevenueReport(from, to, zone);
+        long cutoff = System.currentTimeMillis();
+        parkingService.setExitListener((parkingType, inTime, outTime, price) -> {
+            if (outTime >= cutoff) {
+                report.accept(parkingType, inTime, outTime, price);
+            }
+        });
+        long end = Math.min(report.getEndMillis(), cutoff);
+        if (end > report.getStartMillis() && reportDAO.streamClosedTickets(report.getStartMillis(), end, report) < 0) {
+            parkingService.setExitListener(null);
+            return null;
+        }
+        return report;
+    }
+}
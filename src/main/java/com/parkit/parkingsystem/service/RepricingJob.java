@@ -0,0 +1,394 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.RepricingConfig;
+import com.parkit.parkingsystem.dao.BatchResult;
+import com.parkit.parkingsystem.dao.PriceBatch;
+import com.parkit.parkingsystem.dao.RepricingDAO;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.tariff.Tariff;
+import com.parkit.parkingsystem.tariff.TariffRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recomputes the price of every closed ticket with a tariff, e.g. after a tariff dispute.
+ * <p>
+ * The ticket table is split in partitions of consecutive IDs, re-priced by a pool of workers.
+ * Each partition is read in one query into a {@link PriceBatch}, priced in a loop over its
+ * arrays with {@link FareCalculatorService#calculateFareCents(Tariff, long, long,
+ * com.parkit.parkingsystem.constants.ParkingType, int)}, and only the tickets whose price
+ * changes are written back with one JDBC batch, all in one transaction. The discount of a ticket
+ * uses the vehicle's visits up to its entry, as the exit gate saw them.
+ * <p>
+ * Written partitions are appended to a checkpoint file, so a run that is stopped or fails
+ * resumes with the partitions still to do. The file starts with the tariff, the first ID and the
+ * partition size of its run: a run with another one starts over, and a completed run deletes it.
+ * The last ID is not part of it, tickets keep coming in on a live facility: the next run
+ * re-prices the tickets past the last ID of the failed one, and only those.
+ * A dry run only reports what would change, in the log and in the diff file.
+ */
+public class RepricingJob {
+
+    private static final Logger logger = LogManager.getLogger("RepricingJob");
+
+    private static final LongAdder pricedCount = MetricsRegistry.getDefault().counter("repricing.tickets.priced");
+    private static final LongAdder changedCount = MetricsRegistry.getDefault().counter("repricing.tickets.changed");
+
+    private final RepricingDAO repricingDAO;
+    private final RepricingConfig config;
+    private final Tariff tariff;
+
+    private final AtomicInteger nextPartition = new AtomicInteger();
+    private final AtomicInteger partitionsDone = new AtomicInteger();
+    private final AtomicInteger partitionsFailed = new AtomicInteger();
+    private final AtomicLong ticketsPriced = new AtomicLong();
+    private final AtomicLong ticketsChanged = new AtomicLong();
+    private final AtomicLong ticketsInvalid = new AtomicLong();
+    private final AtomicLong oldTotalCents = new AtomicLong();
+    private final AtomicLong newTotalCents = new AtomicLong();
+    private final AtomicLong lastProgress = new AtomicLong();
+    private int partitionCount;
+    private int lastId;
+    // First ID of each checkpointed partition, to the ID it was re-priced up to, exclusive
+    private Map<Integer, Integer> checkpointed = new HashMap<>();
+    private FileChannel checkpoint;
+    private Writer diff;
+
+    public RepricingJob(RepricingDAO repricingDAO, RepricingConfig config, Tariff tariff) {
+        this.repricingDAO = repricingDAO;
+        this.config = config;
+        this.tariff = tariff;
+    }
+
+    /**
+     * Re-prices the production database with the tariff in force, configured by the
+     * {@code parkit.db.*}, {@code parkit.tariff.file} and {@code parkit.repricing.*} system
+     * properties. A dry run writes its diff to {@code repricing-diff.csv} unless
+     * {@code parkit.repricing.diff} names another file. With {@code -Dparkit.facility}, the
+     * database of that facility, and the default checkpoint file is prefixed with its id.
+     *
+     * @return true if every partition was re-priced
+     */
+    public static boolean launch(boolean dryRun) throws IOException, InterruptedException {
+        DataBaseConfig dataBaseConfig = DataBaseConfig.create();
+        RepricingDAO repricingDAO = new RepricingDAO();
+        repricingDAO.dataBaseConfig = dataBaseConfig;
+        RepricingConfig config = new RepricingConfig();
+        if (dataBaseConfig.getFacility() != null && System.getProperty("parkit.repricing.checkpoint") == null) {
+            // Each facility resumes its own run
+            config.setCheckpointFile(dataBaseConfig.getFacility() + "-" + config.getCheckpointFile());
+        }
+        config.setDryRun(config.isDryRun() || dryRun);
+        if (config.isDryRun() && config.getDiffFile() == null) {
+            config.setDiffFile("repricing-diff.csv");
+        }
+        try {
+            return new RepricingJob(repricingDAO, config, TariffRegistry.getDefault().current()).run();
+        } finally {
+            dataBaseConfig.shutdown();
+        }
+    }
+
+    /**
+     * @return true if every partition was re-priced; the failed ones are left for the next run
+     */
+    public boolean run() throws IOException, InterruptedException {
+        int[] idRange = repricingDAO.getTicketIdRange();
+        if (idRange == null) {
+            return false;
+        }
+        int partitionSize = config.getPartitionSize();
+        int firstId = idRange[0];
+        lastId = idRange[1];
+        partitionCount = (int) ((idRange[1] - (long) firstId + partitionSize) / partitionSize);
+        logger.info("Re-pricing tickets {} to {} with tariff {} in {} partitions{}", firstId, idRange[1], tariff,
+                partitionCount, config.isDryRun() ? " (dry run)" : "");
+        openCheckpoint(firstId);
+        openDiff();
+        long start = System.currentTimeMillis();
+        ExecutorService workers = Executors.newFixedThreadPool(config.getThreads(), r -> {
+            Thread thread = new Thread(r, "parkit-repricing");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < config.getThreads(); i++) {
+                results.add(workers.submit(() -> work(firstId)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Re-pricing worker failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+            closeQuietly();
+        }
+        if (partitionsFailed.get() == 0 && checkpoint != null) {
+            Files.deleteIfExists(Paths.get(config.getCheckpointFile()));
+        }
+        logProgress();
+        logger.info("Re-pricing {} in {} ms: {} tickets priced, {} changed, {} with an invalid out-time, "
+                        + "total {} -> {}", partitionsFailed.get() == 0 ? "done" : "incomplete",
+                System.currentTimeMillis() - start, ticketsPriced.get(), ticketsChanged.get(), ticketsInvalid.get(),
+                euros(oldTotalCents.get()), euros(newTotalCents.get()));
+        return partitionsFailed.get() == 0;
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    public int getPartitionsDone() {
+        return partitionsDone.get();
+    }
+
+    public int getPartitionsFailed() {
+        return partitionsFailed.get();
+    }
+
+    public long getTicketsPriced() {
+        return ticketsPriced.get();
+    }
+
+    public long getTicketsChanged() {
+        return ticketsChanged.get();
+    }
+
+    /**
+     * @return the sum of the prices of the changed tickets before re-pricing, in cents
+     */
+    public long getOldTotalCents() {
+        return oldTotalCents.get();
+    }
+
+    /**
+     * @return the sum of the prices of the changed tickets after re-pricing, in cents
+     */
+    public long getNewTotalCents() {
+        return newTotalCents.get();
+    }
+
+    private void work(int firstId) {
+        int partitionSize = config.getPartitionSize();
+        PriceBatch batch = new PriceBatch(partitionSize);
+        int[] changedIds = new int[partitionSize];
+        double[] oldPrices = new double[partitionSize];
+        double[] newPrices = new double[partitionSize];
+        int partition;
+        while ((partition = nextPartition.getAndIncrement()) < partitionCount && !Thread.currentThread().isInterrupted()) {
+            int fromId = firstId + partition * partitionSize;
+            int doneId = checkpointed.getOrDefault(fromId, fromId);
+            if (doneId < toId(fromId)) {
+                if (!repricePartition(fromId, doneId, toId(fromId), batch, changedIds, oldPrices, newPrices)) {
+                    partitionsFailed.incrementAndGet();
+                    continue;
+                }
+            }
+            partitionsDone.incrementAndGet();
+            long now = System.currentTimeMillis();
+            long last = lastProgress.get();
+            if (now - last >= config.getProgressIntervalMillis() && lastProgress.compareAndSet(last, now)) {
+                logProgress();
+            }
+        }
+    }
+
+    /**
+     * Re-prices the tickets from fromId to toId, exclusive, of the partition starting at
+     * partitionId: the whole partition, or its tail past the last ID of a previous run.
+     */
+    private boolean repricePartition(int partitionId, int fromId, int toId, PriceBatch batch, int[] changedIds,
+                                     double[] oldPrices, double[] newPrices) {
+        Connection con = null;
+        try {
+            con = repricingDAO.beginTransaction();
+            int rows = repricingDAO.readClosedTickets(con, fromId, toId, batch);
+            int changed = 0;
+            long oldCents = 0;
+            long newCents = 0;
+            int invalid = 0;
+            for (int row = 0; row < rows; row++) {
+                long inTime = batch.getInTime(row);
+                long outTime = batch.getOutTime(row);
+                if (outTime < inTime) {
+                    invalid++;
+                    continue;
+                }
+                long priceCents = FareCalculatorService.calculateFareCents(tariff, inTime, outTime,
+                        batch.getParkingType(row), batch.getVisitCount(row));
+                long previousCents = Math.round(batch.getPrice(row) * 100);
+                if (priceCents != previousCents) {
+                    changedIds[changed] = batch.getId(row);
+                    oldPrices[changed] = batch.getPrice(row);
+                    newPrices[changed] = priceCents / 100.0;
+                    oldCents += previousCents;
+                    newCents += priceCents;
+                    changed++;
+                }
+            }
+            if (!config.isDryRun()) {
+                BatchResult result = repricingDAO.updatePrices(con, changedIds, newPrices, changed);
+                if (!result.isAllSucceeded()) {
+                    throw new SQLException("Ticket prices not updated, rows " + result.getFailedRows(), result.getError());
+                }
+            }
+            repricingDAO.commitTransaction(con);
+            con = null;
+            writeDiff(changedIds, oldPrices, newPrices, changed);
+            if (!config.isDryRun()) {
+                markCheckpoint(partitionId, toId);
+            }
+            ticketsPriced.addAndGet(rows - invalid);
+            ticketsChanged.addAndGet(changed);
+            ticketsInvalid.addAndGet(invalid);
+            oldTotalCents.addAndGet(oldCents);
+            newTotalCents.addAndGet(newCents);
+            pricedCount.add(rows - invalid);
+            changedCount.add(changed);
+            return true;
+        } catch (Exception e) {
+            logger.error("Unable to re-price tickets {} to {}, left for the next run", fromId, toId - 1, e);
+            repricingDAO.rollbackTransaction(con);
+            return false;
+        }
+    }
+
+    private void logProgress() {
+        logger.info("Re-priced {}/{} partitions ({} failed), {} tickets, {} changed", partitionsDone.get(),
+                partitionCount, partitionsFailed.get(), ticketsPriced.get(), ticketsChanged.get());
+    }
+
+    /**
+     * @return the exclusive upper bound of the partition, never past the last ID seen at the
+     * start: tickets created during the run are not in its range
+     */
+    private int toId(int fromId) {
+        return (int) Math.min((long) fromId + config.getPartitionSize(), lastId + 1L);
+    }
+
+    private void openCheckpoint(int firstId) throws IOException {
+        if (config.isDryRun() || config.getCheckpointFile() == null) {
+            return;
+        }
+        Path path = Paths.get(config.getCheckpointFile());
+        String header = String.format(Locale.ROOT, "tariff %s %08x from %d partition %d", tariff.getName(),
+                tariff.fingerprint(), firstId, config.getPartitionSize());
+        boolean resume = false;
+        if (Files.exists(path)) {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals(header)) {
+                logger.warn("Checkpoint {} is not for {}, starting over", path, header);
+            } else {
+                resume = readCheckpoint(path, lines, firstId);
+            }
+        }
+        if (resume) {
+            checkpoint = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } else {
+            checkpointed.clear();
+            checkpoint = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            markLine(header);
+        }
+    }
+
+    /**
+     * @return false if the checkpoint cannot be read, then the run starts over
+     */
+    private boolean readCheckpoint(Path path, List<String> lines, int firstId) {
+        for (String line : lines.subList(1, lines.size())) {
+            String[] range = line.split(" ");
+            int fromId;
+            int toId;
+            try {
+                fromId = Integer.parseInt(range[0]);
+                toId = range.length == 2 ? Integer.parseInt(range[1]) : -1;
+            } catch (NumberFormatException e) {
+                logger.warn("Unreadable checkpoint line '{}' in {}, starting over", line, path);
+                return false;
+            }
+            // A line cut by a crash is ignored, its partition is simply done again. The last
+            // partition of a previous run may stop short, before the tickets that came in since
+            if (fromId >= firstId && (fromId - firstId) % config.getPartitionSize() == 0 && toId > fromId
+                    && toId <= fromId + config.getPartitionSize()) {
+                checkpointed.merge(fromId, toId, Math::max);
+            }
+        }
+        if (!checkpointed.isEmpty()) {
+            logger.info("Resuming re-pricing, {} partitions already done, at least up to the last ID of the"
+                    + " previous run", checkpointed.size());
+        }
+        return true;
+    }
+
+    private synchronized void markCheckpoint(int fromId, int toId) throws IOException {
+        if (checkpoint != null) {
+            markLine(fromId + " " + toId);
+        }
+    }
+
+    private void markLine(String line) throws IOException {
+        checkpoint.write(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)));
+        checkpoint.force(false);
+    }
+
+    private void openDiff() throws IOException {
+        if (config.getDiffFile() != null) {
+            diff = Files.newBufferedWriter(Paths.get(config.getDiffFile()), StandardCharsets.UTF_8);
+            diff.write("id,oldPrice,newPrice\n");
+        }
+    }
+
+    private synchronized void writeDiff(int[] ids, double[] oldPrices, double[] newPrices, int count) throws IOException {
+        if (diff == null) {
+            return;
+        }
+        for (int row = 0; row < count; row++) {
+            diff.write(ids[row] + "," + oldPrices[row] + "," + newPrices[row] + "\n");
+        }
+    }
+
+    private synchronized void closeQuietly() {
+        try {
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+            if (diff != null) {
+                diff.close();
+            }
+        } catch (IOException e) {
+            logger.error("Error closing re-pricing files", e);
+        }
+    }
+
+    private static String euros(long cents) {
+        return String.format(Locale.ROOT, "%.2f", cents / 100.0);
+    }
+}
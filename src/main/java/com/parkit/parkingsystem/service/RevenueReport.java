@@ -0,0 +1,196 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ClosedTicketHandler;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Revenue, visits and dwell time per vehicle type and per hour, over whole days.
+ * <p>
+ * A ticket counts in the hour of its exit, local time, when its fare is paid. Totals are kept in
+ * flat primitive arrays indexed by type and hour, so the report takes the same memory for ten
+ * tickets as for hundreds of millions, and a ticket is added in a single pass whether it comes
+ * from the ticket table or from a gate. Tickets closed outside the report days are ignored.
+ */
+public class RevenueReport implements ClosedTicketHandler {
+
+    private static final long HOUR_MILLIS = 3600000L;
+    private static final int HOURS_PER_DAY = 24;
+    private static final ParkingType[] TYPES = ParkingType.values();
+
+    /**
+     * Longest report, in days: a leap year. The arrays grow with the span, a few MB a year.
+     */
+    public static final int MAX_DAYS = 366;
+
+    private final LocalDate from;
+    private final LocalDate to;
+    private final ZoneId zone;
+    private final TimeZone timeZone;
+    private final long localStart;
+    private final int hours;
+    private final long[] visits;
+    private final long[] dwellMillis;
+    private final double[] revenue;
+
+    /**
+     * @param from first day of the report
+     * @param to   day after the last day of the report, at most {@link #MAX_DAYS} after from
+     */
+    public RevenueReport(LocalDate from, LocalDate to, ZoneId zone) {
+        if (!to.isAfter(from)) {
+            throw new IllegalArgumentException("Report must span at least one day: " + from + " to " + to);
+        }
+        if (to.toEpochDay() - from.toEpochDay() > MAX_DAYS) {
+            throw new IllegalArgumentException("Report must span at most " + MAX_DAYS + " days: " + from + " to " + to);
+        }
+        this.from = from;
+        this.to = to;
+        this.zone = zone;
+        this.timeZone = TimeZone.getTimeZone(zone);
+        this.localStart = from.toEpochDay() * HOURS_PER_DAY * HOUR_MILLIS;
+        this.hours = Math.toIntExact((to.toEpochDay() - from.toEpochDay()) * HOURS_PER_DAY);
+        this.visits = new long[TYPES.length * hours];
+        this.dwellMillis = new long[TYPES.length * hours];
+        this.revenue = new double[TYPES.length * hours];
+    }
+
+    @Override
+    public synchronized void accept(ParkingType parkingType, long inTime, long outTime, double price) {
+        long hour = Math.floorDiv(outTime + timeZone.getOffset(outTime) - localStart, HOUR_MILLIS);
+        if (hour < 0 || hour >= hours) {
+            return;
+        }
+        int index = parkingType.ordinal() * hours + (int) hour;
+        visits[index]++;
+        dwellMillis[index] += outTime - inTime;
+        revenue[index] += price;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    /**
+     * @return the start of the first day, in epoch milliseconds
+     */
+    public long getStartMillis() {
+        return from.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * @return the start of the day after the last one, in epoch milliseconds
+     */
+    public long getEndMillis() {
+        return to.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    public long getVisits(ParkingType parkingType) {
+        return sumVisits(parkingType, 0, hours);
+    }
+
+    public long getVisits(ParkingType parkingType, LocalDate day) {
+        return sumVisits(parkingType, firstHour(day), HOURS_PER_DAY);
+    }
+
+    public long getVisits(ParkingType parkingType, LocalDate day, int hour) {
+        return sumVisits(parkingType, firstHour(day) + checkHour(hour), 1);
+    }
+
+    public double getRevenue(ParkingType parkingType) {
+        return sumRevenue(parkingType, 0, hours);
+    }
+
+    public double getRevenue(ParkingType parkingType, LocalDate day) {
+        return sumRevenue(parkingType, firstHour(day), HOURS_PER_DAY);
+    }
+
+    public double getRevenue(ParkingType parkingType, LocalDate day, int hour) {
+        return sumRevenue(parkingType, firstHour(day) + checkHour(hour), 1);
+    }
+
+    /**
+     * @return the mean time between entry and exit, in milliseconds, 0 without visits
+     */
+    public long getAverageDwellMillis(ParkingType parkingType) {
+        return averageDwell(parkingType, 0, hours);
+    }
+
+    public long getAverageDwellMillis(ParkingType parkingType, LocalDate day) {
+        return averageDwell(parkingType, firstHour(day), HOURS_PER_DAY);
+    }
+
+    public long getAverageDwellMillis(ParkingType parkingType, LocalDate day, int hour) {
+        return averageDwell(parkingType, firstHour(day) + checkHour(hour), 1);
+    }
+
+    /**
+     * Writes one CSV line per hour and vehicle type with visits, after a header line.
+     */
+    public synchronized void writeCsv(Appendable out) throws IOException {
+        out.append("day,hour,type,visits,revenue,averageDwellMinutes\n");
+        for (int hour = 0; hour < hours; hour++) {
+            for (ParkingType parkingType : TYPES) {
+                int index = parkingType.ordinal() * hours + hour;
+                if (visits[index] == 0) {
+                    continue;
+                }
+                out.append(from.plusDays(hour / HOURS_PER_DAY).toString()).append(',')
+                        .append(Integer.toString(hour % HOURS_PER_DAY)).append(',')
+                        .append(parkingType.name()).append(',')
+                        .append(Long.toString(visits[index])).append(',')
+                        .append(String.format(Locale.ROOT, "%.2f", revenue[index])).append(',')
+                        .append(Long.toString(dwellMillis[index] / visits[index] / 60000L)).append('\n');
+            }
+        }
+    }
+
+    private synchronized long sumVisits(ParkingType parkingType, int firstHour, int count) {
+        long sum = 0;
+        for (int index = parkingType.ordinal() * hours + firstHour, end = index + count; index < end; index++) {
+            sum += visits[index];
+        }
+        return sum;
+    }
+
+    private synchronized double sumRevenue(ParkingType parkingType, int firstHour, int count) {
+        double sum = 0;
+        for (int index = parkingType.ordinal() * hours + firstHour, end = index + count; index < end; index++) {
+            sum += revenue[index];
+        }
+        return sum;
+    }
+
+    private synchronized long averageDwell(ParkingType parkingType, int firstHour, int count) {
+        long visitCount = 0;
+        long dwell = 0;
+        for (int index = parkingType.ordinal() * hours + firstHour, end = index + count; index < end; index++) {
+            visitCount += visits[index];
+            dwell += dwellMillis[index];
+        }
+        return visitCount == 0 ? 0 : dwell / visitCount;
+    }
+
+    private int firstHour(LocalDate day) {
+        if (day.isBefore(from) || !day.isBefore(to)) {
+            throw new IllegalArgumentException(day + " is not in the report");
+        }
+        return (int) (day.toEpochDay() - from.toEpochDay()) * HOURS_PER_DAY;
+    }
+
+    private static int checkHour(int hour) {
+        if (hour < 0 || hour >= HOURS_PER_DAY) {
+            throw new IllegalArgumentException("Invalid hour " + hour);
+        }
+        return hour;
+    }
+}
@@ -0,0 +1,142 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.TicketArchiveReader;
+import com.parkit.parkingsystem.dao.TicketArchiveWriter;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves the ticket history between databases through columnar archive files, see
+ * {@link TicketArchiveWriter} for the format.
+ * <p>
+ * Export streams the ticket tables into the archive. Import reads the archive back and restores
+ * the tickets under their ID with {@link TicketDAO#restoreTickets(List)} in batches of
+ * {@value #IMPORT_BATCH_SIZE}, one transaction each: closed tickets into ticket_archive, open
+ * ones into ticket, their spots not marked occupied. The IDs must be free in the target. The
+ * visit counters are then recounted from both tables, and new tickets numbered after the
+ * highest ID. Run it while the gates are closed.
+ */
+public class TicketArchiveService {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchiveService");
+
+    static final int IMPORT_BATCH_SIZE = 1000;
+
+    private final TicketDAO ticketDAO;
+
+    public TicketArchiveService(TicketDAO ticketDAO) {
+        this.ticketDAO = ticketDAO;
+    }
+
+    /**
+     * Runs an export or an import of the database named by the {@code parkit.db.*} system
+     * properties, or of the facility of {@code parkit.facility}.
+     *
+     * @return true if every ticket was moved
+     */
+    public static boolean launch(boolean export, String file) throws IOException {
+        DataBaseConfig dataBaseConfig = DataBaseConfig.create();
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        TicketArchiveService service = new TicketArchiveService(ticketDAO);
+        try {
+            return (export ? service.export(Paths.get(file)) : service.importFrom(Paths.get(file))) >= 0;
+        } finally {
+            dataBaseConfig.shutdown();
+        }
+    }
+
+    /**
+     * Writes every ticket, live or archived, to the archive, replacing the file.
+     *
+     * @return the number of tickets written, or -1 if the tables could not be read
+     */
+    public long export(Path file) throws IOException {
+        long start = System.currentTimeMillis();
+        long rows;
+        try (TicketArchiveWriter writer = new TicketArchiveWriter(file)) {
+            rows = ticketDAO.streamTickets(writer);
+        }
+        if (rows >= 0) {
+            logger.info("Exported {} tickets to {} in {} ms", rows, file, System.currentTimeMillis() - start);
+        }
+        return rows;
+    }
+
+    /**
+     * Restores the tickets of the archive. The import stops at the first batch that cannot be
+     * written; the batches before it stay committed and are counted in vehicle_stats.
+     *
+     * @return the number of tickets restored, or -1 if the import stopped on an error
+     */
+    public long importFrom(Path file) throws IOException {
+        long start = System.currentTimeMillis();
+        long restored;
+        boolean recounted;
+        try {
+            restored = restore(file);
+        } finally {
+            recounted = ticketDAO.rebuildVisitCounts() & ticketDAO.skipUsedTicketIds();
+        }
+        if (restored < 0 || !recounted) {
+            return -1;
+        }
+        logger.info("Imported {} tickets from {} in {} ms", restored, file, System.currentTimeMillis() - start);
+        return restored;
+    }
+
+    private long restore(Path file) throws IOException {
+        long saved = 0;
+        Map<Integer, ParkingSpot> parkingSpots = new HashMap<>();
+        List<Ticket> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        try (TicketArchiveReader reader = new TicketArchiveReader(file)) {
+            while (reader.next()) {
+                Ticket ticket = new Ticket();
+                ticket.setId(reader.getId());
+                // Only the spot number is stored with a ticket
+                ticket.setParkingSpot(parkingSpots.computeIfAbsent(reader.getParkingNumber(),
+                        number -> new ParkingSpot(number, null, false)));
+                ticket.setVehicleRegNumber(reader.getVehicleRegNumber());
+                ticket.setPrice(reader.getPrice());
+                ticket.setInTime(new Date(reader.getInTime()));
+                ticket.setOutTime(reader.getOutTime() == 0 ? null : new Date(reader.getOutTime()));
+                batch.add(ticket);
+                if (batch.size() == IMPORT_BATCH_SIZE) {
+                    if (!save(batch, saved)) {
+                        return -1;
+                    }
+                    saved += batch.size();
+                    batch.clear();
+                }
+            }
+        }
+        if (!save(batch, saved)) {
+            return -1;
+        }
+        return saved + batch.size();
+    }
+
+    private boolean save(List<Ticket> batch, long saved) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        if (ticketDAO.restoreTickets(batch) < 0) {
+            logger.error("Import stopped after {} tickets, batch not restored", saved);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,92 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.dao.TicketDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the ticket table small by moving the tickets closed more than the horizon ago to
+ * ticket_archive, in batches of one transaction each, so the gates' lookups do not slow down as
+ * the history grows.
+ * <p>
+ * The horizon and batch size come from {@code -Dparkit.archive.horizonDays} (90) and
+ * {@code -Dparkit.archive.batchSize} (1000); a horizon of 0 turns archiving off.
+ */
+public class TicketArchiver {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchiver");
+
+    private static final long DAY_MILLIS = 24L * 3600 * 1000;
+
+    private final TicketDAO ticketDAO;
+    private final long horizonMillis;
+    private final int batchSize;
+    private ScheduledExecutorService scheduler;
+
+    public TicketArchiver(TicketDAO ticketDAO, long horizonMillis, int batchSize) {
+        this.ticketDAO = ticketDAO;
+        this.horizonMillis = horizonMillis;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return an archiver configured by the {@code parkit.archive.*} system properties
+     */
+    public static TicketArchiver create(TicketDAO ticketDAO) {
+        return new TicketArchiver(ticketDAO, Long.getLong("parkit.archive.horizonDays", 90L) * DAY_MILLIS,
+                Integer.getInteger("parkit.archive.batchSize", 1000));
+    }
+
+    /**
+     * Archives every ticket closed before the horizon, batch after batch.
+     *
+     * @return the number of tickets moved, or -1 if a batch failed; the batches before it stay moved
+     */
+    public long archive() {
+        if (horizonMillis <= 0) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - horizonMillis;
+        long moved = 0;
+        int count;
+        do {
+            count = ticketDAO.archiveClosedTickets(cutoff, batchSize);
+            if (count < 0) {
+                logger.error("Archiving stopped after {} tickets, retried at the next run", moved);
+                return -1;
+            }
+            moved += count;
+        } while (count == batchSize && !Thread.currentThread().isInterrupted());
+        if (moved > 0) {
+            logger.info("Archived {} tickets closed before {}", moved, new Date(cutoff));
+        }
+        return moved;
+    }
+
+    /**
+     * Archives now and then every {@code intervalMillis} on a daemon thread.
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null || intervalMillis <= 0 || horizonMillis <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "parkit-ticket-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::archive, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.BatchResult;
+import com.parkit.parkingsystem.dao.GateJournal;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.model.GateEvent;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ParkingService} answering the gates from memory and writing to the DB behind them.
+ * <p>
+ * An entry claims its spot in the in-memory index, an exit prices the ticket kept from the
+ * entry (or read from the DB for vehicles parked before). The event is then appended to the
+ * {@link GateJournal}, queued, and the gate only waits for the journal fsync. A background
+ * writer drains the queue in batches, each written in one transaction with JDBC batches;
+ * while the DB is unavailable it keeps retrying the same batch, and events still in the journal
+ * after a crash are queued again on {@link #start()}. A crash between the commit of a batch and
+ * its acknowledgement leaves committed events in the journal: the writer skips the replayed
+ * events the DB already holds.
+ * <p>
+ * Spots are written without the conditional reservation, so this mode needs a single process
+ * allocating the spots of the parking. The visit count used for the welcome message and the
+ * discount is kept in memory as well: read from vehicle_stats on {@link #start()}, one entry per
+ * vehicle ever seen, then counted at the entry gate, so neither gate reads it from the DB.
+ * <p>
+ * Enabled with {@code -Dparkit.writeBehind=true} and a {@code parkit.journal.dir}; {@code parkit.writeBehind.queueCapacity}
+ * (10000) bounds the events waiting for the DB and {@code parkit.writeBehind.batchSize} (500)
+ * sets the size of a batch.
+ */
+public class WriteBehindParkingService extends ParkingService {
+
+    private static final Logger logger = LogManager.getLogger("WriteBehindParkingService");
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final long ENQUEUE_TIMEOUT_MILLIS = 5000;
+    // DATETIME columns keep whole seconds, rounded
+    private static final long DATETIME_PRECISION_MILLIS = 1000;
+
+    private static class PendingWrite {
+        private final long sequence;
+        private final GateEvent event;
+        private final Ticket ticket;
+        // Read back from the journal on start, possibly committed before the crash
+        private final boolean replayed;
+
+        private PendingWrite(long sequence, GateEvent event, Ticket ticket, boolean replayed) {
+            this.sequence = sequence;
+            this.event = event;
+            this.ticket = ticket;
+            this.replayed = replayed;
+        }
+    }
+
+    /**
+     * What this service knows of a vehicle: parked with the ticket of its entry, exit being
+     * recorded, or exit queued with its journal sequence.
+     */
+    private static class VehicleState {
+        private static final long PARKED = 0;
+        private static final long EXITING = -1;
+
+        private final Ticket ticket;
+        private final long exitSequence;
+
+        private VehicleState(Ticket ticket, long exitSequence) {
+            this.ticket = ticket;
+            this.exitSequence = exitSequence;
+        }
+    }
+
+    private final FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    private final ParkingSpotDAO parkingSpotDAO;
+    private final TicketDAO ticketDAO;
+    private final GateJournal journal;
+    private final int batchSize;
+    private final Semaphore capacity;
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final Object appendLock = new Object();
+    // Vehicles that entered through this service and are still parked, or whose exit is not committed yet
+    private final ConcurrentHashMap<String, VehicleState> vehicles = new ConcurrentHashMap<>();
+    // Visits of each vehicle in this facility, vehicle_stats plus the entries not written yet
+    private final ConcurrentHashMap<String, Integer> visitCounts = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public WriteBehindParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO,
+                                     GateJournal journal, int queueCapacity, int batchSize) {
+        super(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        this.parkingSpotDAO = parkingSpotDAO;
+        this.ticketDAO = ticketDAO;
+        this.journal = journal;
+        this.batchSize = batchSize;
+        this.capacity = new Semaphore(queueCapacity);
+        MetricsRegistry.getDefault().gauge("writeBehind.pending", this::getPendingCount);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("parkit.writeBehind") && GateJournal.isEnabled();
+    }
+
+    /**
+     * Opens the journal of the facility named by the {@code parkit.journal.*} system properties
+     * and starts the service with the {@code parkit.writeBehind.*} ones.
+     */
+    public static WriteBehindParkingService open(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO,
+                                                 TicketDAO ticketDAO, String facility) throws IOException {
+        WriteBehindParkingService service = new WriteBehindParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO,
+                GateJournal.open(facility), Integer.getInteger("parkit.writeBehind.queueCapacity", 10000),
+                Integer.getInteger("parkit.writeBehind.batchSize", 500));
+        service.start();
+        return service;
+    }
+
+    /**
+     * Loads the visit counts, queues again the events of the journal the DB has not acknowledged,
+     * then starts the writer.
+     */
+    public synchronized void start() {
+        visitCounts.putAll(ticketDAO.getVisitCounts());
+        List<GateJournal.Entry> unacknowledged = journal.getUnacknowledged();
+        if (!unacknowledged.isEmpty()) {
+            logger.warn("Replaying {} gate events not written to the DB", unacknowledged.size());
+            recover(unacknowledged);
+        }
+        running = true;
+        writer = new Thread(this::drain, "parkit-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops the writer once every queued event is written, or after the timeout, and closes
+     * the journal. Events left behind stay in the journal for the next start.
+     */
+    @Override
+    public synchronized void shutdown(long timeoutMillis) throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join(timeoutMillis);
+            writer.interrupt();
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.error("Error closing gate journal", e);
+        }
+    }
+
+    /**
+     * @return the number of gate events waiting to be written to the DB
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    @Override
+    protected Ticket recordEntry(ParkingType parkingType, String vehicleRegNumber) throws Exception {
+        ParkingSpot parkingSpot = parkingSpotDAO.claimNextAvailable(parkingType);
+        if (parkingSpot == null) {
+            return null;
+        }
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setFacility(parkingSpot.getFacility());
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(0);
+        ticket.setInTime(new Date());
+        ticket.setVisitCount(visitCounts.merge(vehicleRegNumber, 1, Integer::sum)
+                + ticketDAO.getVisitsElsewhere(vehicleRegNumber));
+
+        GateEvent event = GateEvent.entry(vehicleRegNumber, parkingType, ticket.getInTime().getTime());
+        event.setParkingNumber(parkingSpot.getId());
+        VehicleState parked = new VehicleState(ticket, VehicleState.PARKED);
+        try {
+            vehicles.put(vehicleRegNumber, parked);
+            record(event, ticket);
+        } catch (Exception e) {
+            vehicles.remove(vehicleRegNumber, parked);
+            visitCounts.merge(vehicleRegNumber, -1, Integer::sum);
+            parkingSpotDAO.cancelReservation(parkingSpot);
+            throw e;
+        }
+        return ticket;
+    }
+
+    @Override
+    protected Ticket recordExit(String vehicleRegNumber) throws Exception {
+        // Marked as exiting in the same step, so a concurrent exit of the vehicle is refused
+        VehicleState[] previous = new VehicleState[1];
+        VehicleState exiting = vehicles.compute(vehicleRegNumber, (key, state) -> {
+            previous[0] = state;
+            if (state != null && state.exitSequence != VehicleState.PARKED) {
+                return state;
+            }
+            return new VehicleState(null, VehicleState.EXITING);
+        });
+        if (previous[0] != null && previous[0].exitSequence != VehicleState.PARKED) {
+            return null;
+        }
+        try {
+            Ticket ticket = recordExit(vehicleRegNumber, previous[0] == null ? null : previous[0].ticket);
+            if (ticket == null) {
+                vehicles.remove(vehicleRegNumber, exiting);
+            }
+            return ticket;
+        } catch (Exception e) {
+            if (previous[0] == null) {
+                vehicles.remove(vehicleRegNumber, exiting);
+            } else {
+                vehicles.replace(vehicleRegNumber, exiting, previous[0]);
+            }
+            throw e;
+        }
+    }
+
+    private Ticket recordExit(String vehicleRegNumber, Ticket ticket) throws Exception {
+        if (ticket != null) {
+            ticket.setVisitCount(visitCounts.getOrDefault(vehicleRegNumber, 0)
+                    + ticketDAO.getVisitsElsewhere(vehicleRegNumber));
+        } else {
+            ticket = ticketDAO.getOpenTicketWithVisitCount(vehicleRegNumber);
+            if (ticket == null) {
+                return null;
+            }
+        }
+        ticket.setOutTime(new Date());
+        ticket.setDiscountPercent(fareCalculatorService.calculateFare(ticket, ticket.getVisitCount()));
+
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        GateEvent event = new GateEvent(GateEvent.Type.EXIT, vehicleRegNumber, parkingSpot.getParkingType(),
+                ticket.getOutTime().getTime());
+        event.setParkingNumber(parkingSpot.getId());
+        event.setPrice(ticket.getPrice());
+        try {
+            record(event, ticket);
+        } catch (Exception e) {
+            ticket.setOutTime(null);
+            throw e;
+        }
+        // Journalisée : la place peut être réattribuée, sa libération est écrite avant la nouvelle entrée
+        parkingSpot.setAvailable(true);
+        parkingSpotDAO.releaseCommitted(Collections.singletonList(parkingSpot));
+        return ticket;
+    }
+
+    private void record(GateEvent event, Ticket ticket) throws Exception {
+        if (!capacity.tryAcquire(ENQUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            throw new Exception("Write-behind queue full, DB writes are " + queue.size() + " events behind");
+        }
+        long sequence;
+        synchronized (appendLock) {
+            try {
+                sequence = journal.append(event);
+            } catch (IOException e) {
+                capacity.release();
+                throw e;
+            }
+            if (event.getType() == GateEvent.Type.EXIT) {
+                vehicles.put(event.getVehicleRegNumber(), new VehicleState(null, sequence));
+            }
+            queue.add(new PendingWrite(sequence, event, ticket, false));
+        }
+        try {
+            journal.sync(sequence);
+        } catch (IOException e) {
+            // Already queued: the DB write still happens, only crash safety is lost
+            logger.error("Unable to sync gate journal", e);
+        }
+    }
+
+    private void recover(List<GateJournal.Entry> entries) {
+        Map<String, Ticket> entered = new HashMap<>();
+        for (GateJournal.Entry entry : entries) {
+            GateEvent event = entry.getEvent();
+            String vehicleRegNumber = event.getVehicleRegNumber();
+            ParkingSpot parkingSpot = new ParkingSpot(event.getParkingNumber(), event.getParkingType(),
+                    event.getType() == GateEvent.Type.EXIT);
+            parkingSpot.setFacility(parkingSpotDAO.dataBaseConfig.getFacility());
+            Ticket ticket;
+            if (event.getType() == GateEvent.Type.ENTRY) {
+                ticket = new Ticket();
+                ticket.setParkingSpot(parkingSpot);
+                ticket.setFacility(parkingSpot.getFacility());
+                ticket.setVehicleRegNumber(vehicleRegNumber);
+                ticket.setInTime(new Date(event.getTime()));
+                entered.put(vehicleRegNumber, ticket);
+                vehicles.put(vehicleRegNumber, new VehicleState(ticket, VehicleState.PARKED));
+                parkingSpotDAO.parkingSpotIndex.setAvailable(parkingSpot.getId(), false);
+            } else {
+                // Sans entrée dans le journal, le ticket ouvert est recherché en base à l'écriture
+                ticket = entered.remove(vehicleRegNumber);
+                if (ticket == null) {
+                    ticket = new Ticket();
+                    ticket.setParkingSpot(parkingSpot);
+                    ticket.setFacility(parkingSpot.getFacility());
+                    ticket.setVehicleRegNumber(vehicleRegNumber);
+                }
+                ticket.setOutTime(new Date(event.getTime()));
+                ticket.setPrice(event.getPrice());
+                vehicles.put(vehicleRegNumber, new VehicleState(null, entry.getSequence()));
+                parkingSpotDAO.parkingSpotIndex.setAvailable(parkingSpot.getId(), true);
+            }
+            capacity.acquireUninterruptibly();
+            queue.add(new PendingWrite(entry.getSequence(), event, ticket, true));
+        }
+    }
+
+    private void drain() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                flush(batch);
+                acknowledge(batch);
+                capacity.release(batch.size());
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Unable to write {} gate events, retrying", batch.size(), e);
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a batch in one transaction: ticket inserts, then ticket updates, then every spot
+     * change in gate order, so a spot freed then taken again ends up occupied. Replayed events
+     * the DB already holds are left out, and so is an exit without an open ticket to close.
+     */
+    private void flush(List<PendingWrite> batch) throws Exception {
+        Connection con = null;
+        try {
+            con = ticketDAO.beginTransaction();
+            List<Ticket> entries = new ArrayList<>();
+            List<Ticket> exits = new ArrayList<>();
+            List<ParkingSpot> spots = new ArrayList<>();
+            // Entries of the journal found not written: vehicle_stats did not count them on start
+            List<String> replayedEntries = new ArrayList<>();
+            for (PendingWrite write : batch) {
+                if (write.replayed && isApplied(con, write.event)) {
+                    continue;
+                }
+                boolean exit = write.event.getType() == GateEvent.Type.EXIT;
+                if (exit) {
+                    exits.add(write.ticket);
+                } else {
+                    // IDs from an attempt that was rolled back are not valid
+                    write.ticket.setId(0);
+                    entries.add(write.ticket);
+                    if (write.replayed) {
+                        replayedEntries.add(write.event.getVehicleRegNumber());
+                    }
+                }
+                spots.add(new ParkingSpot(write.event.getParkingNumber(), write.event.getParkingType(), exit));
+            }
+            check(ticketDAO.saveTickets(con, entries), "tickets not saved");
+            for (Iterator<Ticket> it = exits.iterator(); it.hasNext(); ) {
+                Ticket ticket = it.next();
+                if (ticket.getId() == 0) {
+                    Ticket latest = ticketDAO.getTicket(con, ticket.getVehicleRegNumber());
+                    if (latest == null || latest.getOutTime() != null) {
+                        logger.error("No open ticket for journaled exit of {}, exit dropped", ticket.getVehicleRegNumber());
+                        it.remove();
+                        continue;
+                    }
+                    ticket.setId(latest.getId());
+                }
+            }
+            check(ticketDAO.updateTickets(con, exits), "tickets not updated");
+            check(parkingSpotDAO.updateParkings(con, spots), "parking spots not updated");
+            ticketDAO.commitTransaction(con);
+            ticketDAO.shareVisits(entries);
+            for (String vehicleRegNumber : replayedEntries) {
+                visitCounts.merge(vehicleRegNumber, 1, Integer::sum);
+            }
+        } catch (Exception e) {
+            ticketDAO.rollbackTransaction(con);
+            throw e;
+        }
+    }
+
+    /**
+     * Tells whether a replayed event is already in the DB, from the latest ticket of its vehicle:
+     * an entry is there if that ticket came in at its time or later, an exit if that ticket went
+     * out at its time or later, or came in after it.
+     */
+    private boolean isApplied(Connection con, GateEvent event) throws SQLException {
+        Ticket latest = ticketDAO.getTicket(con, event.getVehicleRegNumber());
+        if (latest == null) {
+            return false;
+        }
+        long since = event.getTime() - DATETIME_PRECISION_MILLIS;
+        if (event.getType() == GateEvent.Type.ENTRY) {
+            return latest.getInTime().getTime() >= since;
+        }
+        return latest.getOutTime() != null ? latest.getOutTime().getTime() >= since
+                : latest.getInTime().getTime() > event.getTime();
+    }
+
+    /**
+     * Acknowledges a committed batch. It never fails: a committed batch must leave the queue, and
+     * an acknowledgement that could not be written is covered by the one of the next batch.
+     */
+    private void acknowledge(List<PendingWrite> batch) {
+        long last = batch.get(batch.size() - 1).sequence;
+        try {
+            journal.sync(journal.acknowledgeThrough(last));
+        } catch (IOException e) {
+            logger.error("Batch through gate event {} committed but not acknowledged, a restart will skip it",
+                    last, e);
+        }
+        for (PendingWrite write : batch) {
+            if (write.event.getType() == GateEvent.Type.EXIT) {
+                vehicles.computeIfPresent(write.event.getVehicleRegNumber(),
+                        (key, state) -> state.exitSequence == write.sequence ? null : state);
+            }
+        }
+    }
+
+    private static void check(BatchResult result, String message) throws SQLException {
+        if (!result.isAllSucceeded()) {
+            throw new SQLException("Write-behind batch failed, " + message + ", rows " + result.getFailedRows(),
+                    result.getError());
+        }
+    }
+}
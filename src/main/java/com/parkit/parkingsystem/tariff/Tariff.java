@@ -0,0 +1,151 @@
+package com.parkit.parkingsystem.tariff;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * A compiled, immutable tariff: hourly rate per hour of the day and per vehicle type, optional
+ * daily cap, free period and discount tiers by number of visits.
+ * <p>
+ * Everything is resolved into primitive arrays when the tariff is built, so evaluating a fare
+ * only walks those arrays and never allocates. A tariff is shared by all threads without locking;
+ * changing tariffs means building a new one and swapping it in {@link TariffRegistry}.
+ */
+public class Tariff {
+
+    static final long MILLIS_PER_HOUR = 60 * 60 * 1000;
+    private static final int HOURS_PER_DAY = 24;
+
+    private final String name;
+    private final TimeZone timeZone;
+    private final long freeMillis;
+    // [ParkingType.ordinal()][hour of day] -> cents per hour
+    private final long[][] hourlyRatesCents;
+    // [ParkingType.ordinal()] -> cents per calendar day, 0 when uncapped
+    private final long[] dailyCapsCents;
+    // [ParkingType.ordinal()] -> same rate all day and no cap
+    private final boolean[] flatRate;
+    // tiers sorted by increasing number of visits
+    private final int[] tierMinVisits;
+    private final int[] tierPercentOff;
+
+    Tariff(String name, TimeZone timeZone, long freeMillis, long[][] hourlyRatesCents, long[] dailyCapsCents,
+           int[] tierMinVisits, int[] tierPercentOff) {
+        this.name = name;
+        this.timeZone = (TimeZone) timeZone.clone();
+        this.freeMillis = freeMillis;
+        this.hourlyRatesCents = new long[hourlyRatesCents.length][];
+        this.flatRate = new boolean[hourlyRatesCents.length];
+        for (int type = 0; type < hourlyRatesCents.length; type++) {
+            long[] rates = Arrays.copyOf(hourlyRatesCents[type], HOURS_PER_DAY);
+            this.hourlyRatesCents[type] = rates;
+            boolean flat = dailyCapsCents[type] == 0;
+            for (int hour = 1; hour < HOURS_PER_DAY && flat; hour++) {
+                flat = rates[hour] == rates[0];
+            }
+            this.flatRate[type] = flat;
+        }
+        this.dailyCapsCents = dailyCapsCents.clone();
+        this.tierMinVisits = tierMinVisits.clone();
+        this.tierPercentOff = tierPercentOff.clone();
+    }
+
+    /**
+     * The built-in tariff: {@link Fare} hourly rates all day, first 30 minutes free,
+     * 5% off from the second visit.
+     */
+    public static Tariff standard() {
+        long[][] rates = new long[ParkingType.values().length][HOURS_PER_DAY];
+        Arrays.fill(rates[ParkingType.CAR.ordinal()], Fare.CAR_RATE_PER_HOUR_CENTS);
+        Arrays.fill(rates[ParkingType.BIKE.ordinal()], Fare.BIKE_RATE_PER_HOUR_CENTS);
+        return new Tariff("standard", TimeZone.getDefault(), 30 * 60 * 1000, rates,
+                new long[ParkingType.values().length], new int[]{2}, new int[]{5});
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return a hash of everything the fares depend on, equal for two tariffs pricing alike
+     */
+    public int fingerprint() {
+        int hash = timeZone.getID().hashCode();
+        hash = 31 * hash + Long.hashCode(freeMillis);
+        hash = 31 * hash + Arrays.deepHashCode(hourlyRatesCents);
+        hash = 31 * hash + Arrays.hashCode(dailyCapsCents);
+        hash = 31 * hash + Arrays.hashCode(tierMinVisits);
+        return 31 * hash + Arrays.hashCode(tierPercentOff);
+    }
+
+    /**
+     * @return the discount, in percent, granted to a vehicle with that many visits (this one included)
+     */
+    public int discountPercent(int visitCount) {
+        int percentOff = 0;
+        for (int i = 0; i < tierMinVisits.length && visitCount >= tierMinVisits[i]; i++) {
+            percentOff = tierPercentOff[i];
+        }
+        return percentOff;
+    }
+
+    /**
+     * @return the discount, in percent, of the first tier, the one a recurring customer gets
+     */
+    public int recurringDiscountPercent() {
+        return tierPercentOff.length == 0 ? 0 : tierPercentOff[0];
+    }
+
+    /**
+     * Computes a fare without allocating. A stay no longer than the free period is free; otherwise
+     * every hour of the stay is charged at the rate of its hour of the day, each calendar day is
+     * capped, and the discount applies to the total.
+     *
+     * @return the fare in cents, rounded half up
+     */
+    public long priceCents(long inMillis, long outMillis, ParkingType parkingType, int percentOff) {
+        if (outMillis < inMillis) {
+            throw new IllegalArgumentException("Out time provided is incorrect: " + outMillis);
+        }
+        long durationMillis = outMillis - inMillis;
+        if (durationMillis <= freeMillis) {
+            return 0;
+        }
+        int type = parkingType.ordinal();
+        long[] rates = hourlyRatesCents[type];
+
+        // Montant en "centimes x millisecondes / heure" pour rester en arithmétique entière
+        long amount;
+        if (flatRate[type]) {
+            amount = durationMillis * rates[0];
+        } else {
+            amount = 0;
+            long dayAmount = 0;
+            long dayCap = dailyCapsCents[type] * MILLIS_PER_HOUR;
+            long time = inMillis;
+            while (time < outMillis) {
+                long localTime = time + timeZone.getOffset(time);
+                long millisInHour = Math.floorMod(localTime, MILLIS_PER_HOUR);
+                int hour = (int) Math.floorMod(Math.floorDiv(localTime, MILLIS_PER_HOUR), (long) HOURS_PER_DAY);
+                long end = Math.min(outMillis, time + MILLIS_PER_HOUR - millisInHour);
+                dayAmount += (end - time) * rates[hour];
+                boolean endOfDay = hour == HOURS_PER_DAY - 1 && end - time == MILLIS_PER_HOUR - millisInHour;
+                if (endOfDay || end == outMillis) {
+                    amount += dayCap > 0 ? Math.min(dayAmount, dayCap) : dayAmount;
+                    dayAmount = 0;
+                }
+                time = end;
+            }
+        }
+        long denominator = MILLIS_PER_HOUR * 100;
+        return (amount * (100 - percentOff) + denominator / 2) / denominator;
+    }
+
+    @Override
+    public String toString() {
+        return "Tariff[" + name + "]";
+    }
+}
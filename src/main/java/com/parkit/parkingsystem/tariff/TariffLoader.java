@@ -0,0 +1,148 @@
+package com.parkit.parkingsystem.tariff;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.TimeZone;
+
+/**
+ * Parses a tariff definition and compiles it into a {@link Tariff}.
+ * <p>
+ * A definition is a set of properties, e.g. :
+ * <pre>
+ * tariff.name=centre-ville
+ * tariff.timeZone=Europe/Paris
+ * tariff.freeMinutes=30
+ * # from 2 visits 5% off, from 10 visits 10% off
+ * tariff.discountTiers=2:5,10:10
+ * CAR.ratePerHourCents=150
+ * # hours [from, to) of the day with their own rate
+ * CAR.bands=0-7:50,20-24:50
+ * CAR.dailyCapCents=1500
+ * BIKE.ratePerHourCents=100
+ * </pre>
+ * Every {@link ParkingType} needs a {@code ratePerHourCents}; everything else is optional.
+ */
+public class TariffLoader {
+
+    private static final int HOURS_PER_DAY = 24;
+
+    public Tariff load(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return load(in, file.toString());
+        }
+    }
+
+    public Tariff load(InputStream in, String source) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+        try {
+            return compile(properties);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid tariff " + source + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the definition is incomplete or malformed
+     */
+    public Tariff compile(Properties properties) {
+        String name = properties.getProperty("tariff.name", "default");
+        String zoneId = properties.getProperty("tariff.timeZone");
+        TimeZone timeZone = zoneId == null ? TimeZone.getDefault() : TimeZone.getTimeZone(zoneId);
+        long freeMillis = parseLong(properties, "tariff.freeMinutes", 0) * 60 * 1000;
+
+        int typeCount = ParkingType.values().length;
+        long[][] rates = new long[typeCount][];
+        long[] dailyCaps = new long[typeCount];
+        for (ParkingType parkingType : ParkingType.values()) {
+            String prefix = parkingType.name() + ".";
+            if (properties.getProperty(prefix + "ratePerHourCents") == null) {
+                throw new IllegalArgumentException("missing " + prefix + "ratePerHourCents");
+            }
+            long[] hourly = new long[HOURS_PER_DAY];
+            Arrays.fill(hourly, parseLong(properties, prefix + "ratePerHourCents", 0));
+            applyBands(hourly, properties.getProperty(prefix + "bands", ""), prefix + "bands");
+            rates[parkingType.ordinal()] = hourly;
+            dailyCaps[parkingType.ordinal()] = parseLong(properties, prefix + "dailyCapCents", 0);
+        }
+
+        String[] tiers = split(properties.getProperty("tariff.discountTiers", ""));
+        int[] tierMinVisits = new int[tiers.length];
+        int[] tierPercentOff = new int[tiers.length];
+        for (int i = 0; i < tiers.length; i++) {
+            String[] tier = pair(tiers[i], "tariff.discountTiers");
+            tierMinVisits[i] = parseInt(tier[0], "tariff.discountTiers");
+            tierPercentOff[i] = parseInt(tier[1], "tariff.discountTiers");
+            if (tierPercentOff[i] < 0 || tierPercentOff[i] > 100) {
+                throw new IllegalArgumentException("discount out of 0-100 in tariff.discountTiers: " + tiers[i]);
+            }
+            if (i > 0 && tierMinVisits[i] <= tierMinVisits[i - 1]) {
+                throw new IllegalArgumentException("tariff.discountTiers must be sorted by visits: " + tiers[i]);
+            }
+        }
+        return new Tariff(name, timeZone, freeMillis, rates, dailyCaps, tierMinVisits, tierPercentOff);
+    }
+
+    private static void applyBands(long[] hourly, String bands, String key) {
+        for (String band : split(bands)) {
+            String[] rate = pair(band, key);
+            String[] hours = rate[0].split("-");
+            if (hours.length != 2) {
+                throw new IllegalArgumentException("expected <from>-<to>:<cents> in " + key + ": " + band);
+            }
+            int from = parseInt(hours[0], key);
+            int to = parseInt(hours[1], key);
+            if (from < 0 || to > HOURS_PER_DAY || from >= to) {
+                throw new IllegalArgumentException("invalid hours in " + key + ": " + band);
+            }
+            Arrays.fill(hourly, from, to, parseInt(rate[1], key));
+        }
+    }
+
+    private static String[] split(String list) {
+        String trimmed = list.trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s*,\\s*");
+    }
+
+    private static String[] pair(String entry, String key) {
+        String[] pair = entry.split(":");
+        if (pair.length != 2) {
+            throw new IllegalArgumentException("expected <key>:<value> in " + key + ": " + entry);
+        }
+        return pair;
+    }
+
+    private static long parseLong(Properties properties, String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed < 0) {
+                throw new IllegalArgumentException("negative " + key + ": " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number in " + key + ": " + value);
+        }
+    }
+
+    private static int parseInt(String value, String key) {
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed < 0) {
+                throw new IllegalArgumentException("negative " + key + ": " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number in " + key + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.parkit.parkingsystem.tariff;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the tariff in force. Fare calculations read it with a single volatile load and keep
+ * using that instance to the end, so a reload swaps the reference atomically without blocking
+ * or disturbing calculations in flight.
+ * <p>
+ * The default registry loads the file named by the {@code parkit.tariff.file} system property,
+ * else {@code tariff.properties} from the classpath, else {@link Tariff#standard()}.
+ */
+public class TariffRegistry {
+
+    private static final Logger logger = LogManager.getLogger("TariffRegistry");
+
+    private static final TariffRegistry DEFAULT = createDefault();
+
+    private final AtomicReference<Tariff> current;
+    private final TariffLoader loader = new TariffLoader();
+    private final Path source;
+    private ScheduledExecutorService watcher;
+    private long lastModified;
+
+    public TariffRegistry(Tariff tariff) {
+        this(tariff, null);
+    }
+
+    /**
+     * @param source file {@link #reload()} reads the tariff from, or null
+     */
+    public TariffRegistry(Tariff tariff, Path source) {
+        this.current = new AtomicReference<>(tariff);
+        this.source = source;
+    }
+
+    public static TariffRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public Tariff current() {
+        return current.get();
+    }
+
+    /**
+     * Puts a new tariff in force.
+     *
+     * @return the tariff it replaces
+     */
+    public Tariff swap(Tariff tariff) {
+        Tariff previous = current.getAndSet(tariff);
+        logger.info("Tariff {} replaced by {}", previous.getName(), tariff.getName());
+        return previous;
+    }
+
+    /**
+     * Reads and compiles the source file again, then swaps it in. On an invalid file the
+     * current tariff stays in force.
+     *
+     * @return true if the new tariff is in force
+     */
+    public synchronized boolean reload() {
+        if (source == null) {
+            return false;
+        }
+        try {
+            lastModified = Files.getLastModifiedTime(source).toMillis();
+            swap(loader.load(source));
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Unable to reload tariff from {}, keeping {}", source, current().getName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Polls the source file and reloads it whenever it is modified.
+     */
+    public synchronized void watch(long intervalMillis) {
+        if (source == null || watcher != null) {
+            return;
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "parkit-tariff-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(this::reloadIfModified, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    private synchronized void reloadIfModified() {
+        try {
+            if (Files.getLastModifiedTime(source).toMillis() != lastModified) {
+                reload();
+            }
+        } catch (IOException e) {
+            logger.error("Unable to check tariff file {}", source, e);
+        }
+    }
+
+    private static TariffRegistry createDefault() {
+        TariffLoader loader = new TariffLoader();
+        String file = System.getProperty("parkit.tariff.file");
+        try {
+            if (file != null) {
+                Path path = Paths.get(file);
+                TariffRegistry registry = new TariffRegistry(loader.load(path), path);
+                registry.lastModified = Files.getLastModifiedTime(path).toMillis();
+                return registry;
+            }
+            try (InputStream in = TariffRegistry.class.getClassLoader().getResourceAsStream("tariff.properties")) {
+                if (in != null) {
+                    return new TariffRegistry(loader.load(in, "tariff.properties"));
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Unable to load tariff, using the standard tariff", e);
+        }
+        return new TariffRegistry(Tariff.standard());
+    }
+}
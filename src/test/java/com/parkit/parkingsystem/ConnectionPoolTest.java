@@ -0,0 +1,177 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.config.ConnectionPoolConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ConnectionPoolTest {
+
+    private List<Connection> physicalConnections;
+    private ConnectionPoolConfig config;
+    private ConnectionPool pool;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        physicalConnections = new ArrayList<>();
+        config = new ConnectionPoolConfig();
+        config.setMaxSize(2);
+        config.setMinIdle(0);
+        config.setMaxWaitMillis(50);
+        config.setEvictionIntervalMillis(0);
+        config.setValidationIntervalMillis(0);
+        pool = new ConnectionPool(() -> {
+            Connection connection = mock(Connection.class);
+            when(connection.isValid(anyInt())).thenReturn(true);
+            when(connection.getAutoCommit()).thenReturn(true);
+            when(connection.prepareStatement(anyString())).thenAnswer(invocation -> mock(PreparedStatement.class));
+            physicalConnections.add(connection);
+            return connection;
+        }, config);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void closedConnectionIsReusedInsteadOfReopened() throws Exception {
+        Connection first = pool.borrow();
+        first.close();
+        Connection second = pool.borrow();
+        second.close();
+
+        assertEquals(1, physicalConnections.size()); // Une seule connexion physique ouverte
+        verify(physicalConnections.get(0), never()).close();
+        assertEquals(2, pool.getBorrowCount());
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void borrowTimesOutWhenPoolIsExhausted() throws Exception {
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+
+        assertThrows(SQLTimeoutException.class, () -> pool.borrow());
+        assertEquals(2, pool.getActiveCount());
+        assertEquals(1, pool.getTimeoutCount());
+        assertTrue(pool.getMaxWaitNanos() > 0);
+
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void invalidIdleConnectionIsReplacedOnBorrow() throws Exception {
+        Connection first = pool.borrow();
+        first.close();
+        when(physicalConnections.get(0).isValid(anyInt())).thenReturn(false);
+
+        Connection second = pool.borrow();
+
+        assertEquals(2, physicalConnections.size());
+        verify(physicalConnections.get(0), times(1)).close();
+        assertEquals(1, pool.getTotalCount());
+        second.close();
+    }
+
+    @Test
+    public void uncommittedTransactionIsRolledBackOnRelease() throws Exception {
+        Connection connection = pool.borrow();
+        Connection physical = physicalConnections.get(0);
+        when(physical.getAutoCommit()).thenReturn(false);
+
+        connection.close();
+
+        verify(physical, times(1)).rollback();
+        verify(physical, times(1)).setAutoCommit(true);
+        assertThrows(SQLException.class, () -> connection.prepareStatement("select 1"));
+    }
+
+    @Test
+    public void idleConnectionsAboveMinimumAreEvicted() throws Exception {
+        config.setIdleTimeoutMillis(-1);
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+        first.close();
+        second.close();
+
+        pool.evictIdleConnections();
+
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(0, pool.getTotalCount());
+    }
+
+    @Test
+    public void minimumIdleConnectionsAreOpenedAtStartup() throws Exception {
+        config.setMinIdle(2);
+        ConnectionPool warmPool = new ConnectionPool(() -> {
+            Connection connection = mock(Connection.class);
+            physicalConnections.add(connection);
+            return connection;
+        }, config);
+
+        // Ouvertes dès la création, sans attendre l'éviction
+        assertEquals(2, warmPool.getIdleCount());
+        assertEquals(2, physicalConnections.size());
+        warmPool.shutdown();
+    }
+
+    @Test
+    public void preparedStatementIsReusedAcrossBorrows() throws Exception {
+        Connection first = pool.borrow();
+        PreparedStatement statement = first.prepareStatement("select 1");
+        statement.close();
+        first.close();
+        Connection second = pool.borrow();
+        second.prepareStatement("select 1").close();
+        second.close();
+
+        Connection physical = physicalConnections.get(0);
+        verify(physical, times(1)).prepareStatement("select 1"); // Préparé une seule fois par connexion
+        assertTrue(statement.isClosed());
+        assertThrows(SQLException.class, statement::executeQuery);
+    }
+
+    @Test
+    public void statementsLeftOpenAreRecycledWhenConnectionIsReturned() throws Exception {
+        Connection connection = pool.borrow();
+        PreparedStatement first = connection.prepareStatement("select 1");
+        PreparedStatement second = connection.prepareStatement("select 1");
+
+        connection.close();
+
+        Connection physical = physicalConnections.get(0);
+        verify(physical, times(2)).prepareStatement("select 1"); // SQL déjà utilisée : second statement
+        assertTrue(first.isClosed());
+        assertTrue(second.isClosed());
+        pool.shutdown();
+        verify(physical, times(1)).close();
+    }
+
+    @Test
+    public void statementCacheCanBeDisabled() throws Exception {
+        config.setStatementCacheSize(0);
+        Connection connection = pool.borrow();
+        connection.prepareStatement("select 1").close();
+        connection.close();
+        connection = pool.borrow();
+        connection.prepareStatement("select 1").close();
+        connection.close();
+
+        verify(physicalConnections.get(0), times(2)).prepareStatement("select 1");
+    }
+}
@@ -0,0 +1,48 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPoolConfig;
+import com.parkit.parkingsystem.config.ExecutorConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutorConfigTest {
+
+    private static final String CARRIER_PARALLELISM = "jdk.virtualThreadScheduler.parallelism";
+
+    @AfterEach
+    public void tearDown() {
+        System.clearProperty(CARRIER_PARALLELISM);
+    }
+
+    @Test
+    public void virtualModeAlwaysGivesAWorkingExecutor() throws Exception {
+        ExecutorConfig executorConfig = new ExecutorConfig();
+        executorConfig.setMode(ExecutorConfig.Mode.VIRTUAL);
+
+        // Threads virtuels sur Java 21+, sinon repli sur le pool fixe
+        ExecutorService executor = executorConfig.newExecutor();
+
+        assertEquals("done", executor.submit(() -> "done").get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void carriersAreSizedAboveThePoolOnlyInVirtualMode() {
+        ConnectionPoolConfig poolConfig = new ConnectionPoolConfig();
+        poolConfig.setMaxSize(20);
+        ExecutorConfig executorConfig = new ExecutorConfig();
+        executorConfig.setMode(ExecutorConfig.Mode.FIXED);
+
+        executorConfig.configureCarriers(poolConfig);
+        assertNull(System.getProperty(CARRIER_PARALLELISM));
+
+        executorConfig.setMode(ExecutorConfig.Mode.VIRTUAL);
+        executorConfig.configureCarriers(poolConfig);
+        assertEquals(Runtime.getRuntime().availableProcessors() + 20, Integer.parseInt(System.getProperty(CARRIER_PARALLELISM)));
+    }
+}
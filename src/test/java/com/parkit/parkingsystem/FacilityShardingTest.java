@@ -0,0 +1,116 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ExecutorConfig;
+import com.parkit.parkingsystem.config.ShardRouter;
+import com.parkit.parkingsystem.service.Facility;
+import com.parkit.parkingsystem.service.GateApiServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FacilityShardingTest {
+
+    private static final String[] PROPERTIES = {"parkit.db.backend", "parkit.facility.shardNorth.carSpots",
+            "parkit.facility.shardSouth.carSpots"};
+
+    private ShardRouter router;
+    private List<Facility> facilities;
+    private GateApiServer server;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        // Deux installations, chacune sur sa propre base H2
+        System.setProperty("parkit.db.backend", "embedded");
+        System.setProperty("parkit.facility.shardNorth.carSpots", "1");
+        System.setProperty("parkit.facility.shardSouth.carSpots", "2");
+        router = new ShardRouter(Arrays.asList("shardNorth", "shardSouth"));
+        facilities = new ArrayList<>();
+        for (String id : router.getFacilities()) {
+            facilities.add(Facility.open(id, router.route(id)));
+        }
+        Facility.shareVisitCounts(facilities);
+        ExecutorConfig executorConfig = new ExecutorConfig();
+        executorConfig.setThreads(2);
+        server = new GateApiServer(facilities, 0, executorConfig.newExecutor());
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+        for (Facility facility : facilities) {
+            facility.close();
+        }
+        router.shutdown();
+        for (String property : PROPERTIES) {
+            System.clearProperty(property);
+        }
+    }
+
+    @Test
+    public void eachFacilityHasItsOwnSpotsAndTickets() throws Exception {
+        assertEquals(201, request("POST", "/entry?facility=shardNorth&type=CAR&vehicle=AAA").getResponseCode());
+        // La seule place voiture du nord est prise, le sud a encore les siennes
+        assertEquals(409, request("POST", "/entry?facility=shardNorth&type=CAR&vehicle=BBB").getResponseCode());
+        assertEquals(201, request("POST", "/entry?facility=shardSouth&type=CAR&vehicle=BBB").getResponseCode());
+
+        // Le ticket de AAA n'existe que dans la base du nord
+        assertEquals(404, request("POST", "/exit?facility=shardSouth&vehicle=AAA").getResponseCode());
+        assertEquals(200, request("POST", "/exit?facility=shardNorth&vehicle=AAA").getResponseCode());
+
+        HttpURLConnection status = request("GET", "/status?facility=shardSouth");
+        assertEquals(200, status.getResponseCode());
+        assertEquals("{\"available\":{\"CAR\":1,\"BIKE\":2},\"occupied\":{\"CAR\":1,\"BIKE\":0}}",
+                body(status.getInputStream()));
+    }
+
+    @Test
+    public void visitsOfEveryFacilityCountForTheDiscount() throws Exception {
+        assertEquals(201, request("POST", "/entry?facility=shardNorth&type=CAR&vehicle=VISITOR").getResponseCode());
+        assertEquals(200, request("POST", "/exit?facility=shardNorth&vehicle=VISITOR").getResponseCode());
+
+        // Deuxième visite, dans l'autre installation : client régulier quand même
+        HttpURLConnection entry = request("POST", "/entry?facility=shardSouth&type=CAR&vehicle=VISITOR");
+        assertEquals(201, entry.getResponseCode());
+        assertTrue(body(entry.getInputStream()).contains("\"visitCount\":2"));
+    }
+
+    @Test
+    public void requestsMustNameAKnownFacility() throws Exception {
+        assertEquals(400, request("POST", "/entry?type=CAR&vehicle=AAA").getResponseCode());
+        assertEquals(404, request("POST", "/entry?facility=west&type=CAR&vehicle=AAA").getResponseCode());
+        assertEquals(400, request("GET", "/status").getResponseCode());
+
+        String metrics = body(request("GET", "/metrics").getInputStream());
+        assertTrue(metrics.contains("parkit_pool_shardNorth_active "));
+        assertTrue(metrics.contains("parkit_occupancy_shardSouth_available_CAR 2\n"));
+    }
+
+    private HttpURLConnection request(String method, String path) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static String body(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -155,4 +155,32 @@ public class FareCalculatorServiceTest {
 
         assertEquals(0.95, ticket.getPrice(), 0.01);
     }
+
+    /**
+     * API primitive en centimes : mêmes règles, arrondi au centime.
+     */
+    @ParameterizedTest
+    @CsvSource({
+            "CAR, 30, false, 0",
+            "CAR, 31, false, 78",    // 77,5 centimes arrondis
+            "BIKE, 31, false, 52",
+            "CAR, 60, false, 150",
+            "CAR, 60, true, 143",    // 142,5 centimes arrondis
+            "BIKE, 60, true, 95",
+            "CAR, 1440, false, 3600"
+    })
+    public void calculateFareCents(String vehicleType, long durationInMinutes, boolean discount, long expectedCents) {
+        long outMillis = System.currentTimeMillis();
+        long inMillis = outMillis - durationInMinutes * 60 * 1000;
+
+        assertEquals(expectedCents, FareCalculatorService.calculateFareCents(inMillis, outMillis, ParkingType.valueOf(vehicleType), discount));
+    }
+
+    @Test
+    public void calculateFareCentsWithOutTimeBeforeInTime() {
+        long now = System.currentTimeMillis();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> FareCalculatorService.calculateFareCents(now, now - 1, ParkingType.CAR, false));
+    }
 }
@@ -0,0 +1,201 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ExecutorConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.GateApiServer;
+import com.parkit.parkingsystem.service.OccupancyService;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class GateApiServerTest {
+
+    @Mock
+    private ParkingService parkingService;
+
+    private ParkingSpotDAO parkingSpotDAO;
+    private GateApiServer server;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.parkingSpotIndex.clear();
+        parkingSpotDAO.parkingSpotIndex.register(1, ParkingType.CAR, true);
+        parkingSpotDAO.parkingSpotIndex.register(2, ParkingType.CAR, false);
+        parkingSpotDAO.parkingSpotIndex.register(3, ParkingType.BIKE, true);
+        parkingSpotDAO.parkingSpotIndex.markLoaded();
+        ExecutorConfig executorConfig = new ExecutorConfig();
+        executorConfig.setThreads(2);
+        server = new GateApiServer(parkingService, new OccupancyService(parkingSpotDAO), 0, executorConfig.newExecutor());
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void entryReturnsTheReservedSpot() throws Exception {
+        Ticket ticket = new Ticket();
+        ticket.setId(7);
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setInTime(new Date(1000));
+        ticket.setVisitCount(2);
+        when(parkingService.processIncomingVehicle(ParkingType.CAR, "ABCDEF")).thenReturn(ticket);
+
+        HttpURLConnection connection = request("POST", "/entry?type=CAR&vehicle=ABCDEF");
+
+        assertEquals(201, connection.getResponseCode());
+        assertEquals("{\"ticketId\":7,\"parkingNumber\":1,\"vehicle\":\"ABCDEF\",\"inTime\":1000,\"visitCount\":2}",
+                body(connection.getInputStream()));
+    }
+
+    @Test
+    public void entryIsRefusedWhenParkingIsFull() throws Exception {
+        when(parkingService.processIncomingVehicle(ParkingType.BIKE, "ABCDEF")).thenReturn(null); // Parking plein
+
+        assertEquals(409, request("POST", "/entry?type=BIKE&vehicle=ABCDEF").getResponseCode());
+    }
+
+    @Test
+    public void invalidEntryIsRejectedWithoutCallingTheService() throws Exception {
+        assertEquals(400, request("POST", "/entry?type=TRUCK&vehicle=ABCDEF").getResponseCode());
+        assertEquals(400, request("POST", "/entry?type=CAR").getResponseCode());
+        assertEquals(405, request("GET", "/entry?type=CAR&vehicle=ABCDEF").getResponseCode());
+        verifyZeroInteractions(parkingService);
+    }
+
+    @Test
+    public void malformedOrOversizedRequestIsRejectedWith400() throws Exception {
+        assertEquals(400, request("POST", "/entry?type=CAR&vehicle=AB%2").getResponseCode()); // Échappement tronqué
+        assertEquals(400, request("POST", "/entry?type=CAR&vehicle=ABCDEFGHIJK").getResponseCode()); // Plus de 10 caractères
+        assertEquals(400, request("POST", "/exit?vehicle=ABCDEFGHIJK").getResponseCode());
+        verifyZeroInteractions(parkingService);
+    }
+
+    @Test
+    public void controlCharactersAreEscapedInJson() throws Exception {
+        HttpURLConnection connection = request("POST", "/exit?vehicle=AB%01%0A%22");
+
+        assertEquals(404, connection.getResponseCode());
+        assertEquals("{\"error\":\"No open ticket for vehicle AB\\u0001\\u000a\\\"\"}", body(connection.getErrorStream()));
+    }
+
+    @Test
+    public void requestIsAnswered503WhenTheWorkersAreSaturated() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(parkingService.processExitingVehicle("ABCDEF")).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        });
+        ExecutorConfig executorConfig = new ExecutorConfig();
+        executorConfig.setThreads(1);
+        executorConfig.setQueueCapacity(1);
+        GateApiServer saturated = new GateApiServer(parkingService, new OccupancyService(parkingSpotDAO), 0,
+                executorConfig.newExecutor());
+        saturated.start();
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            // Une requête occupe le seul thread, une autre remplit la file
+            List<Future<Integer>> busy = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                busy.add(clients.submit(() -> request(saturated, "POST", "/exit?vehicle=ABCDEF").getResponseCode()));
+                Thread.sleep(200);
+            }
+
+            HttpURLConnection connection = request(saturated, "GET", "/status");
+            assertEquals(503, connection.getResponseCode());
+            assertEquals("1", connection.getHeaderField("Retry-After"));
+
+            release.countDown();
+            for (Future<Integer> status : busy) {
+                assertEquals(404, (int) status.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            release.countDown();
+            clients.shutdownNow();
+            saturated.stop(0);
+        }
+    }
+
+    @Test
+    public void exitReturnsThePriceOr404() throws Exception {
+        Ticket ticket = new Ticket();
+        ticket.setId(7);
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, true));
+        ticket.setOutTime(new Date(2000));
+        ticket.setPrice(1.43);
+        ticket.setDiscountPercent(5);
+        when(parkingService.processExitingVehicle("ABCDEF")).thenReturn(ticket);
+
+        HttpURLConnection connection = request("POST", "/exit?vehicle=ABCDEF");
+
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(body(connection.getInputStream()).contains("\"price\":1.43,\"discountPercent\":5"));
+        assertEquals(404, request("POST", "/exit?vehicle=GHIJKL").getResponseCode()); // Aucun ticket ouvert
+    }
+
+    @Test
+    public void statusCountsFreeSpotsPerType() throws Exception {
+        HttpURLConnection connection = request("GET", "/status");
+
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("{\"available\":{\"CAR\":1,\"BIKE\":1},\"occupied\":{\"CAR\":1,\"BIKE\":0}}", body(connection.getInputStream()));
+    }
+
+    @Test
+    public void metricsAreExposedAsText() throws Exception {
+        HttpURLConnection connection = request("GET", "/metrics");
+
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("text/plain"));
+        assertTrue(body(connection.getInputStream()).contains("parkit_occupancy_available_CAR 1\n"));
+    }
+
+    private HttpURLConnection request(String method, String path) throws Exception {
+        return request(server, method, path);
+    }
+
+    private static HttpURLConnection request(GateApiServer server, String method, String path) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static String body(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
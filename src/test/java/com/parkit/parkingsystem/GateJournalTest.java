@@ -0,0 +1,99 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.GateJournal;
+import com.parkit.parkingsystem.model.GateEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GateJournalTest {
+
+    private Path journalDir;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        journalDir = Files.createTempDirectory("gate-journal");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(journalDir);
+    }
+
+    @Test
+    public void unacknowledgedEventsSurviveARestart() throws Exception {
+        GateJournal journal = new GateJournal(journalDir);
+        long first = journal.append(GateEvent.entry("ABCDEF", ParkingType.CAR, 1000L));
+        GateEvent exit = GateEvent.exit("GHIJKL", 2000L);
+        exit.setParkingNumber(4);
+        exit.setPrice(1.5);
+        journal.append(exit);
+        journal.sync(journal.acknowledge(first));
+        journal.close();
+
+        List<GateJournal.Entry> entries = new GateJournal(journalDir).getUnacknowledged();
+
+        assertEquals(1, entries.size());
+        GateEvent replayed = entries.get(0).getEvent();
+        assertEquals(GateEvent.Type.EXIT, replayed.getType());
+        assertEquals("GHIJKL", replayed.getVehicleRegNumber());
+        assertNull(replayed.getParkingType());
+        assertEquals(4, replayed.getParkingNumber());
+        assertEquals(2000L, replayed.getTime());
+        assertEquals(1.5, replayed.getPrice());
+    }
+
+    @Test
+    public void recordTornByACrashIsDropped() throws Exception {
+        GateJournal journal = new GateJournal(journalDir);
+        journal.sync(journal.append(GateEvent.entry("ABCDEF", ParkingType.CAR, 1000L)));
+        journal.close();
+        Path segment;
+        try (Stream<Path> files = Files.list(journalDir)) {
+            segment = files.findFirst().get();
+        }
+        Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND); // Écriture interrompue
+
+        journal = new GateJournal(journalDir);
+        assertEquals(1, journal.getUnacknowledged().size());
+        journal.sync(journal.append(GateEvent.entry("GHIJKL", ParkingType.BIKE, 2000L)));
+        journal.close();
+
+        List<GateJournal.Entry> entries = new GateJournal(journalDir).getUnacknowledged();
+        assertEquals(2, entries.size());
+        assertEquals("GHIJKL", entries.get(1).getEvent().getVehicleRegNumber());
+    }
+
+    @Test
+    public void fullSegmentsAreCompactedIntoANewOne() throws Exception {
+        GateJournal journal = new GateJournal(journalDir, 1024);
+        long stuck = journal.append(GateEvent.entry("STUCK", ParkingType.CAR, 1L));
+        for (int i = 0; i < 1000; i++) {
+            long sequence = journal.append(GateEvent.entry("V" + i, ParkingType.CAR, i));
+            journal.acknowledge(sequence);
+            assertTrue(journal.getSegmentCount() <= 1);
+        }
+        journal.close();
+
+        long journalBytes;
+        try (Stream<Path> files = Files.list(journalDir)) {
+            journalBytes = files.mapToLong(file -> file.toFile().length()).sum();
+        }
+        assertTrue(journalBytes < 2048, "Journal not compacted: " + journalBytes + " bytes");
+        List<GateJournal.Entry> entries = new GateJournal(journalDir).getUnacknowledged();
+        assertEquals(1, entries.size());
+        assertEquals(stuck, entries.get(0).getSequence()); // L'événement non acquitté est conservé
+    }
+}
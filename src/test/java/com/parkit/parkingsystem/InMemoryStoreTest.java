@@ -0,0 +1,111 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotDAO;
+import com.parkit.parkingsystem.dao.InMemoryStore;
+import com.parkit.parkingsystem.dao.InMemoryTicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryStoreTest {
+
+    private Path storeDir;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        storeDir = Files.createTempDirectory("memory-store");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(storeDir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(storeDir);
+    }
+
+    @Test
+    public void entryAndExitRunWithoutDataBase() throws Exception {
+        InMemoryStore store = new InMemoryStore(storeDir, 3, 2);
+        InMemoryParkingSpotDAO parkingSpotDAO = new InMemoryParkingSpotDAO(store);
+        InMemoryTicketDAO ticketDAO = new InMemoryTicketDAO(store);
+        ParkingService parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+
+        Ticket entry = parkingService.processIncomingVehicle(ParkingType.BIKE, "ABCDEF");
+        assertEquals(4, entry.getParkingSpot().getId()); // Première place BIKE après les 3 CAR
+        assertEquals(1, entry.getVisitCount());
+        assertEquals(1, (int) parkingSpotDAO.countAvailableSpots().get(ParkingType.BIKE));
+
+        Ticket exit = parkingService.processExitingVehicle("ABCDEF");
+        assertNotNull(exit.getOutTime());
+        assertEquals(2, (int) parkingSpotDAO.countAvailableSpots().get(ParkingType.BIKE));
+        assertNull(ticketDAO.getOpenTicket("ABCDEF"));
+        assertNotNull(ticketDAO.getTicket("ABCDEF").getOutTime());
+        assertEquals(1, ticketDAO.getNbTicket("ABCDEF"));
+        assertNull(parkingService.processExitingVehicle("ABCDEF"));
+        store.close();
+    }
+
+    @Test
+    public void stateIsRestoredFromSnapshotAndLogAfterACrash() throws Exception {
+        InMemoryStore store = new InMemoryStore(storeDir, 3, 2);
+        InMemoryTicketDAO ticketDAO = new InMemoryTicketDAO(store);
+        ParkingService parkingService = new ParkingService(new InMemoryParkingSpotDAO(store), ticketDAO);
+        parkingService.processIncomingVehicle(ParkingType.CAR, "PARKED");
+        store.snapshot();
+        parkingService.processIncomingVehicle(ParkingType.CAR, "GONE");
+        Ticket closed = ticketDAO.getOpenTicket("GONE");
+        closed.setOutTime(new Date(closed.getInTime().getTime() + 3_600_000L));
+        closed.setPrice(1.5);
+        ticketDAO.updateTicket(closed);
+        store.flush(); // Arrêt brutal : pas de close()
+
+        InMemoryStore restored = new InMemoryStore(storeDir, 3, 2);
+        InMemoryParkingSpotDAO parkingSpotDAO = new InMemoryParkingSpotDAO(restored);
+        InMemoryTicketDAO restoredTickets = new InMemoryTicketDAO(restored);
+
+        Ticket parked = restoredTickets.getOpenTicketWithVisitCount("PARKED");
+        assertEquals(1, parked.getParkingSpot().getId());
+        assertEquals(ParkingType.CAR, parked.getParkingSpot().getParkingType());
+        assertEquals(1, parked.getVisitCount());
+        Ticket gone = restoredTickets.getTicket("GONE");
+        assertEquals(1.5, gone.getPrice());
+        assertEquals(closed.getOutTime(), gone.getOutTime());
+        assertNull(restoredTickets.getOpenTicket("GONE"));
+        assertEquals(1, (int) parkingSpotDAO.countAvailableSpots().get(ParkingType.CAR)); // Place 2 non libérée
+        assertEquals(3, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+
+        Ticket next = new ParkingService(parkingSpotDAO, restoredTickets).processIncomingVehicle(ParkingType.CAR, "NEXT");
+        assertTrue(next.getId() > gone.getId());
+        restored.close();
+    }
+
+    @Test
+    public void recordTornByACrashIsDropped() throws Exception {
+        InMemoryStore store = new InMemoryStore(storeDir, 1, 0);
+        InMemoryParkingSpotDAO parkingSpotDAO = new InMemoryParkingSpotDAO(store);
+        new ParkingService(parkingSpotDAO, new InMemoryTicketDAO(store)).processIncomingVehicle(ParkingType.CAR, "ABCDEF");
+        store.flush();
+        try (Stream<Path> logs = Files.list(storeDir)) {
+            Path log = logs.filter(path -> path.getFileName().toString().startsWith("events-")).findFirst().get();
+            Files.write(log, new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+        }
+
+        InMemoryStore restored = new InMemoryStore(storeDir, 1, 0);
+
+        assertNotNull(new InMemoryTicketDAO(restored).getOpenTicket("ABCDEF"));
+        assertEquals(0, (int) new InMemoryParkingSpotDAO(restored).countAvailableSpots().get(ParkingType.CAR));
+        restored.close();
+    }
+}
@@ -0,0 +1,147 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.BatchResult;
+import com.parkit.parkingsystem.dao.GateJournal;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.GateEvent;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.JournaledParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class JournaledParkingServiceTest {
+
+    private Path journalDir;
+    private GateJournal journal;
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+    private JournaledParkingService parkingService;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        journalDir = Files.createTempDirectory("gate-journal");
+        journal = new GateJournal(journalDir);
+        parkingSpotDAO = mock(ParkingSpotDAO.class);
+        ticketDAO = mock(TicketDAO.class);
+        when(ticketDAO.beginTransaction()).thenReturn(mock(Connection.class));
+        when(parkingSpotDAO.reserveNextAvailable(any(), eq(ParkingType.CAR)))
+                .thenAnswer(invocation -> new ParkingSpot(1, ParkingType.CAR, false));
+        when(parkingSpotDAO.reserveNextAvailable(any(), anyList())).thenAnswer(invocation -> {
+            List<ParkingSpot> spots = new ArrayList<>();
+            for (ParkingType parkingType : invocation.<List<ParkingType>>getArgument(1)) {
+                spots.add(new ParkingSpot(spots.size() + 1, parkingType, false));
+            }
+            return spots;
+        });
+        parkingService = new JournaledParkingService(null, parkingSpotDAO, ticketDAO, journal);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        journal.close();
+        try (Stream<Path> files = Files.list(journalDir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(journalDir);
+    }
+
+    @Test
+    public void eventIsAcknowledgedOnceTheGateIsAnswered() throws Exception {
+        when(ticketDAO.saveTicket(any(), any(Ticket.class))).thenReturn(true);
+        when(parkingSpotDAO.reserveNextAvailable(any(), eq(ParkingType.CAR)))
+                .thenAnswer(invocation -> new ParkingSpot(1, ParkingType.CAR, false))
+                .thenReturn(null);
+
+        assertNotNull(parkingService.processIncomingVehicle(ParkingType.CAR, "ABCDEF"));
+        assertNull(parkingService.processIncomingVehicle(ParkingType.CAR, "GHIJKL")); // Parking complet
+
+        assertTrue(journal.getUnacknowledged().isEmpty()); // Acceptée ou refusée, la réponse est définitive
+    }
+
+    @Test
+    public void failedWriteStaysJournaledAndIsRetriedBeforeTheNextEvent() throws Exception {
+        when(ticketDAO.saveTicket(any(), any(Ticket.class))).thenReturn(false).thenReturn(true);
+        List<String> replayed = new ArrayList<>();
+        when(ticketDAO.saveTickets(any(), anyList())).thenAnswer(invocation -> {
+            for (Ticket ticket : invocation.<List<Ticket>>getArgument(1)) {
+                replayed.add(ticket.getVehicleRegNumber());
+            }
+            return new BatchResult(0);
+        });
+        when(ticketDAO.updateTickets(any(), anyList())).thenReturn(new BatchResult(0));
+        when(parkingSpotDAO.updateParkings(any(), anyList())).thenReturn(new BatchResult(0));
+
+        assertThrows(Exception.class, () -> parkingService.processIncomingVehicle(ParkingType.CAR, "ABCDEF"));
+        assertEquals(1, journal.getUnacknowledged().size()); // Échec d'écriture : l'événement reste en attente
+        assertEquals(1, parkingService.getFailedCount());
+
+        assertNotNull(parkingService.processIncomingVehicle(ParkingType.CAR, "GHIJKL"));
+
+        assertEquals(1, replayed.size());
+        assertEquals("ABCDEF", replayed.get(0)); // Rejoué avant l'entrée suivante
+        assertEquals(0, parkingService.getFailedCount());
+        assertTrue(journal.getUnacknowledged().isEmpty());
+    }
+
+    @Test
+    public void recoverReplaysInterruptedEntriesOnlyOnce() throws Exception {
+        journal.append(GateEvent.entry("ABCDEF", ParkingType.CAR, 1000L)); // Déjà committée avant l'arrêt
+        journal.append(GateEvent.entry("GHIJKL", ParkingType.CAR, 2000L));
+        when(ticketDAO.getOpenTicketWithVisitCount("ABCDEF")).thenReturn(new Ticket());
+        List<String> saved = new ArrayList<>();
+        when(ticketDAO.saveTickets(any(), anyList())).thenAnswer(invocation -> {
+            for (Ticket ticket : invocation.<List<Ticket>>getArgument(1)) {
+                saved.add(ticket.getVehicleRegNumber());
+            }
+            return new BatchResult(0);
+        });
+        when(ticketDAO.updateTickets(any(), anyList())).thenReturn(new BatchResult(0));
+        when(parkingSpotDAO.updateParkings(any(), anyList())).thenReturn(new BatchResult(0));
+
+        int applied = parkingService.recover();
+
+        assertEquals(1, applied);
+        assertEquals(1, saved.size());
+        assertEquals("GHIJKL", saved.get(0));
+        assertTrue(journal.getUnacknowledged().isEmpty());
+    }
+
+    @Test
+    public void eventsStayJournaledWhileTheDataBaseIsDown() throws Exception {
+        journal.append(GateEvent.entry("ABCDEF", ParkingType.CAR, 1000L));
+        when(ticketDAO.beginTransaction()).thenThrow(new SQLException("DB down"));
+
+        assertEquals(0, parkingService.recover());
+
+        assertEquals(1, journal.getUnacknowledged().size()); // Rejoué au prochain démarrage
+    }
+
+    @Test
+    public void recoverStopsAtTheFirstFailedChunk() throws Exception {
+        for (int i = 0; i < 501; i++) {
+            journal.append(GateEvent.entry("V" + i, ParkingType.CAR, i));
+        }
+        when(ticketDAO.beginTransaction()).thenThrow(new SQLException("DB down"));
+
+        assertEquals(0, parkingService.recover());
+
+        verify(ticketDAO, times(1)).beginTransaction(); // Le second lot n'est pas tenté
+        assertEquals(501, journal.getUnacknowledged().size());
+    }
+}
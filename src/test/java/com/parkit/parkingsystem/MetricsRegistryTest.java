@@ -0,0 +1,79 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.Timer;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void percentilesAreWithinThreePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000L, histogram.getMax());
+        assertEquals(50_000_000L, histogram.getValueAtPercentile(50), 50_000_000L * 0.03);
+        assertEquals(99_000_000L, histogram.getValueAtPercentile(99), 99_000_000L * 0.03);
+        assertEquals(100_000_000L, histogram.getValueAtPercentile(100));
+        assertEquals(50_000_500.0, histogram.getMean(), 1);
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(i);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(800_000, histogram.getCount()); // Aucune mesure perdue sans verrou
+        assertEquals(99_999, histogram.getMax());
+    }
+
+    @Test
+    public void timersAreExposedAsTextAndThroughJmx() throws Exception {
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        Timer timer = registry.timer("test.operation");
+        timer.stop(timer.start());
+        timer.error();
+        registry.counter("test.events").add(3);
+
+        String text = registry.toText();
+        registry.registerMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(MetricsRegistry.OBJECT_NAME);
+
+        assertTrue(text.contains("parkit_test_operation_seconds_count 1\n"));
+        assertTrue(text.contains("parkit_test_operation_errors_total 1\n"));
+        assertTrue(text.contains("parkit_test_events_total 3\n"));
+        assertEquals(1L, server.getAttribute(name, "test.operation.count"));
+        assertEquals(3L, server.getAttribute(name, "test.events"));
+        assertThrows(ReflectionException.class, () -> server.invoke(name, "reset", null, null)); // Aucune opération
+    }
+}
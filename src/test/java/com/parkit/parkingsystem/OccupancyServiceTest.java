@@ -0,0 +1,67 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotIndex;
+import com.parkit.parkingsystem.service.OccupancyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class OccupancyServiceTest {
+
+    private ParkingSpotDAO parkingSpotDAO;
+    private OccupancyService occupancyService;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        parkingSpotDAO = mock(ParkingSpotDAO.class);
+        parkingSpotDAO.parkingSpotIndex = new ParkingSpotIndex();
+        parkingSpotDAO.parkingSpotIndex.register(1, ParkingType.CAR, true);
+        parkingSpotDAO.parkingSpotIndex.register(2, ParkingType.CAR, true);
+        parkingSpotDAO.parkingSpotIndex.register(3, ParkingType.CAR, false);
+        parkingSpotDAO.parkingSpotIndex.register(4, ParkingType.BIKE, true);
+        parkingSpotDAO.parkingSpotIndex.markLoaded();
+        occupancyService = new OccupancyService(parkingSpotDAO);
+    }
+
+    @Test
+    public void countersFollowEveryChangeOfTheIndex() {
+        assertEquals(2, occupancyService.getAvailable(ParkingType.CAR));
+        assertEquals(3, occupancyService.getCapacity(ParkingType.CAR));
+
+        parkingSpotDAO.parkingSpotIndex.claimLowest(ParkingType.CAR); // Entrée
+        parkingSpotDAO.parkingSpotIndex.setAvailable(3, true); // Sortie
+        parkingSpotDAO.parkingSpotIndex.setAvailable(3, true); // Déjà libre, sans effet
+
+        assertEquals(2, occupancyService.getAvailable(ParkingType.CAR));
+        assertEquals(1, occupancyService.getOccupied(ParkingType.CAR));
+        assertEquals(0, occupancyService.getOccupied(ParkingType.BIKE));
+        verifyNoMoreInteractions(parkingSpotDAO); // Aucune requête en base
+    }
+
+    @Test
+    public void indexIsReloadedWhenTheTableDriftsTwiceInARow() {
+        Map<ParkingType, Integer> counted = new EnumMap<>(ParkingType.class);
+        counted.put(ParkingType.CAR, 1);
+        counted.put(ParkingType.BIKE, 1);
+        when(parkingSpotDAO.countAvailableSpots()).thenReturn(counted);
+        when(parkingSpotDAO.loadAvailableSpots()).thenAnswer(invocation -> {
+            parkingSpotDAO.parkingSpotIndex.setAvailable(1, false); // Place prise par un autre serveur
+            return true;
+        });
+
+        assertFalse(occupancyService.reconcile()); // Peut être une transaction en cours
+        verify(parkingSpotDAO, never()).loadAvailableSpots();
+        assertFalse(occupancyService.reconcile());
+        verify(parkingSpotDAO, times(1)).loadAvailableSpots();
+
+        assertTrue(occupancyService.reconcile());
+        assertEquals(1, occupancyService.getAvailable(ParkingType.CAR));
+    }
+}
@@ -1,8 +1,10 @@
 package com.parkit.parkingsystem;
 
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.BatchResult;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.GateEvent;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.service.ParkingService;
@@ -10,10 +12,17 @@ import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -46,39 +55,76 @@ public class ParkingServiceTest {
         ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
 
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-        when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket); // Récupération du ticket
-        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(1); // Client non récurrent
-        when(ticketDAO.updateTicket(ticket)).thenReturn(true); // Mise à jour OK
-        when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true); // Libération OK
+        ticket.setVisitCount(1); // Client non récurrent
+        when(ticketDAO.getOpenTicketWithVisitCount(any(), eq("ABCDEF"))).thenReturn(ticket); // Récupération du ticket
+        when(ticketDAO.updateTicket(any(), eq(ticket))).thenReturn(true); // Mise à jour OK
+        when(parkingSpotDAO.updateParking(any(), any(ParkingSpot.class))).thenReturn(true); // Libération OK
 
         // Act
         parkingService.processExitingVehicle();
 
         // Assert
-        verify(ticketDAO, times(1)).getTicket("ABCDEF"); // Vérification de l'accès au ticket
-        verify(ticketDAO, times(1)).updateTicket(ticket); // Vérification de la mise à jour
-        verify(parkingSpotDAO, times(1)).updateParking(any(ParkingSpot.class)); // Vérification de la libération de la place
+        verify(ticketDAO, times(1)).getOpenTicketWithVisitCount(any(), eq("ABCDEF")); // Vérification de l'accès au ticket
+        verify(ticketDAO, times(1)).updateTicket(any(), eq(ticket)); // Vérification de la mise à jour
+        verify(parkingSpotDAO, times(1)).updateParking(any(), any(ParkingSpot.class)); // Vérification de la libération de la place
+        verify(ticketDAO, times(1)).commitTransaction(any()); // Sortie validée en une seule transaction
+        verify(parkingSpotDAO, times(1)).releaseCommitted(anyList()); // Place rendue à l'index après le commit
     }
 
     @Test
     public void testProcessIncomingVehicle() throws Exception {
         // Arrange
         when(inputReaderUtil.readSelection()).thenReturn(1); // Choix 'CAR'
-        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1); // Place disponible
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF"); // Plaque saisie
-        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true); // Sauvegarde ticket OK
+        when(parkingSpotDAO.reserveNextAvailable(any(), eq(ParkingType.CAR))).thenReturn(new ParkingSpot(1, ParkingType.CAR, false)); // Place réservée
+        when(ticketDAO.saveTicket(any(), any(Ticket.class))).thenReturn(true); // Sauvegarde ticket OK
 
         // Act
         parkingService.processIncomingVehicle();
 
         // Assert
         verify(inputReaderUtil, times(1)).readSelection();
-        verify(parkingSpotDAO, times(1)).getNextAvailableSlot(ParkingType.CAR); // Vérification de la recherche de place
-        verify(parkingSpotDAO, times(1)).updateParking(any(ParkingSpot.class)); // Vérification de la réservation de place
-        verify(ticketDAO, times(1)).saveTicket(any(Ticket.class)); // Vérification de la sauvegarde du ticket
+        verify(parkingSpotDAO, times(1)).reserveNextAvailable(any(), eq(ParkingType.CAR)); // Vérification de la réservation de place
+        verify(parkingSpotDAO, never()).updateParking(any(), any(ParkingSpot.class)); // La réservation marque déjà la place occupée
+        verify(ticketDAO, times(1)).saveTicket(any(), any(Ticket.class)); // Vérification de la sauvegarde du ticket
+        verify(ticketDAO, times(1)).commitTransaction(any()); // Entrée validée en une seule transaction
 
     }
 
+    @Test
+    public void testProcessIncomingVehicleParkingFull() throws Exception {
+        // Arrange
+        when(inputReaderUtil.readSelection()).thenReturn(1); // Choix 'CAR'
+        when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+        when(parkingSpotDAO.reserveNextAvailable(any(), eq(ParkingType.CAR))).thenReturn(null); // Plus aucune place
+
+        // Act
+        parkingService.processIncomingVehicle();
+
+        // Assert
+        verify(ticketDAO, never()).saveTicket(any(), any(Ticket.class)); // Aucun ticket sans place
+    }
+
+    @Test
+    public void testProcessIncomingVehicleRollsBackWhenTicketNotSaved() throws Exception {
+        // Arrange
+        Connection connection = mock(Connection.class);
+        ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
+        when(inputReaderUtil.readSelection()).thenReturn(1); // Choix 'CAR'
+        when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+        when(ticketDAO.beginTransaction()).thenReturn(connection);
+        when(parkingSpotDAO.reserveNextAvailable(connection, ParkingType.CAR)).thenReturn(parkingSpot);
+        when(ticketDAO.saveTicket(eq(connection), any(Ticket.class))).thenReturn(false); // Sauvegarde échoue
+
+        // Act
+        parkingService.processIncomingVehicle();
+
+        // Assert
+        verify(ticketDAO, times(1)).rollbackTransaction(connection); // Réservation annulée avec la transaction
+        verify(ticketDAO, never()).commitTransaction(any());
+        verify(parkingSpotDAO, times(1)).cancelReservation(parkingSpot); // Place rendue à l'index
+    }
+
     @Test
     public void processExitingVehicleTestUnableUpdate() throws Exception {
         // Arrange
@@ -89,16 +135,17 @@ public class ParkingServiceTest {
         ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
 
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF"); // Plaque saisie
-        when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket); // Récupération ticket valide
-        when(ticketDAO.updateTicket(ticket)).thenReturn(false); // Mise à jour échoue
+        when(ticketDAO.getOpenTicketWithVisitCount(any(), eq("ABCDEF"))).thenReturn(ticket); // Récupération ticket valide
+        when(ticketDAO.updateTicket(any(), eq(ticket))).thenReturn(false); // Mise à jour échoue
 
         // Act
         parkingService.processExitingVehicle();
 
         // Assert
-        verify(ticketDAO, times(1)).getTicket("ABCDEF"); // Vérif que le ticket est récupéré
-        verify(ticketDAO, times(1)).updateTicket(ticket); // Mise à jour tentée
-        verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class)); // Pas de libération de place
+        verify(ticketDAO, times(1)).getOpenTicketWithVisitCount(any(), eq("ABCDEF")); // Vérif que le ticket est récupéré
+        verify(ticketDAO, times(1)).updateTicket(any(), eq(ticket)); // Mise à jour tentée
+        verify(parkingSpotDAO, never()).updateParking(any(), any(ParkingSpot.class)); // Pas de libération de place
+        verify(ticketDAO, never()).commitTransaction(any());
     }
 
     @Test
@@ -140,4 +187,92 @@ public class ParkingServiceTest {
         // Assert
         assertNull(result); // Vérifie que la saisie incorrecte retourne null
     }
+
+    @Test
+    public void replayGateEventsInsertsEntryBeforeLookingUpItsExit() throws Exception {
+        // Arrange : une entrée puis la sortie du même véhicule dans le même lot
+        long inTime = System.currentTimeMillis() - (60 * 60 * 1000);
+        List<GateEvent> events = Arrays.asList(
+                GateEvent.entry("ABCDEF", ParkingType.CAR, inTime),
+                GateEvent.exit("ABCDEF", System.currentTimeMillis()));
+        Ticket openTicket = new Ticket();
+        openTicket.setVehicleRegNumber("ABCDEF");
+        openTicket.setInTime(new Date(inTime));
+        openTicket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        openTicket.setVisitCount(1);
+
+        when(parkingSpotDAO.reserveNextAvailable(any(), eq(Collections.singletonList(ParkingType.CAR))))
+                .thenReturn(Collections.singletonList(new ParkingSpot(1, ParkingType.CAR, false))); // Réservation groupée
+        when(ticketDAO.saveTickets(any(), anyList())).thenReturn(new BatchResult(0));
+        when(ticketDAO.getOpenTicketWithVisitCount(any(), eq("ABCDEF"))).thenReturn(openTicket);
+        when(ticketDAO.updateTickets(any(), anyList())).thenReturn(new BatchResult(0));
+        when(parkingSpotDAO.updateParkings(any(), anyList())).thenReturn(new BatchResult(0));
+
+        // Act
+        List<GateEvent> left = parkingService.replayGateEvents(events);
+
+        // Assert
+        assertTrue(left.isEmpty());
+        InOrder inOrder = inOrder(ticketDAO);
+        inOrder.verify(ticketDAO).saveTickets(any(), anyList()); // Ticket inséré avant d'être recherché
+        inOrder.verify(ticketDAO).getOpenTicketWithVisitCount(any(), eq("ABCDEF"));
+        inOrder.verify(ticketDAO).updateTickets(any(), anyList());
+        inOrder.verify(ticketDAO).commitTransaction(any());
+        assertEquals(1.5, openTicket.getPrice(), 0.01);
+    }
+
+    @Test
+    public void replayGateEventsGivesTheSpotOfAnEarlierExitToAnEntryOfAFullLot() throws Exception {
+        // Arrange : parking plein, la sortie de ABCDEF précède l'entrée de GHIJKL
+        long now = System.currentTimeMillis();
+        List<GateEvent> events = Arrays.asList(
+                GateEvent.exit("ABCDEF", now - 1000),
+                GateEvent.entry("GHIJKL", ParkingType.CAR, now));
+        Ticket openTicket = new Ticket();
+        openTicket.setVehicleRegNumber("ABCDEF");
+        openTicket.setInTime(new Date(now - (60 * 60 * 1000)));
+        openTicket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        openTicket.setVisitCount(1);
+
+        when(parkingSpotDAO.reserveNextAvailable(any(), eq(Collections.singletonList(ParkingType.CAR))))
+                .thenReturn(Collections.singletonList((ParkingSpot) null)); // Aucune place au départ
+        when(ticketDAO.getOpenTicketWithVisitCount(any(), eq("ABCDEF"))).thenReturn(openTicket);
+        when(ticketDAO.updateTickets(any(), anyList())).thenReturn(new BatchResult(0));
+        when(parkingSpotDAO.updateParkings(any(), anyList())).thenReturn(new BatchResult(0));
+        List<Ticket> saved = new ArrayList<>();
+        when(ticketDAO.saveTickets(any(), anyList())).thenAnswer(invocation -> {
+            saved.addAll(invocation.getArgument(1)); // La liste est vidée après l'insertion
+            return new BatchResult(0);
+        });
+
+        // Act
+        List<GateEvent> left = parkingService.replayGateEvents(events);
+
+        // Assert
+        assertTrue(left.isEmpty());
+        assertEquals(1, saved.size());
+        assertEquals("GHIJKL", saved.get(0).getVehicleRegNumber());
+        assertEquals(1, saved.get(0).getParkingSpot().getId());
+        InOrder inOrder = inOrder(ticketDAO, parkingSpotDAO);
+        inOrder.verify(parkingSpotDAO).updateParkings(any(), argThat(spots -> spots.size() == 1
+                && spots.get(0).getId() == 1 && spots.get(0).isAvailable())); // Place libérée par la sortie
+        inOrder.verify(parkingSpotDAO).updateParkings(any(), argThat(spots -> spots.size() == 1
+                && spots.get(0).getId() == 1 && !spots.get(0).isAvailable())); // Puis reprise par l'entrée
+        inOrder.verify(ticketDAO).saveTickets(any(), anyList());
+        inOrder.verify(ticketDAO).commitTransaction(any());
+        verify(parkingSpotDAO).releaseCommitted(argThat(List::isEmpty)); // La place reste occupée dans l'index
+    }
+
+    @Test
+    public void replayGateEventsKeepsTheFailedChunkForRetry() throws Exception {
+        List<GateEvent> events = Arrays.asList(
+                GateEvent.entry("ABCDEF", ParkingType.CAR, System.currentTimeMillis()),
+                GateEvent.entry("GHIJKL", ParkingType.CAR, System.currentTimeMillis()));
+        when(ticketDAO.beginTransaction()).thenThrow(new SQLException("DB down"));
+
+        List<GateEvent> left = parkingService.replayGateEvents(events);
+
+        assertEquals(events, left); // Rien n'est perdu, tout est à rejouer
+        verify(ticketDAO, never()).saveTickets(any(), anyList());
+    }
 }
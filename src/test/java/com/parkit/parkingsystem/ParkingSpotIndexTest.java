@@ -0,0 +1,114 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParkingSpotIndexTest {
+
+    private ParkingSpotIndex parkingSpotIndex;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        parkingSpotIndex = new ParkingSpotIndex();
+    }
+
+    @Test
+    public void lowestFreeSpotIsAllocatedFirst() {
+        parkingSpotIndex.register(1, ParkingType.CAR, false);
+        parkingSpotIndex.register(2, ParkingType.CAR, true);
+        parkingSpotIndex.register(3, ParkingType.BIKE, true);
+        parkingSpotIndex.register(70, ParkingType.CAR, true); // Dans le deuxième mot
+        parkingSpotIndex.markLoaded();
+
+        assertEquals(2, parkingSpotIndex.lowestAvailable(ParkingType.CAR));
+        assertEquals(2, parkingSpotIndex.claimLowest(ParkingType.CAR));
+        assertEquals(70, parkingSpotIndex.claimLowest(ParkingType.CAR));
+        assertEquals(3, parkingSpotIndex.claimLowest(ParkingType.BIKE));
+        assertEquals(3, parkingSpotIndex.capacity(ParkingType.CAR));
+    }
+
+    @Test
+    public void releasedSpotIsAllocatedAgain() {
+        parkingSpotIndex.register(1, ParkingType.CAR, true);
+        parkingSpotIndex.register(2, ParkingType.CAR, true);
+        parkingSpotIndex.markLoaded();
+
+        assertEquals(1, parkingSpotIndex.claimLowest(ParkingType.CAR));
+        assertEquals(2, parkingSpotIndex.claimLowest(ParkingType.CAR));
+        assertTrue(parkingSpotIndex.setAvailable(1, true)); // Sortie
+        assertFalse(parkingSpotIndex.setAvailable(1, true)); // Déjà libre
+        assertFalse(parkingSpotIndex.setAvailable(99, true)); // Place inconnue
+
+        assertEquals(1, parkingSpotIndex.countAvailable(ParkingType.CAR));
+        assertEquals(1, parkingSpotIndex.claimLowest(ParkingType.CAR));
+    }
+
+    @Test
+    public void fullTypeReturnsZero() {
+        parkingSpotIndex.register(1, ParkingType.CAR, true);
+        parkingSpotIndex.register(2, ParkingType.BIKE, true);
+        parkingSpotIndex.markLoaded();
+
+        assertEquals(1, parkingSpotIndex.claimLowest(ParkingType.CAR));
+        assertEquals(0, parkingSpotIndex.claimLowest(ParkingType.CAR));
+        assertEquals(0, parkingSpotIndex.lowestAvailable(ParkingType.CAR));
+        assertEquals(0, parkingSpotIndex.countAvailable(ParkingType.CAR));
+        assertEquals(1, parkingSpotIndex.countAvailable(ParkingType.BIKE)); // L'autre type reste libre
+    }
+
+    @Test
+    public void indexIsEmptyUntilLoaded() {
+        parkingSpotIndex.register(1, ParkingType.CAR, true);
+
+        assertFalse(parkingSpotIndex.isLoaded());
+        assertEquals(0, parkingSpotIndex.claimLowest(ParkingType.CAR));
+        assertFalse(parkingSpotIndex.setAvailable(1, false));
+    }
+
+    @Test
+    public void concurrentClaimsNeverShareASpot() throws Exception {
+        int spots = 1000;
+        for (int number = 1; number <= spots; number++) {
+            parkingSpotIndex.register(number, ParkingType.CAR, true);
+        }
+        parkingSpotIndex.markLoaded();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<Integer>>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit((Callable<List<Integer>>) () -> {
+                    List<Integer> claimed = new ArrayList<>();
+                    int number;
+                    while ((number = parkingSpotIndex.claimLowest(ParkingType.CAR)) != 0) {
+                        claimed.add(number);
+                    }
+                    return claimed;
+                }));
+            }
+            Set<Integer> claimed = new HashSet<>();
+            for (Future<List<Integer>> future : futures) {
+                for (Integer number : future.get()) {
+                    assertTrue(claimed.add(number)); // Jamais deux fois la même place
+                }
+            }
+            assertEquals(spots, claimed.size());
+            assertEquals(0, parkingSpotIndex.countAvailable(ParkingType.CAR));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.EmbeddedDataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress test de la réservation concurrente : plusieurs "serveurs" (un ParkingSpotDAO chacun,
+ * avec son propre index mémoire) réservent en parallèle sur la même table parking simulée.
+ * Aucune place ne doit être attribuée deux fois.
+ */
+public class ParkingSpotReservationTest {
+
+    private static final int SPOT_COUNT = 2000;
+    private static final int NODE_COUNT = 2;
+    private static final int THREADS_PER_NODE = 8;
+
+    // Table parking simulée : numéros des places occupées. La mise à jour conditionnelle
+    // "where AVAILABLE = true" est atomique comme en base.
+    private Set<Integer> occupiedInDb;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        occupiedInDb = ConcurrentHashMap.newKeySet();
+    }
+
+    @Test
+    public void concurrentReservationsNeverAllocateTheSameSpotTwice() throws Exception {
+        List<ParkingSpotDAO> nodes = new ArrayList<>();
+        for (int i = 0; i < NODE_COUNT; i++) {
+            nodes.add(newNode());
+        }
+        ConcurrentLinkedQueue<Integer> reserved = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(NODE_COUNT * THREADS_PER_NODE);
+        List<Future<?>> futures = new ArrayList<>();
+        for (ParkingSpotDAO node : nodes) {
+            for (int t = 0; t < THREADS_PER_NODE; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ParkingSpot spot;
+                    while ((spot = node.reserveNextAvailable(ParkingType.CAR)) != null) {
+                        assertFalse(spot.isAvailable());
+                        reserved.add(spot.getId());
+                    }
+                    return null;
+                }));
+            }
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Set<Integer> distinct = ConcurrentHashMap.newKeySet();
+        for (Integer number : reserved) {
+            assertTrue(distinct.add(number), "Place " + number + " attribuée deux fois");
+        }
+        assertEquals(SPOT_COUNT, reserved.size()); // Toutes les places ont été attribuées
+        assertEquals(SPOT_COUNT, occupiedInDb.size());
+        for (ParkingSpotDAO node : nodes) {
+            assertNull(node.reserveNextAvailable(ParkingType.CAR)); // Parking plein
+        }
+    }
+
+    @Test
+    public void spotTakenElsewhereIsSkipped() {
+        ParkingSpotDAO node = newNode();
+        occupiedInDb.add(1); // Place déjà prise par un autre serveur
+
+        ParkingSpot spot = node.reserveNextAvailable(ParkingType.CAR);
+
+        assertEquals(2, spot.getId());
+        assertEquals(3, node.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    public void reservationOnlyReturnsSpotsOfTheRequestedType() {
+        ParkingSpotDAO node = newNode();
+
+        ParkingSpot spot = node.reserveNextAvailable(ParkingType.BIKE);
+
+        assertEquals(SPOT_COUNT + 1, spot.getId());
+        assertEquals(ParkingType.BIKE, spot.getParkingType());
+        assertEquals(1, node.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    public void batchReservationReplacesSpotsTakenElsewhere() throws Exception {
+        ParkingSpotDAO node = newNode();
+        occupiedInDb.add(2); // Prise par un autre serveur entre-temps
+
+        List<ParkingSpot> spots = node.reserveNextAvailable(node.dataBaseConfig.getConnection(),
+                Arrays.asList(ParkingType.CAR, ParkingType.CAR, ParkingType.BIKE, ParkingType.BIKE));
+
+        assertEquals(1, spots.get(0).getId());
+        assertEquals(3, spots.get(1).getId()); // Remplacée au tour suivant
+        assertEquals(SPOT_COUNT + 1, spots.get(2).getId());
+        assertNull(spots.get(3)); // Plus de place moto
+        assertEquals(4, node.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    public void spotFreedByAnotherNodeIsRefreshed() {
+        DataBaseConfig dataBaseConfig = EmbeddedDataBaseConfig.inMemory("refresh" + System.nanoTime(), 3, 1);
+        try {
+            ParkingSpotDAO first = new ParkingSpotDAO();
+            first.dataBaseConfig = dataBaseConfig;
+            ParkingSpot spot = first.reserveNextAvailable(ParkingType.CAR);
+            ParkingSpotDAO second = new ParkingSpotDAO(); // Autre serveur, chargé après l'entrée
+            second.dataBaseConfig = dataBaseConfig;
+            assertEquals(2, second.getNextAvailableSlot(ParkingType.CAR));
+
+            spot.setAvailable(true);
+            assertTrue(first.updateParking(spot)); // Sortie par le premier serveur
+
+            assertEquals(1, second.refreshFreedSpots());
+            assertEquals(0, second.refreshFreedSpots()); // Déjà à jour
+            assertEquals(1, second.getNextAvailableSlot(ParkingType.CAR));
+        } finally {
+            dataBaseConfig.shutdown();
+        }
+    }
+
+    private ParkingSpotDAO newNode() {
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = new SimulatedDataBaseConfig();
+        parkingSpotDAO.parkingSpotIndex.clear();
+        for (int number = 1; number <= SPOT_COUNT; number++) {
+            parkingSpotDAO.parkingSpotIndex.register(number, ParkingType.CAR, true);
+        }
+        parkingSpotDAO.parkingSpotIndex.register(SPOT_COUNT + 1, ParkingType.BIKE, true);
+        parkingSpotDAO.parkingSpotIndex.markLoaded();
+        return parkingSpotDAO;
+    }
+
+    private class SimulatedDataBaseConfig extends DataBaseConfig {
+        @Override
+        public Connection getConnection() {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> "prepareStatement".equals(method.getName()) ? newStatement() : null);
+        }
+
+        private PreparedStatement newStatement() {
+            int[] parkingNumber = new int[1];
+            List<Integer> batch = new ArrayList<>();
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "setInt":
+                                parkingNumber[0] = (Integer) args[1];
+                                return null;
+                            case "executeUpdate":
+                                return occupiedInDb.add(parkingNumber[0]) ? 1 : 0;
+                            case "addBatch":
+                                batch.add(parkingNumber[0]);
+                                return null;
+                            case "executeBatch":
+                                int[] counts = new int[batch.size()];
+                                for (int i = 0; i < counts.length; i++) {
+                                    counts[i] = occupiedInDb.add(batch.get(i)) ? 1 : 0;
+                                }
+                                batch.clear();
+                                return counts;
+                            default:
+                                return null;
+                        }
+                    });
+        }
+    }
+}
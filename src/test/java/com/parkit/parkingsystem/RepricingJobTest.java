@@ -0,0 +1,219 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.EmbeddedDataBaseConfig;
+import com.parkit.parkingsystem.config.RepricingConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.RepricingDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.RepricingJob;
+import com.parkit.parkingsystem.tariff.Tariff;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RepricingJobTest {
+
+    private static final int TICKETS = 250;
+    private static final int VEHICLES = 50;
+    private static final long BASE_TIME = 1700000000000L;
+    private static final long MINUTE = 60000L;
+
+    private final Tariff tariff = Tariff.standard();
+    private DataBaseConfig dataBaseConfig;
+    private RepricingDAO repricingDAO;
+    private Path workDir;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        dataBaseConfig = EmbeddedDataBaseConfig.inMemory("repricing" + System.nanoTime(), 3, 2);
+        repricingDAO = new RepricingDAO();
+        repricingDAO.dataBaseConfig = dataBaseConfig;
+        workDir = Files.createTempDirectory("repricing");
+
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        List<Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < TICKETS; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(i % 2 == 0 ? 1 : 4, i % 2 == 0 ? ParkingType.CAR : ParkingType.BIKE, false));
+            ticket.setVehicleRegNumber("V" + i % VEHICLES);
+            ticket.setInTime(new Date(inTime(i)));
+            ticket.setOutTime(new Date(outTime(i)));
+            // Un ticket sur dix a déjà le bon prix
+            ticket.setPrice(i % 10 == 0 ? expectedCents(i) / 100.0 : 0);
+            tickets.add(ticket);
+        }
+        Ticket open = new Ticket();
+        open.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, false));
+        open.setVehicleRegNumber("OPEN");
+        open.setInTime(new Date(BASE_TIME));
+        tickets.add(open);
+        assertTrue(ticketDAO.saveTickets(tickets).isAllSucceeded());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        dataBaseConfig.shutdown();
+        try (Stream<Path> files = Files.list(workDir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(workDir);
+    }
+
+    @Test
+    public void dryRunReportsTheDiffWithoutWriting() throws Exception {
+        RepricingConfig config = config();
+        config.setDryRun(true);
+        config.setDiffFile(workDir.resolve("diff.csv").toString());
+
+        RepricingJob job = new RepricingJob(repricingDAO, config, tariff);
+        assertTrue(job.run());
+
+        assertEquals(TICKETS, job.getTicketsPriced());
+        assertEquals(TICKETS - TICKETS / 10, job.getTicketsChanged());
+        assertEquals(0, job.getOldTotalCents());
+        List<String> diff = Files.readAllLines(workDir.resolve("diff.csv"), StandardCharsets.UTF_8);
+        assertEquals(TICKETS - TICKETS / 10 + 1, diff.size());
+        assertEquals("id,oldPrice,newPrice", diff.get(0));
+        assertEquals("2,0.0," + expectedCents(1) / 100.0, diff.stream().filter(line -> line.startsWith("2,")).findFirst().get());
+        // Rien n'est écrit : ni les prix, ni le point de reprise
+        assertEquals(0.0, readPrice(2));
+        assertFalse(Files.exists(workDir.resolve("checkpoint")));
+    }
+
+    @Test
+    public void repricesEveryClosedTicketInParallelPartitions() throws Exception {
+        RepricingJob job = new RepricingJob(repricingDAO, config(), tariff);
+        assertTrue(job.run());
+
+        assertEquals(7, job.getPartitionCount());
+        assertEquals(TICKETS - TICKETS / 10, job.getTicketsChanged());
+        for (int i = 0; i < TICKETS; i++) {
+            assertEquals(expectedCents(i) / 100.0, readPrice(i + 1), "ticket " + (i + 1));
+        }
+        assertEquals(0.0, readPrice(TICKETS + 1)); // Le ticket ouvert n'est pas touché
+        assertEquals(job.getNewTotalCents() - job.getOldTotalCents(), job.getNewTotalCents());
+
+        // Terminé : le point de reprise est supprimé, une nouvelle exécution repart de zéro
+        assertFalse(Files.exists(workDir.resolve("checkpoint")));
+        RepricingJob again = new RepricingJob(repricingDAO, config(), tariff);
+        assertTrue(again.run());
+        assertEquals(TICKETS, again.getTicketsPriced());
+        assertEquals(0, again.getTicketsChanged());
+    }
+
+    @Test
+    public void resumesAfterTheCheckpointedPartitions() throws Exception {
+        // Première partition faite, la deuxième coupée en pleine écriture
+        writeCheckpoint(header() + "\n1 41\n41 8");
+
+        RepricingJob job = new RepricingJob(repricingDAO, config(), tariff);
+        assertTrue(job.run());
+
+        assertEquals(7, job.getPartitionsDone());
+        assertEquals(TICKETS - 40, job.getTicketsPriced());
+        assertEquals(0.0, readPrice(2)); // Partition sautée
+        assertEquals(expectedCents(41) / 100.0, readPrice(42));
+    }
+
+    @Test
+    public void resumesWithTheTicketsPastTheLastIdOfTheFailedRun() throws Exception {
+        // Exécution précédente arrêtée au ticket 180, d'autres tickets sont arrivés depuis
+        writeCheckpoint(header() + "\n1 41\n41 81\n81 121\n121 161\n161 181\n");
+
+        RepricingJob job = new RepricingJob(repricingDAO, config(), tariff);
+        assertTrue(job.run());
+
+        assertEquals(7, job.getPartitionsDone());
+        assertEquals(TICKETS - 180, job.getTicketsPriced()); // Seulement la fin
+        assertEquals(0.0, readPrice(2));
+        assertEquals(0.0, readPrice(170)); // Début de la partition déjà fait
+        assertEquals(expectedCents(180) / 100.0, readPrice(181));
+        assertEquals(expectedCents(TICKETS - 1) / 100.0, readPrice(TICKETS));
+    }
+
+    @Test
+    public void checkpointOfAnotherRunIsIgnored() throws Exception {
+        // Même début, mais découpé autrement
+        writeCheckpoint(header().replace("partition 40", "partition 50") + "\n1 41\n");
+
+        RepricingJob job = new RepricingJob(repricingDAO, config(), tariff);
+        assertTrue(job.run());
+
+        assertEquals(TICKETS, job.getTicketsPriced());
+        assertEquals(expectedCents(1) / 100.0, readPrice(2));
+    }
+
+    @Test
+    public void unreadableCheckpointStartsOver() throws Exception {
+        writeCheckpoint(header() + "\n1 41\n\u0000\u0000garbage\n");
+
+        RepricingJob job = new RepricingJob(repricingDAO, config(), tariff);
+        assertTrue(job.run());
+
+        assertEquals(TICKETS, job.getTicketsPriced());
+        assertEquals(expectedCents(1) / 100.0, readPrice(2));
+    }
+
+    private String header() {
+        return String.format("tariff standard %08x from 1 partition 40", tariff.fingerprint());
+    }
+
+    private void writeCheckpoint(String content) throws Exception {
+        Files.write(workDir.resolve("checkpoint"), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private RepricingConfig config() {
+        RepricingConfig config = new RepricingConfig();
+        config.setThreads(3);
+        config.setPartitionSize(40);
+        config.setCheckpointFile(workDir.resolve("checkpoint").toString());
+        config.setDiffFile(null);
+        config.setDryRun(false);
+        return config;
+    }
+
+    private static long inTime(int i) {
+        return BASE_TIME + i * MINUTE;
+    }
+
+    private static long outTime(int i) {
+        return inTime(i) + (i % 7 + 1) * 47 * MINUTE;
+    }
+
+    private long expectedCents(int i) {
+        // Chaque véhicule revient tous les 50 tickets : i / 50 + 1 visites à son entrée
+        return FareCalculatorService.calculateFareCents(tariff, inTime(i), outTime(i),
+                i % 2 == 0 ? ParkingType.CAR : ParkingType.BIKE, i / VEHICLES + 1);
+    }
+
+    private double readPrice(int id) throws Exception {
+        Connection con = dataBaseConfig.getConnection();
+        try (PreparedStatement ps = con.prepareStatement("select PRICE from ticket where ID = ?")) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getDouble(1);
+            }
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+}
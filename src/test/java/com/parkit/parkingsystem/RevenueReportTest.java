@@ -0,0 +1,160 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.EmbeddedDataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ReportDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.ReportService;
+import com.parkit.parkingsystem.service.RevenueReport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RevenueReportTest {
+
+    private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+    private static final long HOUR = 3600000L;
+
+    private DataBaseConfig dataBaseConfig;
+    private ReportDAO reportDAO;
+    private TicketDAO ticketDAO;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        dataBaseConfig = EmbeddedDataBaseConfig.inMemory("report" + System.nanoTime(), 3, 2);
+        reportDAO = new ReportDAO();
+        reportDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataBaseConfig.shutdown();
+    }
+
+    @Test
+    public void aggregatesPerTypeDayAndHourOfExit() throws Exception {
+        LocalDate day = LocalDate.of(2024, 3, 30);
+        RevenueReport report = new RevenueReport(day, day.plusDays(2), PARIS);
+
+        long nineAm = millis(day.atTime(9, 15));
+        report.accept(ParkingType.CAR, nineAm - 2 * HOUR, nineAm, 3.0);
+        report.accept(ParkingType.CAR, nineAm - 4 * HOUR + 10 * 60000L, nineAm + 10 * 60000L, 6.0);
+        report.accept(ParkingType.BIKE, nineAm - HOUR, nineAm, 1.0);
+        // Lendemain, après le passage à l'heure d'été
+        long nextDayNoon = millis(day.plusDays(1).atTime(12, 0));
+        report.accept(ParkingType.CAR, nextDayNoon - HOUR, nextDayNoon, 1.5);
+        // Hors de la période : ignorés
+        report.accept(ParkingType.CAR, 0, millis(day.atStartOfDay()) - 1, 100.0);
+        report.accept(ParkingType.CAR, 0, millis(day.plusDays(2).atStartOfDay()), 100.0);
+
+        assertEquals(2, report.getVisits(ParkingType.CAR, day, 9));
+        assertEquals(9.0, report.getRevenue(ParkingType.CAR, day, 9), 1e-9);
+        assertEquals(3 * HOUR, report.getAverageDwellMillis(ParkingType.CAR, day));
+        assertEquals(1, report.getVisits(ParkingType.BIKE, day));
+        assertEquals(1, report.getVisits(ParkingType.CAR, day.plusDays(1), 12));
+        assertEquals(3, report.getVisits(ParkingType.CAR));
+        assertEquals(10.5, report.getRevenue(ParkingType.CAR), 1e-9);
+        assertEquals(0, report.getAverageDwellMillis(ParkingType.BIKE, day.plusDays(1)));
+
+        StringBuilder csv = new StringBuilder();
+        report.writeCsv(csv);
+        assertEquals("day,hour,type,visits,revenue,averageDwellMinutes\n"
+                + "2024-03-30,9,CAR,2,9.00,180\n"
+                + "2024-03-30,9,BIKE,1,1.00,60\n"
+                + "2024-03-31,12,CAR,1,1.50,60\n", csv.toString());
+    }
+
+    @Test
+    public void spanIsLimitedToAYear() {
+        LocalDate day = LocalDate.of(2024, 1, 1);
+        assertEquals(0, new RevenueReport(day, day.plusDays(RevenueReport.MAX_DAYS), PARIS).getVisits(ParkingType.CAR));
+        assertThrows(IllegalArgumentException.class,
+                () -> new RevenueReport(day, day.plusDays(RevenueReport.MAX_DAYS + 1), PARIS));
+        // Sans limite, des milliards de cases : OutOfMemoryError
+        assertThrows(IllegalArgumentException.class,
+                () -> new RevenueReport(LocalDate.of(1, 1, 1), LocalDate.of(9999, 12, 31), PARIS));
+    }
+
+    @Test
+    public void streamsClosedTicketsOfThePeriodFromTheTable() {
+        LocalDate day = LocalDate.of(2024, 1, 15);
+        ZoneId zone = ZoneId.systemDefault();
+        List<Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            // Un ticket toutes les 30 secondes à partir de minuit, sur trois jours
+            long outTime = millis(day.atStartOfDay(), zone) + i * 100000L;
+            tickets.add(ticket(i % 5 < 3 ? 1 : 4, "V" + i, outTime - HOUR, outTime, 2.0));
+        }
+        tickets.add(ticket(2, "OPEN", millis(day.atTime(8, 0), zone), 0, 0));
+        assertTrue(ticketDAO.saveTickets(tickets).isAllSucceeded());
+
+        RevenueReport report = new ReportService(reportDAO, zone).report(day, day.plusDays(1));
+
+        // 864 tickets sortis le premier jour (86 400 s / 100 s), le ticket ouvert n'est pas compté
+        assertEquals(864, report.getVisits(ParkingType.CAR) + report.getVisits(ParkingType.BIKE));
+        assertEquals(519, report.getVisits(ParkingType.CAR));
+        assertEquals(2 * 519, report.getRevenue(ParkingType.CAR), 1e-9);
+        assertEquals(HOUR, report.getAverageDwellMillis(ParkingType.BIKE));
+        assertEquals(36, report.getVisits(ParkingType.CAR, day, 0) + report.getVisits(ParkingType.BIKE, day, 0));
+    }
+
+    @Test
+    public void liveReportAddsExitsAfterTheStreamedTickets() throws Exception {
+        LocalDate today = LocalDate.now();
+        long closedBefore = System.currentTimeMillis() - 1000;
+        assertTrue(ticketDAO.saveTicket(ticket(1, "EARLIER", closedBefore - HOUR, closedBefore, 4.5)));
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO.loadAvailableSpots();
+        ParkingService parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+
+        RevenueReport report = new ReportService(reportDAO)
+                .follow(parkingService, today.minusDays(1), today.plusDays(1));
+        assertEquals(1, report.getVisits(ParkingType.CAR));
+
+        parkingService.processIncomingVehicle(ParkingType.BIKE, "LATER");
+        parkingService.processExitingVehicle("LATER");
+
+        assertEquals(1, report.getVisits(ParkingType.CAR));
+        assertEquals(1, report.getVisits(ParkingType.BIKE));
+        assertEquals(4.5, report.getRevenue(ParkingType.CAR), 1e-9);
+        // Le même rapport relu depuis la table donne les mêmes totaux
+        RevenueReport streamed = new ReportService(reportDAO).report(today.minusDays(1), today.plusDays(1));
+        assertEquals(report.getVisits(ParkingType.BIKE), streamed.getVisits(ParkingType.BIKE));
+        assertEquals(report.getRevenue(ParkingType.BIKE), streamed.getRevenue(ParkingType.BIKE), 1e-9);
+    }
+
+    private static long millis(LocalDateTime time) {
+        return millis(time, PARIS);
+    }
+
+    private static long millis(LocalDateTime time, ZoneId zone) {
+        return time.atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private static Ticket ticket(int parkingNumber, String vehicleRegNumber, long inTime, long outTime, double price) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingNumber <= 3 ? ParkingType.CAR : ParkingType.BIKE, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inTime));
+        ticket.setOutTime(outTime == 0 ? null : new Date(outTime));
+        ticket.setPrice(price);
+        return ticket;
+    }
+}
@@ -0,0 +1,109 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.tariff.Tariff;
+import com.parkit.parkingsystem.tariff.TariffLoader;
+import com.parkit.parkingsystem.tariff.TariffRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TariffTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private TariffLoader loader;
+    private Properties properties;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        loader = new TariffLoader();
+        properties = new Properties();
+        properties.setProperty("tariff.timeZone", "UTC");
+        properties.setProperty("tariff.freeMinutes", "30");
+        properties.setProperty("tariff.discountTiers", "2:5,10:20");
+        properties.setProperty("CAR.ratePerHourCents", "150");
+        properties.setProperty("BIKE.ratePerHourCents", "100");
+    }
+
+    @Test
+    public void standardTariffMatchesFareConstants() {
+        Tariff tariff = Tariff.standard();
+
+        assertEquals(0, tariff.priceCents(0, 30 * 60 * 1000, ParkingType.CAR, 0)); // 30 minutes gratuites
+        assertEquals(150, tariff.priceCents(0, HOUR, ParkingType.CAR, 0));
+        assertEquals(143, tariff.priceCents(0, HOUR, ParkingType.CAR, tariff.discountPercent(2)));
+        assertEquals(0, tariff.discountPercent(1));
+    }
+
+    @Test
+    public void timeBandsChargeEachHourAtItsOwnRate() {
+        properties.setProperty("CAR.bands", "20-24:50");
+        Tariff tariff = loader.compile(properties);
+
+        // 19h30 -> 21h00 UTC : 30 min à 1,50 puis 1 h à 0,50
+        assertEquals(125, tariff.priceCents(19 * HOUR + HOUR / 2, 21 * HOUR, ParkingType.CAR, 0));
+        assertEquals(100, tariff.priceCents(19 * HOUR, 20 * HOUR, ParkingType.BIKE, 0));
+    }
+
+    @Test
+    public void dailyCapAppliesPerCalendarDay() {
+        properties.setProperty("CAR.dailyCapCents", "1000");
+        Tariff tariff = loader.compile(properties);
+
+        assertEquals(1000, tariff.priceCents(0, 24 * HOUR, ParkingType.CAR, 0));
+        // 22h -> 02h le lendemain : 2 h chaque jour, sous le plafond
+        assertEquals(600, tariff.priceCents(22 * HOUR, 26 * HOUR, ParkingType.CAR, 0));
+        assertEquals(2000 + 150, tariff.priceCents(0, 49 * HOUR, ParkingType.CAR, 0));
+    }
+
+    @Test
+    public void discountTierFollowsVisitCount() {
+        Tariff tariff = loader.compile(properties);
+
+        assertEquals(0, tariff.discountPercent(1));
+        assertEquals(5, tariff.discountPercent(9));
+        assertEquals(20, tariff.discountPercent(10));
+        assertEquals(120, tariff.priceCents(0, HOUR, ParkingType.CAR, tariff.discountPercent(12)));
+    }
+
+    @Test
+    public void incompleteTariffIsRejected() {
+        properties.remove("BIKE.ratePerHourCents");
+
+        assertThrows(IllegalArgumentException.class, () -> loader.compile(properties));
+    }
+
+    @Test
+    public void negativeBandRateAndTierVisitsAreRejected() {
+        properties.setProperty("CAR.bands", "20-24:-50");
+        assertThrows(IllegalArgumentException.class, () -> loader.compile(properties));
+
+        properties.remove("CAR.bands");
+        properties.setProperty("tariff.discountTiers", "-2:5,10:20");
+        assertThrows(IllegalArgumentException.class, () -> loader.compile(properties));
+    }
+
+    @Test
+    public void reloadSwapsTariffAndKeepsItOnInvalidFile() throws Exception {
+        Path file = Files.createTempFile("tariff", ".properties");
+        file.toFile().deleteOnExit();
+        Files.write(file, "CAR.ratePerHourCents=150\nBIKE.ratePerHourCents=100\n".getBytes());
+        TariffRegistry registry = new TariffRegistry(Tariff.standard(), file);
+        Tariff inFlight = registry.current();
+
+        Files.write(file, "CAR.ratePerHourCents=300\nBIKE.ratePerHourCents=100\n".getBytes());
+        assertTrue(registry.reload());
+        assertEquals(300, registry.current().priceCents(0, HOUR, ParkingType.CAR, 0));
+        assertEquals(150, inFlight.priceCents(0, HOUR, ParkingType.CAR, 0)); // L'ancien tarif reste intact
+
+        Files.write(file, "CAR.ratePerHourCents=abc\n".getBytes());
+        assertFalse(registry.reload());
+        assertEquals(300, registry.current().priceCents(0, HOUR, ParkingType.CAR, 0));
+    }
+}
@@ -0,0 +1,183 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.EmbeddedDataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketArchiveReader;
+import com.parkit.parkingsystem.dao.TicketArchiveWriter;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.TicketArchiveService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketArchiveTest {
+
+    private static final long BASE_TIME = 1700000000000L;
+
+    private Path workDir;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        workDir = Files.createTempDirectory("archive");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(workDir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(workDir);
+    }
+
+    @Test
+    public void roundTripsAcrossBlocksAndIsMuchSmallerThanSql() throws Exception {
+        Path file = workDir.resolve("tickets.bin");
+        int rows = 150000; // Plus de deux blocs
+        StringBuilder sql = new StringBuilder("insert into ticket(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values\n");
+        try (TicketArchiveWriter writer = new TicketArchiveWriter(file)) {
+            for (int i = 0; i < rows; i++) {
+                writer.accept(i + 1, parkingNumber(i), vehicle(i), price(i), inTime(i), outTime(i));
+                sql.append('(').append(i + 1).append(',').append(parkingNumber(i)).append(",'").append(vehicle(i))
+                        .append("',").append(price(i)).append(",'").append(new java.sql.Timestamp(inTime(i)))
+                        .append("','").append(new java.sql.Timestamp(outTime(i))).append("'),\n");
+            }
+            assertEquals(rows, writer.getTotalRows());
+        }
+
+        try (TicketArchiveReader reader = new TicketArchiveReader(file)) {
+            for (int i = 0; i < rows; i++) {
+                assertTrue(reader.next());
+                assertEquals(i + 1, reader.getId());
+                assertEquals(parkingNumber(i), reader.getParkingNumber());
+                assertEquals(vehicle(i), reader.getVehicleRegNumber());
+                assertEquals(price(i), reader.getPrice(), 1e-9);
+                assertEquals(inTime(i), reader.getInTime());
+                assertEquals(outTime(i), reader.getOutTime());
+            }
+            assertFalse(reader.next());
+        }
+        // Le format colonne doit être au moins huit fois plus compact que le texte SQL
+        long archiveBytes = Files.size(file);
+        assertTrue(sql.length() > 8 * archiveBytes, sql.length() + " bytes of SQL, " + archiveBytes + " archived");
+    }
+
+    @Test
+    public void corruptBlockIsDetected() throws Exception {
+        Path file = workDir.resolve("tickets.bin");
+        try (TicketArchiveWriter writer = new TicketArchiveWriter(file)) {
+            for (int i = 0; i < 100; i++) {
+                writer.accept(i + 1, parkingNumber(i), vehicle(i), price(i), inTime(i), outTime(i));
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), 200);
+        }
+        try (TicketArchiveReader reader = new TicketArchiveReader(file)) {
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+
+    @Test
+    public void exportsAndRestoresTheTicketsUnderTheirIds() throws Exception {
+        DataBaseConfig source = EmbeddedDataBaseConfig.inMemory("export" + System.nanoTime(), 3, 2);
+        DataBaseConfig target = EmbeddedDataBaseConfig.inMemory("import" + System.nanoTime(), 3, 2);
+        try {
+            try (Connection con = source.getConnection();
+                 PreparedStatement ps = con.prepareStatement("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)")) {
+                for (int i = 0; i < 2500; i++) {
+                    ps.setInt(1, parkingNumber(i));
+                    ps.setString(2, vehicle(i));
+                    ps.setDouble(3, price(i));
+                    ps.setTimestamp(4, new java.sql.Timestamp(inTime(i)));
+                    // Le premier ticket est encore ouvert
+                    ps.setTimestamp(5, i == 0 ? null : new java.sql.Timestamp(outTime(i)));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            assertTrue(ticketDAO(source).archiveClosedTickets(inTime(1000), 1000) > 0); // Historique déjà archivé
+            Path file = workDir.resolve("tickets.bin");
+            assertEquals(2500, new TicketArchiveService(ticketDAO(source)).export(file));
+            assertEquals(2500, new TicketArchiveService(ticketDAO(target)).importFrom(file));
+
+            assertEquals(readTickets(source, "ticket union all select * from ticket_archive"),
+                    readTickets(target, "ticket union all select * from ticket_archive")); // Mêmes IDs
+            assertEquals(1, readTickets(target, "ticket").size()); // Seul le ticket ouvert reste actif
+            assertNull(ticketDAO(target).getOpenTicket(vehicle(0)).getOutTime());
+            assertEquals(5, ticketDAO(target).getNbTicket(vehicle(0))); // Compteurs recalculés
+
+            // Un second import est refusé sans fausser les compteurs
+            assertEquals(-1, new TicketArchiveService(ticketDAO(target)).importFrom(file));
+            assertEquals(5, ticketDAO(target).getNbTicket(vehicle(0)));
+
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+            ticket.setVehicleRegNumber("NEW");
+            ticket.setInTime(new Date(inTime(2500)));
+            assertTrue(ticketDAO(target).saveTicket(ticket));
+            assertEquals(2501, ticketDAO(target).getTicket("NEW").getId()); // Numéroté après les tickets restaurés
+        } finally {
+            source.shutdown();
+            target.shutdown();
+        }
+    }
+
+    private static TicketDAO ticketDAO(DataBaseConfig dataBaseConfig) {
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        return ticketDAO;
+    }
+
+    private static List<String> readTickets(DataBaseConfig dataBaseConfig, String tables) throws Exception {
+        List<String> tickets = new ArrayList<>();
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement("select * from (select * from " + tables + ") t order by ID");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                tickets.add(rs.getInt(1) + "," + rs.getInt(2) + "," + rs.getString(3) + "," + rs.getDouble(4) + ","
+                        + rs.getTimestamp(5) + "," + rs.getTimestamp(6));
+            }
+        }
+        return tickets;
+    }
+
+    private static int parkingNumber(int i) {
+        return i % 5 + 1;
+    }
+
+    private static String vehicle(int i) {
+        return "AB" + (i % 500) + "CD";
+    }
+
+    private static double price(int i) {
+        return (i % 37) * 0.75;
+    }
+
+    private static long inTime(int i) {
+        // Une entrée toutes les 20 à 40 secondes environ
+        return BASE_TIME + i * 30000L + (i % 7) * 1000L;
+    }
+
+    private static long outTime(int i) {
+        return inTime(i) + 1800000L + (i % 11) * 600000L;
+    }
+}
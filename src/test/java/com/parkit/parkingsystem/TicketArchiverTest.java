@@ -0,0 +1,142 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.EmbeddedDataBaseConfig;
+import com.parkit.parkingsystem.config.RepricingConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ReportDAO;
+import com.parkit.parkingsystem.dao.RepricingDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.RepricingJob;
+import com.parkit.parkingsystem.service.ReportService;
+import com.parkit.parkingsystem.service.RevenueReport;
+import com.parkit.parkingsystem.service.TicketArchiver;
+import com.parkit.parkingsystem.tariff.Tariff;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketArchiverTest {
+
+    private static final long DAY = 24L * 3600 * 1000;
+
+    private DataBaseConfig dataBaseConfig;
+    private TicketDAO ticketDAO;
+    private long now;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        dataBaseConfig = EmbeddedDataBaseConfig.inMemory("archiver" + System.nanoTime(), 3, 2);
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        now = System.currentTimeMillis() / 1000 * 1000;
+        List<Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            // Tickets fermés il y a environ 200 jours, un par minute
+            long outTime = now - 200 * DAY + i * 60000L;
+            tickets.add(ticket("OLD" + i % 10, outTime - 3600000L, outTime, 1.5));
+        }
+        tickets.add(ticket("OLD0", now - DAY, now - DAY + 3600000L, 1.5));
+        tickets.add(ticket("RECENT", now - 10 * DAY, now - 10 * DAY + 3600000L, 1.5));
+        tickets.add(ticket("PARKED", now - 300 * DAY, 0, 0));
+        assertTrue(ticketDAO.saveTickets(tickets).isAllSucceeded());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataBaseConfig.shutdown();
+    }
+
+    @Test
+    public void movesClosedTicketsPastTheHorizonInBatches() throws Exception {
+        TicketArchiver archiver = new TicketArchiver(ticketDAO, 90 * DAY, 1000);
+
+        assertEquals(2500, archiver.archive());
+        assertEquals(0, archiver.archive());
+
+        assertEquals(3, count("ticket"));
+        assertEquals(2500, count("ticket_archive"));
+        // Les recherches des bornes ne lisent que la table active
+        assertNull(ticketDAO.getTicket("OLD1"));
+        assertNotNull(ticketDAO.getTicket("RECENT"));
+        assertNotNull(ticketDAO.getOpenTicketWithVisitCount("PARKED")); // Un ticket ouvert n'est jamais archivé
+        assertEquals(250, ticketDAO.getNbTicket("OLD1"));
+        // L'historique complet reste accessible
+        List<Ticket> history = ticketDAO.getTicketHistory("OLD0");
+        assertEquals(251, history.size());
+        assertEquals(now - DAY, history.get(0).getInTime().getTime());
+        assertEquals(ParkingType.CAR, history.get(250).getParkingSpot().getParkingType());
+    }
+
+    @Test
+    public void reportsAndRepricingStillSeeArchivedTickets() throws Exception {
+        new TicketArchiver(ticketDAO, 90 * DAY, 700).archive();
+
+        ReportDAO reportDAO = new ReportDAO();
+        reportDAO.dataBaseConfig = dataBaseConfig;
+        LocalDate oldDay = Instant.ofEpochMilli(now - 200 * DAY).atZone(ZoneId.systemDefault()).toLocalDate();
+        RevenueReport report = new ReportService(reportDAO).report(oldDay.minusDays(1), oldDay.plusDays(4));
+        assertEquals(2500, report.getVisits(ParkingType.CAR));
+
+        RepricingDAO repricingDAO = new RepricingDAO();
+        repricingDAO.dataBaseConfig = dataBaseConfig;
+        RepricingConfig config = new RepricingConfig();
+        config.setThreads(2);
+        config.setPartitionSize(500);
+        config.setCheckpointFile(null);
+        config.setDiffFile(null);
+        config.setDryRun(false);
+        RepricingJob job = new RepricingJob(repricingDAO, config, Tariff.standard());
+        assertTrue(job.run());
+        assertEquals(2502, job.getTicketsPriced());
+        // Seules les premières visites des 11 véhicules restent à 1,50, les suivantes ont 5 % de réduction
+        assertEquals(2491, job.getTicketsChanged());
+        assertEquals(job.getNewTotalCents() / 100.0 + 11 * 1.5, sumPrices("ticket_archive") + sumPrices("ticket"), 1e-6);
+    }
+
+    private Ticket ticket(String vehicleRegNumber, long inTime, long outTime, double price) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inTime));
+        ticket.setOutTime(outTime == 0 ? null : new Date(outTime));
+        ticket.setPrice(price);
+        return ticket;
+    }
+
+    private int count(String table) throws Exception {
+        Connection con = dataBaseConfig.getConnection();
+        try (PreparedStatement ps = con.prepareStatement("select count(*) from " + table);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private double sumPrices(String table) throws Exception {
+        Connection con = dataBaseConfig.getConnection();
+        try (PreparedStatement ps = con.prepareStatement("select coalesce(sum(PRICE), 0) from " + table);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getDouble(1);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.EmbeddedDataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.BatchResult;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketDAOTest {
+
+    private DataBaseConfig dataBaseConfig;
+    private TicketDAO ticketDAO;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        dataBaseConfig = EmbeddedDataBaseConfig.inMemory("ticketDAO" + System.nanoTime(), 3, 2);
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataBaseConfig.shutdown();
+    }
+
+    @Test
+    public void saveTicketsIsAllOrNothing() {
+        Ticket valid = ticket("ABCDEF");
+        Ticket tooLong = ticket("ABCDEFGHIJKL"); // Plus long que la colonne VARCHAR(10)
+
+        BatchResult result = ticketDAO.saveTickets(Arrays.asList(valid, tooLong));
+
+        assertEquals(0, result.getSuccessCount());
+        assertNotNull(result.getError());
+        assertEquals(0, valid.getId()); // ID de l'insertion annulée
+        assertNull(ticketDAO.getTicket("ABCDEF")); // Rien n'est écrit
+        assertEquals(0, ticketDAO.getNbTicket("ABCDEF"));
+    }
+
+    @Test
+    public void visitCounterIsIncrementedOnSaveAndDrivesTheDiscount() {
+        Ticket first = ticket("RECUR");
+        assertTrue(ticketDAO.saveTicket(first));
+        assertEquals(1, first.getVisitCount()); // Nouvelle ligne dans vehicle_stats
+        first.setOutTime(new Date());
+        assertTrue(ticketDAO.updateTicket(first));
+
+        Ticket second = ticket("RECUR");
+        assertTrue(ticketDAO.saveTicket(second));
+        assertEquals(2, second.getVisitCount()); // Compteur relu avec l'upsert
+        assertEquals(2, ticketDAO.getNbTicket("RECUR"));
+
+        Ticket open = ticketDAO.getOpenTicketWithVisitCount("RECUR");
+        assertEquals(2, open.getVisitCount());
+        open.setOutTime(new Date(open.getInTime().getTime() + 3600000L));
+        assertTrue(new FareCalculatorService().calculateFare(open, open.getVisitCount()) > 0); // Client récurrent
+        assertEquals(0, new FareCalculatorService().calculateFare(first, first.getVisitCount()));
+    }
+
+    @Test
+    public void visitsOfTheOtherFacilitiesAreServedFromMemory() {
+        DataBaseConfig otherConfig = EmbeddedDataBaseConfig.inMemory("otherFacility" + System.nanoTime(), 3, 2);
+        try {
+            TicketDAO otherDAO = new TicketDAO();
+            otherDAO.dataBaseConfig = otherConfig;
+            assertTrue(otherDAO.saveTicket(ticket("TRAVEL"))); // Visite avant le partage des compteurs
+            ticketDAO.otherFacilities = Arrays.asList(otherDAO);
+            otherDAO.otherFacilities = Arrays.asList(ticketDAO);
+            ticketDAO.loadVisitsElsewhere();
+            otherDAO.loadVisitsElsewhere();
+
+            assertTrue(otherDAO.saveTicket(ticket("TRAVEL"))); // Visite poussée après le commit
+
+            assertEquals(2, ticketDAO.getVisitsElsewhere("TRAVEL"));
+            Ticket here = ticket("TRAVEL");
+            assertTrue(ticketDAO.saveTicket(here));
+            assertEquals(3, ticketDAO.getNbTicket("TRAVEL"));
+            assertEquals(1, otherDAO.getVisitsElsewhere("TRAVEL"));
+        } finally {
+            otherConfig.shutdown();
+        }
+    }
+
+    @Test
+    public void streamsLiveThenArchivedTicketsEachInIdOrder() {
+        for (String vehicle : new String[]{"OLD1", "OLD2", "OPEN"}) {
+            Ticket ticket = ticket(vehicle);
+            if (!"OPEN".equals(vehicle)) {
+                ticket.setOutTime(new Date(ticket.getInTime().getTime() + 60000L));
+            }
+            assertTrue(ticketDAO.saveTicket(ticket));
+        }
+        assertEquals(2, ticketDAO.archiveClosedTickets(System.currentTimeMillis(), 10));
+
+        List<Integer> ids = new ArrayList<>();
+        assertEquals(3, ticketDAO.streamTickets((id, parkingNumber, vehicle, price, inTime, outTime) -> ids.add(id)));
+
+        assertEquals(Arrays.asList(3, 1, 2), ids); // Table active, puis archive, sans tri global
+    }
+
+    private static Ticket ticket(String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(System.currentTimeMillis() - 3600000L));
+        return ticket;
+    }
+}
@@ -0,0 +1,212 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.BatchResult;
+import com.parkit.parkingsystem.dao.GateJournal;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.GateEvent;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.WriteBehindParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class WriteBehindParkingServiceTest {
+
+    private Path journalDir;
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+    private Connection connection;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        journalDir = Files.createTempDirectory("gate-journal");
+        ParkingSpotDAO realDAO = new ParkingSpotDAO();
+        realDAO.parkingSpotIndex.clear();
+        realDAO.parkingSpotIndex.register(1, ParkingType.CAR, true);
+        realDAO.parkingSpotIndex.register(2, ParkingType.CAR, true);
+        realDAO.parkingSpotIndex.markLoaded();
+        parkingSpotDAO = spy(realDAO);
+        doAnswer(invocation -> new BatchResult(0)).when(parkingSpotDAO).updateParkings(any(), anyList());
+
+        ticketDAO = mock(TicketDAO.class);
+        connection = mock(Connection.class);
+        when(ticketDAO.beginTransaction()).thenReturn(connection);
+        when(ticketDAO.saveTickets(any(), anyList())).thenAnswer(invocation -> {
+            List<Ticket> tickets = invocation.getArgument(1);
+            for (int i = 0; i < tickets.size(); i++) {
+                tickets.get(i).setId(i + 1); // ID généré par la base
+            }
+            return new BatchResult(0);
+        });
+        when(ticketDAO.updateTickets(any(), anyList())).thenReturn(new BatchResult(0));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(journalDir);
+    }
+
+    @Test
+    public void gateIsAnsweredFromMemoryAndWritesAreBatchedBehind() throws Exception {
+        WriteBehindParkingService service = newService();
+        service.start();
+
+        Ticket ticket = service.processIncomingVehicle(ParkingType.CAR, "ABCDEF");
+        Ticket closed = service.processExitingVehicle("ABCDEF");
+        service.shutdown(5000);
+
+        assertEquals(1, ticket.getParkingSpot().getId());
+        assertSame(ticket, closed);
+        assertNotNull(closed.getOutTime());
+        assertEquals(2, parkingSpotDAO.parkingSpotIndex.countAvailable(ParkingType.CAR)); // Place libérée
+        verify(ticketDAO, atLeastOnce()).saveTickets(eq(connection), anyList());
+        verify(ticketDAO, atLeastOnce()).updateTickets(eq(connection), anyList());
+        verify(ticketDAO, never()).saveTicket(any(), any(Ticket.class)); // Pas d'écriture synchrone
+        assertTrue(new GateJournal(journalDir).getUnacknowledged().isEmpty()); // Tout est acquitté
+    }
+
+    @Test
+    public void visitCountIsServedFromMemory() throws Exception {
+        when(ticketDAO.getVisitCounts()).thenReturn(Collections.singletonMap("ABCDEF", 2)); // Chargé au démarrage
+        WriteBehindParkingService service = newService();
+        service.start();
+
+        assertEquals(3, service.processIncomingVehicle(ParkingType.CAR, "ABCDEF").getVisitCount());
+        assertEquals(3, service.processExitingVehicle("ABCDEF").getVisitCount());
+        assertEquals(1, service.processIncomingVehicle(ParkingType.CAR, "GHIJKL").getVisitCount());
+        service.shutdown(5000);
+
+        verify(ticketDAO, never()).getNbTicket(anyString()); // Aucune lecture en base aux barrières
+        verify(ticketDAO, never()).getNbTicket(any(), anyString());
+    }
+
+    @Test
+    public void batchIsRetriedWhileTheDataBaseIsDown() throws Exception {
+        when(ticketDAO.beginTransaction()).thenThrow(new SQLException("DB down")).thenReturn(connection);
+        WriteBehindParkingService service = newService();
+        service.start();
+
+        assertNotNull(service.processIncomingVehicle(ParkingType.CAR, "ABCDEF")); // La barrière s'ouvre quand même
+        service.shutdown(5000);
+
+        verify(ticketDAO, times(1)).commitTransaction(connection);
+        assertEquals(0, service.getPendingCount());
+    }
+
+    @Test
+    public void unacknowledgedEventsAreWrittenOnRestart() throws Exception {
+        GateJournal journal = new GateJournal(journalDir);
+        GateEvent entry = GateEvent.entry("ABCDEF", ParkingType.CAR, System.currentTimeMillis());
+        entry.setParkingNumber(2);
+        journal.append(entry);
+        journal.close(); // Arrêt brutal avant l'écriture en base
+
+        WriteBehindParkingService service = newService();
+        service.start();
+        service.shutdown(5000);
+
+        verify(ticketDAO, times(1)).saveTickets(eq(connection), argThat(tickets -> tickets.size() == 1
+                && "ABCDEF".equals(tickets.get(0).getVehicleRegNumber())
+                && tickets.get(0).getParkingSpot().getId() == 2));
+        assertEquals(1, parkingSpotDAO.parkingSpotIndex.countAvailable(ParkingType.CAR)); // Place 2 occupée
+        assertTrue(new GateJournal(journalDir).getUnacknowledged().isEmpty());
+    }
+
+    @Test
+    public void committedBatchIsNotWrittenAgainWhenTheAcknowledgementFails() throws Exception {
+        GateJournal journal = spy(new GateJournal(journalDir));
+        doThrow(new IOException("disk full")).when(journal).acknowledgeThrough(anyLong());
+        WriteBehindParkingService service = new WriteBehindParkingService(null, parkingSpotDAO, ticketDAO, journal, 100, 10);
+        service.start();
+
+        assertNotNull(service.processIncomingVehicle(ParkingType.CAR, "ABCDEF"));
+        service.shutdown(5000);
+
+        verify(ticketDAO, times(1)).saveTickets(eq(connection), anyList()); // Pas de double insertion
+        verify(ticketDAO, times(1)).commitTransaction(connection);
+        assertEquals(0, service.getPendingCount());
+    }
+
+    @Test
+    public void committedEventsAreNotWrittenAgainOnRestart() throws Exception {
+        GateJournal journal = spy(new GateJournal(journalDir));
+        doThrow(new IOException("disk full")).when(journal).acknowledgeThrough(anyLong());
+        WriteBehindParkingService service = new WriteBehindParkingService(null, parkingSpotDAO, ticketDAO, journal, 100, 10);
+        service.start();
+        Ticket ticket = service.processIncomingVehicle(ParkingType.CAR, "ABCDEF");
+        Ticket closed = service.processExitingVehicle("ABCDEF");
+        service.shutdown(5000); // Écrit en base, jamais acquitté
+
+        Ticket committed = new Ticket();
+        committed.setId(1);
+        committed.setVehicleRegNumber("ABCDEF");
+        committed.setInTime(new Date(ticket.getInTime().getTime() / 1000 * 1000)); // DATETIME à la seconde
+        committed.setOutTime(new Date(closed.getOutTime().getTime() / 1000 * 1000));
+        when(ticketDAO.getTicket(any(Connection.class), eq("ABCDEF"))).thenReturn(committed);
+        clearInvocations(ticketDAO, parkingSpotDAO);
+
+        WriteBehindParkingService restarted = newService();
+        restarted.start();
+        restarted.shutdown(5000);
+
+        verify(ticketDAO, never()).saveTickets(any(), argThat(tickets -> !tickets.isEmpty())); // Pas de deuxième ticket
+        verify(ticketDAO, never()).updateTickets(any(), argThat(tickets -> !tickets.isEmpty()));
+        verify(parkingSpotDAO, never()).updateParkings(any(), argThat(spots -> !spots.isEmpty()));
+        assertEquals(2, parkingSpotDAO.parkingSpotIndex.countAvailable(ParkingType.CAR));
+        assertTrue(new GateJournal(journalDir).getUnacknowledged().isEmpty());
+    }
+
+    @Test
+    public void replayedExitWithoutOpenTicketIsDropped() throws Exception {
+        GateJournal journal = new GateJournal(journalDir);
+        GateEvent exit = new GateEvent(GateEvent.Type.EXIT, "ABCDEF", ParkingType.CAR, System.currentTimeMillis());
+        exit.setParkingNumber(1);
+        journal.append(exit);
+        journal.close();
+
+        WriteBehindParkingService service = newService();
+        service.start();
+        service.shutdown(5000);
+
+        verify(ticketDAO, never()).updateTickets(any(), argThat(tickets -> !tickets.isEmpty()));
+        assertEquals(0, service.getPendingCount()); // Pas de nouvel essai sans fin
+        assertTrue(new GateJournal(journalDir).getUnacknowledged().isEmpty());
+    }
+
+    @Test
+    public void secondExitIsRefusedWhileTheFirstIsQueued() throws Exception {
+        when(ticketDAO.beginTransaction()).thenThrow(new SQLException("DB down"));
+        WriteBehindParkingService service = newService();
+        service.start();
+
+        assertNotNull(service.processIncomingVehicle(ParkingType.CAR, "ABCDEF"));
+        assertNotNull(service.processExitingVehicle("ABCDEF"));
+        assertNull(service.processExitingVehicle("ABCDEF")); // Sortie déjà en file
+
+        verify(ticketDAO, never()).getOpenTicketWithVisitCount(anyString());
+        service.shutdown(100);
+    }
+
+    private WriteBehindParkingService newService() throws Exception {
+        return new WriteBehindParkingService(null, parkingSpotDAO, ticketDAO, new GateJournal(journalDir), 100, 10);
+    }
+}
@@ -49,6 +49,7 @@ public class ParkingDataBaseIT {
 
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF"); // Plaque d'immatriculation
         dataBasePrepareService.clearDataBaseEntries();
+        parkingSpotDAO.loadAvailableSpots(); // L'index des places libres doit refléter la base remise à zéro
 
         parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
     }
@@ -1,52 +1,27 @@
 package com.parkit.parkingsystem.integration.config;
 
-import com.parkit.parkingsystem.config.DataBaseConfig;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import com.parkit.parkingsystem.config.EmbeddedDataBaseConfig;
 
 import java.sql.*;
 
-public class DataBaseTestConfig extends DataBaseConfig {
+/**
+ * Test database: embedded H2 with the layout of resources/Data.sql (3 CAR then 2 BIKE spots),
+ * or the MySQL {@code test} database with {@code -Dparkit.db.backend=mysql}.
+ */
+public class DataBaseTestConfig extends EmbeddedDataBaseConfig {
 
-    private static final Logger logger = LogManager.getLogger("DataBaseTestConfig");
+    private static final boolean MYSQL = "mysql".equals(System.getProperty("parkit.db.backend"));
 
-    public Connection getConnection() throws ClassNotFoundException, SQLException {
-        logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/test?serverTimezone=Europe/Paris","root","rootroot");
-    }
-
-    public void closeConnection(Connection con){
-        if(con!=null){
-            try {
-                con.close();
-                logger.info("Closing DB connection");
-            } catch (SQLException e) {
-                logger.error("Error while closing connection",e);
-            }
-        }
+    public DataBaseTestConfig() {
+        super("mem:test", 3, 2);
     }
 
-    public void closePreparedStatement(PreparedStatement ps) {
-        if(ps!=null){
-            try {
-                ps.close();
-                logger.info("Closing Prepared Statement");
-            } catch (SQLException e) {
-                logger.error("Error while closing prepared statement",e);
-            }
-        }
-    }
-
-    public void closeResultSet(ResultSet rs) {
-        if(rs!=null){
-            try {
-                rs.close();
-                logger.info("Closing Result Set");
-            } catch (SQLException e) {
-                logger.error("Error while closing result set",e);
-            }
+    @Override
+    protected Connection openConnection() throws SQLException {
+        if (!MYSQL) {
+            return super.openConnection();
         }
+        return DriverManager.getConnection(
+                "jdbc:mysql://localhost:3306/test?serverTimezone=Europe/Paris&rewriteBatchedStatements=true&useServerPrepStmts=true&useCursorFetch=true","root","rootroot");
     }
 }
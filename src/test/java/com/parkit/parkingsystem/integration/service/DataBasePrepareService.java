@@ -18,6 +18,10 @@ public class DataBasePrepareService {
 
             //clear ticket entries;
             connection.prepareStatement("truncate table ticket").execute();
+            connection.prepareStatement("truncate table ticket_archive").execute();
+
+            //clear visit counters
+            connection.prepareStatement("truncate table vehicle_stats").execute();
 
         }catch(Exception e){
             e.printStackTrace();